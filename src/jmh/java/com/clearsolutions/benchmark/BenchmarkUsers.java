@@ -0,0 +1,55 @@
+package com.clearsolutions.benchmark;
+
+import com.clearsolutions.dto.UserDTO;
+import com.clearsolutions.models.UserEntity;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+final class BenchmarkUsers {
+
+    private BenchmarkUsers() {
+    }
+
+    static UserEntity entity(int i) {
+
+        return UserEntity.builder()
+                .id(i)
+                .email("user" + i + "@mail.com")
+                .firstName("First" + i)
+                .lastName("Last" + i)
+                .birthDate(LocalDateTime.of(1950 + i % 50, 1 + i % 12, 1 + i % 28, 0, 0))
+                .address(i + " Test st")
+                .phoneNumber("380" + (100000000 + i))
+                .version(i % 7)
+                .build();
+    }
+
+    static UserDTO dto(int i) {
+
+        UserEntity user = entity(i);
+
+        return UserDTO.builder()
+                .id(0)
+                .email(user.getEmail())
+                .firstName(user.getFirstName())
+                .lastName(user.getLastName())
+                .birthDate(user.getBirthDate())
+                .address(user.getAddress())
+                .phoneNumber(user.getPhoneNumber())
+                .build();
+    }
+
+    static List<UserDTO> dtos(int size) {
+
+        List<UserDTO> users = new ArrayList<>(size);
+        for (int i = 1; i <= size; i++) {
+            UserDTO user = dto(i);
+            user.setId(i);
+            users.add(user);
+        }
+
+        return users;
+    }
+}
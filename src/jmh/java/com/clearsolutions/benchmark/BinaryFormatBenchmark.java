@@ -0,0 +1,66 @@
+package com.clearsolutions.benchmark;
+
+import com.clearsolutions.config.BinaryFormatConfig;
+import com.clearsolutions.dto.ResponseDTO;
+import com.clearsolutions.dto.UserDTO;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON against the Smile and CBOR encodings of a 10k user list response, built the way BinaryFormatConfig builds them.
+ * The payload size of each format is printed once per fork.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BinaryFormatBenchmark {
+
+    @Param({"json", "smile", "cbor"})
+    public String format;
+
+    @Param({"10000"})
+    public int size;
+
+    private ObjectMapper objectMapper;
+    private ResponseDTO response;
+    private byte[] payload;
+
+    public record UsersResponse(List<UserDTO> data, LocalDateTime timestamp) {
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        objectMapper = switch (format) {
+            case "smile" -> BinaryFormatConfig.binaryObjectMapper(Jackson2ObjectMapperBuilder.json(), new SmileFactory());
+            case "cbor" -> BinaryFormatConfig.binaryObjectMapper(Jackson2ObjectMapperBuilder.json(), new CBORFactory());
+            default -> Jackson2ObjectMapperBuilder.json().build();
+        };
+        response = ResponseDTO.builder()
+                .data(BenchmarkUsers.dtos(size))
+                .timestamp(LocalDateTime.now())
+                .build();
+        payload = objectMapper.writeValueAsBytes(response);
+        System.out.println(format + " payload: " + payload.length + " bytes");
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        return objectMapper.writeValueAsBytes(response);
+    }
+
+    @Benchmark
+    public UsersResponse deserialize() throws IOException {
+        return objectMapper.readValue(payload, UsersResponse.class);
+    }
+}
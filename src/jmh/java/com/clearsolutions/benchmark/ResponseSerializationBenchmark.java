@@ -0,0 +1,42 @@
+package com.clearsolutions.benchmark;
+
+import com.clearsolutions.dto.ResponseDTO;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson cost of the list responses, using the same ObjectMapper defaults Spring Boot applies.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResponseSerializationBenchmark {
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    private ObjectMapper objectMapper;
+    private ResponseDTO response;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        response = ResponseDTO.builder()
+                .data(BenchmarkUsers.dtos(size))
+                .timestamp(LocalDateTime.now())
+                .build();
+    }
+
+    @Benchmark
+    public byte[] serializeResponse() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(response);
+    }
+}
@@ -0,0 +1,134 @@
+package com.clearsolutions.benchmark;
+
+import com.clearsolutions.ClearSolutionsApplication;
+import com.clearsolutions.services.UserImportService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.runner.IterationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Fires bursts of concurrent HTTP requests at the running application, once with Tomcat's platform thread
+ * pool and once with virtual threads. Each measured invocation is one burst, so the score is the burst
+ * duration; per-request p50/p99 latencies of the measurement iterations are printed when the trial ends.
+ * Virtual threads are only used when the benchmark runs on Java 21+.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ThreadingModeLoadBenchmark {
+
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    @Param({"5000"})
+    public int connections;
+
+    @Param({"1000"})
+    public int users;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient httpClient;
+    private String baseUrl;
+    private long[] latencies;
+    private int recorded;
+    // warmup bursts run against cold caches and an unjitted server, their latencies are not samples
+    private boolean measuring;
+
+    @Setup(Level.Trial)
+    public void setUp(BenchmarkParams params) throws IOException {
+        // arguments, not default properties, so they win over application.yml; the client budget and load shedding
+        // are lifted, otherwise the bursts mostly measure how fast 429 and 503 are answered
+        context = new SpringApplicationBuilder(ClearSolutionsApplication.class)
+                .run(
+                        "--server.port=0",
+                        "--spring.jpa.show-sql=false",
+                        "--user.write-behind.journal=" + Files.createTempFile("user-write-behind", ".journal"),
+                        "--spring.threads.virtual.enabled=" + "virtual".equals(threads),
+                        "--spring.datasource.url=jdbc:h2:mem:load-" + threads + ";DB_CLOSE_DELAY=-1",
+                        "--user.rate-limit.capacity=1000000000",
+                        "--user.rate-limit.refill-per-second=1000000000",
+                        "--user.load-shedding.max-in-flight=" + Integer.MAX_VALUE,
+                        "--user.load-shedding.max-pending-connections=" + Integer.MAX_VALUE
+                );
+        baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/api";
+        context.getBean(UserImportService.class).importUsers(IntStream.rangeClosed(1, users)
+                .mapToObj(BenchmarkUsers::dto)
+                .iterator());
+
+        httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(30))
+                .build();
+        latencies = new long[connections * params.getMeasurement().getCount()];
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpIteration(IterationParams params) {
+        measuring = params.getType() == IterationType.MEASUREMENT;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        long[] sorted = Arrays.copyOf(latencies, recorded);
+        Arrays.sort(sorted);
+        if (sorted.length > 0) {
+            System.out.printf("%n[%s threads] requests=%d p50=%.2fms p99=%.2fms max=%.2fms%n", threads, sorted.length,
+                    sorted[sorted.length / 2] / 1e6, sorted[(int) (sorted.length * 0.99)] / 1e6, sorted[sorted.length - 1] / 1e6);
+        }
+        context.close();
+    }
+
+    @Benchmark
+    public int burst() {
+        CompletableFuture<?>[] requests = new CompletableFuture<?>[connections];
+        long[] burstLatencies = new long[connections];
+
+        for (int i = 0; i < connections; i++) {
+            int index = i;
+            // mix of cheap cached lookups and page reads that always hit the database
+            String path = i % 2 == 0
+                    ? "/users/" + ThreadLocalRandom.current().nextInt(1, users + 1)
+                    : "/users?limit=20";
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path)).GET().build();
+            long start = System.nanoTime();
+            requests[i] = httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .thenAccept(response -> {
+                        // a failed request is not a latency sample, it fails the trial instead
+                        if (response.statusCode() / 100 != 2) {
+                            throw new IllegalStateException("GET " + path + " answered " + response.statusCode());
+                        }
+                        burstLatencies[index] = System.nanoTime() - start;
+                    });
+        }
+        CompletableFuture.allOf(requests).join();
+
+        if (!measuring) {
+            return connections;
+        }
+        synchronized (this) {
+            int count = Math.min(connections, latencies.length - recorded);
+            System.arraycopy(burstLatencies, 0, latencies, recorded, count);
+            recorded += count;
+        }
+
+        return connections;
+    }
+}
@@ -0,0 +1,72 @@
+package com.clearsolutions.benchmark;
+
+import com.clearsolutions.ClearSolutionsApplication;
+import com.clearsolutions.services.UserImportService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * GET /api/users/{id} through the whole MVC stack, where half of the ids do not exist.
+ * The long warmup is needed for the full stack to be compiled on a small machine.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 30, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserLookupBenchmark {
+
+    @Param({"10000"})
+    public int users;
+
+    private ConfigurableApplicationContext context;
+    private MockMvc mockMvc;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        // arguments, not default properties, so they win over application.yml
+        context = new SpringApplicationBuilder(ClearSolutionsApplication.class)
+                .run(
+                        "--server.port=0",
+                        "--spring.jpa.show-sql=false",
+                        "--logging.level.root=warn",
+                        "--spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1",
+                        "--user.write-behind.journal=" + Files.createTempFile("user-write-behind", ".journal"),
+                        "--user.rate-limit.capacity=1000000000",
+                        "--user.rate-limit.refill-per-second=1000000000"
+                );
+        mockMvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) context).build();
+
+        context.getBean(UserImportService.class).importUsers(IntStream.rangeClosed(1, users)
+                .mapToObj(BenchmarkUsers::dto)
+                .iterator());
+        // existing users are then served from the user and JSON caches, as in steady state,
+        // while every miss still reaches the database
+        for (int id = 1; id <= users; id++) {
+            mockMvc.perform(get("/api/users/{id}", id));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int getUserByIdHalfMissing() throws Exception {
+        int id = ThreadLocalRandom.current().nextInt(1, 2 * users + 1);
+        return mockMvc.perform(get("/api/users/{id}", id)).andReturn().getResponse().getStatus();
+    }
+}
@@ -0,0 +1,80 @@
+package com.clearsolutions.benchmark;
+
+import com.clearsolutions.ClearSolutionsApplication;
+import com.clearsolutions.dto.BirthDateCountDTO;
+import com.clearsolutions.dto.PageDTO;
+import com.clearsolutions.dto.UserDTO;
+import com.clearsolutions.services.UserImportService;
+import com.clearsolutions.services.UserService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * End-to-end service calls against the embedded H2 database, without the HTTP layer.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserServiceBenchmark {
+
+    private static final LocalDateTime FROM_DATE = LocalDateTime.of(1960, 1, 1, 0, 0);
+    private static final LocalDateTime TO_DATE = LocalDateTime.of(1980, 1, 1, 0, 0);
+
+    @Param({"10000"})
+    public int users;
+
+    private ConfigurableApplicationContext context;
+    private UserService userService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(ClearSolutionsApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.jpa.show-sql=false",
+                        "spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1"
+                )
+                .run();
+        userService = context.getBean(UserService.class);
+
+        UserImportService userImportService = context.getBean(UserImportService.class);
+        userImportService.importUsers(IntStream.rangeClosed(1, users)
+                .mapToObj(BenchmarkUsers::dto)
+                .iterator());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public UserDTO getUserById() {
+        return userService.getUserById(ThreadLocalRandom.current().nextInt(1, users + 1));
+    }
+
+    @Benchmark
+    public PageDTO<UserDTO> getAllUsersPage() {
+        return userService.getAllUsers(null, 100);
+    }
+
+    @Benchmark
+    public PageDTO<UserDTO> getUsersByBirthDateRangePage() {
+        return userService.getUsersByBirthDateRange(FROM_DATE, TO_DATE, null, 100);
+    }
+
+    @Benchmark
+    public BirthDateCountDTO countUsersByBirthDateRangePerYear() {
+        return userService.countUsersByBirthDateRange(FROM_DATE, TO_DATE, "year");
+    }
+}
@@ -0,0 +1,120 @@
+package com.clearsolutions.cache;
+
+import com.clearsolutions.dto.BloomFilterStatsDTO;
+import com.clearsolutions.mapper.UserMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free Bloom filter over the emails this instance has stored or loaded. Only the duplicate check of the write
+ * paths consults it: a negative answer skips the lookup, and the unique index still rejects an email the filter
+ * missed (during warm-up, or written by another instance). It never answers a read on its own.
+ * Deleted or changed emails are never removed, which only raises the false-positive rate until the next restart.
+ */
+@Component
+public class EmailBloomFilter implements MeterBinder {
+
+    private final AtomicLongArray words;
+    private final long bitSize;
+    private final int hashFunctions;
+    private final AtomicLong setBits = new AtomicLong();
+
+    public EmailBloomFilter(@Value("${user.email-filter.expected-insertions}") long expectedInsertions,
+                            @Value("${user.email-filter.false-positive-rate}") double falsePositiveRate) {
+
+        long optimalBits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int wordCount = (int) Math.max(1, (optimalBits + 63) / 64);
+
+        this.words = new AtomicLongArray(wordCount);
+        this.bitSize = wordCount * 64L;
+        this.hashFunctions = (int) Math.max(1, Math.round((double) bitSize / expectedInsertions * Math.log(2)));
+    }
+
+    public void put(String email) {
+
+        long hash = hash(UserMapper.normalizeEmail(email));
+        long h1 = (int) hash;
+        long h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashFunctions; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitSize);
+            long mask = 1L << bit;
+            int word = (int) (bit >>> 6);
+            long previous = words.getAndAccumulate(word, mask, (current, m) -> current | m);
+            if ((previous & mask) == 0) {
+                setBits.incrementAndGet();
+            }
+        }
+    }
+
+    public boolean mightContain(String email) {
+
+        long hash = hash(UserMapper.normalizeEmail(email));
+        long h1 = (int) hash;
+        long h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= hashFunctions; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitSize);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public BloomFilterStatsDTO getStats() {
+
+        return BloomFilterStatsDTO.builder()
+                .approximateElementCount(approximateElementCount())
+                .expectedFalsePositiveRate(expectedFalsePositiveRate())
+                .bitSize(bitSize)
+                .hashFunctions(hashFunctions)
+                .memoryBytes(bitSize / 8)
+                .build();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+
+        Gauge.builder("user.email.filter.false.positive.rate", this, EmailBloomFilter::expectedFalsePositiveRate)
+                .register(registry);
+        Gauge.builder("user.email.filter.elements", this, EmailBloomFilter::approximateElementCount)
+                .register(registry);
+        Gauge.builder("user.email.filter.memory", this, filter -> filter.bitSize / 8)
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    private double expectedFalsePositiveRate() {
+
+        return Math.pow((double) setBits.get() / bitSize, hashFunctions);
+    }
+
+    private long approximateElementCount() {
+
+        double fractionSet = (double) setBits.get() / bitSize;
+        return Math.round(-Math.log1p(-fractionSet) * bitSize / hashFunctions);
+    }
+
+    // FNV-1a over the characters followed by the MurmurHash3 finalizer, both halves are used as hashes
+    private static long hash(String value) {
+
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+
+        return hash;
+    }
+}
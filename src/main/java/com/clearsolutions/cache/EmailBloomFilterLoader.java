@@ -0,0 +1,34 @@
+package com.clearsolutions.cache;
+
+import com.clearsolutions.repositories.UserRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.stream.Stream;
+
+/**
+ * Fills {@link EmailBloomFilter} with every stored email once the application is ready;
+ * from then on the write paths add emails themselves.
+ */
+@Component
+public class EmailBloomFilterLoader {
+
+    private final EmailBloomFilter emailFilter;
+    private final UserRepository userRepository;
+
+    public EmailBloomFilterLoader(EmailBloomFilter emailFilter, UserRepository userRepository) {
+        this.emailFilter = emailFilter;
+        this.userRepository = userRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void load() {
+
+        try (Stream<String> emails = userRepository.streamAllEmails()) {
+            emails.forEach(emailFilter::put);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.clearsolutions.cache;
+
+import com.clearsolutions.dto.UserDTO;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+
+/**
+ * In-JVM stand-in for a shared store: instances see each other's entries when they run as child contexts
+ * of the one holding this bean. Users are kept serialized, so like with a remote store a reader never
+ * shares an instance with a writer.
+ */
+public class InMemorySharedUserStore implements SharedUserStore {
+
+    private final Cache<Integer, Entry> cache;
+    private final ObjectMapper objectMapper;
+
+    // a null json is a tombstone
+    private record Entry(long version, byte[] json) {
+    }
+
+    public InMemorySharedUserStore(long maximumSize, Duration expireAfterWrite, ObjectMapper objectMapper) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .build();
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public UserDTO get(int userId) {
+
+        Entry entry = cache.getIfPresent(userId);
+        if (entry == null || entry.json() == null) {
+            return null;
+        }
+
+        try {
+            return objectMapper.readValue(entry.json(), UserDTO.class);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public void put(UserDTO user) {
+
+        Entry entry = new Entry(user.getVersion(), toJson(user));
+        cache.asMap().merge(user.getId(), entry, (stored, put) -> stored.version() > put.version() ? stored : put);
+    }
+
+    @Override
+    public void evict(int userId, long version) {
+
+        cache.asMap().compute(userId, (id, stored) ->
+                stored != null && stored.version() >= version ? stored : new Entry(version, null));
+    }
+
+    @Override
+    public void evict(int userId) {
+
+        cache.invalidate(userId);
+    }
+
+    private byte[] toJson(UserDTO user) {
+
+        try {
+            return objectMapper.writeValueAsBytes(user);
+        } catch (JsonProcessingException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.clearsolutions.cache;
+
+import com.clearsolutions.dto.UserDTO;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Second cache tier shared by all application instances, read by {@link UserCache} on a near-cache miss.
+ * Backed in-JVM by {@link InMemorySharedUserStore}; a Redis or Hazelcast backed bean takes its place
+ * once declared.
+ */
+public interface SharedUserStore {
+
+    /**
+     * Returns the stored user, or null when there is none.
+     */
+    UserDTO get(int userId);
+
+    /**
+     * Returns the stored users by id, leaving out the ids there is none for. Stores with a multi-get,
+     * such as Redis MGET, should override this.
+     */
+    default Map<Integer, UserDTO> getAll(Collection<Integer> userIds) {
+
+        Map<Integer, UserDTO> users = new HashMap<>();
+        for (int userId : userIds) {
+            UserDTO user = get(userId);
+            if (user != null) {
+                users.put(userId, user);
+            }
+        }
+
+        return users;
+    }
+
+    /**
+     * Stores the user unless a newer version of it, or a tombstone above its version, is stored already.
+     */
+    void put(UserDTO user);
+
+    /**
+     * Drops the stored user unless it is at {@code version} or newer, and leaves a tombstone at {@code version}
+     * so a load that read an older row cannot put it back before the tombstone expires.
+     */
+    void evict(int userId, long version);
+
+    void evict(int userId);
+}
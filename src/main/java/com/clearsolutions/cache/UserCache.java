@@ -0,0 +1,248 @@
+package com.clearsolutions.cache;
+
+import com.clearsolutions.dto.CacheStatsDTO;
+import com.clearsolutions.dto.UserDTO;
+import com.clearsolutions.routing.ReplicaRoutingDataSource;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/**
+ * Two-tier read-through cache of mapped users keyed by id: a bounded, TTL-evicted near cache per instance
+ * in front of the {@link SharedUserStore} all instances share.
+ * Writes are applied only after the surrounding transaction commits, so a concurrent read can never
+ * re-populate an entry with a row that is about to be rolled back. Writes put the new version rather than evict,
+ * and deletes leave a tombstone, so a load that raced with the write cannot put the old row back.
+ * Changes made by other instances are evicted by {@link UserCacheInvalidator}; while it has not caught up
+ * for longer than the maximum staleness, the near cache is dropped instead of serving entries it may have missed.
+ * Loads run outside of the cache's internal locks, so a virtual thread waiting on JDBC never pins its carrier.
+ * Loaders are run against the primary: a replica row may predate a change whose eviction already went by,
+ * and would then be cached, for every instance, until it expires.
+ */
+@Component
+public class UserCache {
+
+    // tombstone version of a deleted user, no load can put it back
+    static final long DELETED = Long.MAX_VALUE;
+
+    private final AsyncCache<Integer, UserDTO> cache;
+    private final SharedUserStore sharedStore;
+    private final long maxStalenessNanos;
+    // System.nanoTime() up to which changes of other instances are evicted, 0 until the first sync
+    private volatile long syncedAt;
+
+    public UserCache(@Value("${user.cache.maximum-size}") long maximumSize,
+                     @Value("${user.cache.expire-after-write}") Duration expireAfterWrite,
+                     @Value("${user.cache.max-staleness}") Duration maxStaleness,
+                     SharedUserStore sharedStore) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .buildAsync();
+        this.sharedStore = sharedStore;
+        this.maxStalenessNanos = maxStaleness.toNanos();
+    }
+
+    /**
+     * Returns the cached user or computes it with the loader; a null from the loader is not cached.
+     * Concurrent misses for the same id share one load, which asks the shared store before the loader.
+     */
+    public UserDTO get(int userId, Function<Integer, UserDTO> loader) {
+
+        long synced = syncedAt;
+        if (synced != 0 && System.nanoTime() - synced > maxStalenessNanos) {
+            evictLocal();
+        }
+
+        CompletableFuture<UserDTO> cached = cache.getIfPresent(userId);
+        if (cached != null) {
+            return join(cached);
+        }
+
+        CompletableFuture<UserDTO> loading = new CompletableFuture<>();
+        CompletableFuture<UserDTO> existing = cache.asMap().putIfAbsent(userId, loading);
+        if (existing != null) {
+            return join(existing);
+        }
+
+        try {
+            UserDTO user = sharedStore.get(userId);
+            if (user == null) {
+                user = ReplicaRoutingDataSource.readFromPrimary(() -> loader.apply(userId));
+                if (user != null) {
+                    sharedStore.put(user);
+                }
+            }
+            loading.complete(user);
+            return user;
+        } catch (RuntimeException ex) {
+            loading.completeExceptionally(ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Returns the users found by id: cached ones as they are, the others from the shared store and then
+     * from one call of the loader, which returns the users it found by id. Ids found nowhere are left out
+     * and not cached; ids another caller is loading already are waited for instead of loaded again.
+     */
+    public Map<Integer, UserDTO> getAll(Collection<Integer> userIds, Function<Set<Integer>, Map<Integer, UserDTO>> loader) {
+
+        long synced = syncedAt;
+        if (synced != 0 && System.nanoTime() - synced > maxStalenessNanos) {
+            evictLocal();
+        }
+
+        Map<Integer, CompletableFuture<UserDTO>> results = new LinkedHashMap<>();
+        Map<Integer, CompletableFuture<UserDTO>> loading = new LinkedHashMap<>();
+        for (int userId : userIds) {
+            CompletableFuture<UserDTO> result = cache.getIfPresent(userId);
+            if (result == null) {
+                CompletableFuture<UserDTO> load = new CompletableFuture<>();
+                result = cache.asMap().putIfAbsent(userId, load);
+                if (result == null) {
+                    result = load;
+                    loading.put(userId, load);
+                }
+            }
+            results.put(userId, result);
+        }
+
+        if (!loading.isEmpty()) {
+            try {
+                Map<Integer, UserDTO> loaded = new HashMap<>(sharedStore.getAll(loading.keySet()));
+                Set<Integer> missing = new HashSet<>(loading.keySet());
+                missing.removeAll(loaded.keySet());
+                if (!missing.isEmpty()) {
+                    Map<Integer, UserDTO> fromLoader = ReplicaRoutingDataSource.readFromPrimary(() -> loader.apply(missing));
+                    fromLoader.values().forEach(sharedStore::put);
+                    loaded.putAll(fromLoader);
+                }
+                loading.forEach((userId, load) -> load.complete(loaded.get(userId)));
+            } catch (RuntimeException ex) {
+                loading.values().forEach(load -> load.completeExceptionally(ex));
+                throw ex;
+            }
+        }
+
+        Map<Integer, UserDTO> users = new HashMap<>();
+        results.forEach((userId, result) -> {
+            UserDTO user = join(result);
+            if (user != null) {
+                users.put(userId, user);
+            }
+        });
+
+        return users;
+    }
+
+    public void put(UserDTO user) {
+
+        afterCommit(() -> {
+            sharedStore.put(user);
+            cache.put(user.getId(), CompletableFuture.completedFuture(user));
+        });
+    }
+
+    public void remove(int userId) {
+
+        afterCommit(() -> evict(userId, DELETED));
+    }
+
+    /**
+     * Evicts the user from both tiers right away unless it is cached at {@code version} or newer,
+     * for changes that are committed already.
+     */
+    public void evict(int userId, long version) {
+
+        sharedStore.evict(userId, version);
+        cache.asMap().computeIfPresent(userId, (id, cached) -> isAtLeast(cached, version) ? cached : null);
+    }
+
+    /**
+     * Evicts the user from both tiers right away, for committed changes of unknown version.
+     */
+    public void evict(int userId) {
+
+        sharedStore.evict(userId);
+        cache.synchronous().invalidate(userId);
+    }
+
+    /**
+     * Drops the whole near cache; the shared store is left as is.
+     */
+    public void evictLocal() {
+
+        cache.synchronous().invalidateAll();
+    }
+
+    /**
+     * Records that every change committed before {@code nanoTime} has been evicted.
+     */
+    public void synced(long nanoTime) {
+
+        syncedAt = nanoTime;
+    }
+
+    public CacheStatsDTO getStats() {
+
+        CacheStats stats = cache.synchronous().stats();
+
+        return CacheStatsDTO.builder()
+                .size(cache.synchronous().estimatedSize())
+                .hitCount(stats.hitCount())
+                .missCount(stats.missCount())
+                .evictionCount(stats.evictionCount())
+                .hitRate(stats.hitRate())
+                .build();
+    }
+
+    private static boolean isAtLeast(CompletableFuture<UserDTO> cached, long version) {
+
+        return cached.isDone() && !cached.isCompletedExceptionally()
+                && cached.join() != null && cached.join().getVersion() >= version;
+    }
+
+    private static UserDTO join(CompletableFuture<UserDTO> future) {
+
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw ex;
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
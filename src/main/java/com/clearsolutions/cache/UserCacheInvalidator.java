@@ -0,0 +1,94 @@
+package com.clearsolutions.cache;
+
+import com.clearsolutions.dto.UserChangeDTO;
+import com.clearsolutions.dto.UserChangesDTO;
+import com.clearsolutions.dto.UserDTO;
+import com.clearsolutions.events.UserChangedEvent;
+import com.clearsolutions.routing.ReplicaRoutingDataSource;
+import com.clearsolutions.services.UserChangeService;
+import com.clearsolutions.services.impl.UserChangeServiceImpl;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.UncheckedIOException;
+
+/**
+ * Cross-instance invalidation of {@link UserCache}: every mutation is published to the {@code user_change}
+ * outbox by whichever instance made it, and each instance tails that log and evicts the changed users.
+ * Offsets are handed out in commit order, so reading past an offset never skips a change committed later.
+ * The log is read from the primary, a lagging replica would stretch the staleness bound by its lag.
+ * Evictions carry the version of the change, so entries another instance already put at that version stay.
+ */
+@Component
+public class UserCacheInvalidator {
+
+    private final UserChangeService userChangeService;
+    private final UserCache userCache;
+    private final ObjectMapper objectMapper;
+    // -1 until the first poll
+    private long offset = -1;
+
+    public UserCacheInvalidator(UserChangeService userChangeService, UserCache userCache, ObjectMapper objectMapper) {
+        this.userChangeService = userChangeService;
+        this.userCache = userCache;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Returns the number of changes applied.
+     */
+    @Scheduled(fixedDelayString = "${user.cache.invalidation.poll-interval}")
+    public synchronized int poll() {
+
+        return ReplicaRoutingDataSource.readFromPrimary(this::applyChanges);
+    }
+
+    private int applyChanges() {
+
+        long start = System.nanoTime();
+        if (offset < 0) {
+            // anything cached before the log position was taken may have missed a change
+            offset = userChangeService.lastOffset();
+            userCache.evictLocal();
+            userCache.synced(start);
+            return 0;
+        }
+
+        int applied = 0;
+        UserChangesDTO changes;
+        do {
+            changes = userChangeService.getChanges(offset, UserChangeServiceImpl.MAX_LIMIT);
+            for (UserChangeDTO change : changes.getItems()) {
+                evict(change);
+            }
+            applied += changes.getItems().size();
+            offset = changes.getLastOffset();
+        } while (changes.getItems().size() == UserChangeServiceImpl.MAX_LIMIT);
+        userCache.synced(start);
+
+        return applied;
+    }
+
+    private void evict(UserChangeDTO change) {
+
+        if (change.getType() == UserChangedEvent.Type.DELETED) {
+            userCache.evict(change.getUserId(), UserCache.DELETED);
+        } else if (change.getUser() == null) {
+            // recorded without the user, the version is unknown
+            userCache.evict(change.getUserId());
+        } else {
+            userCache.evict(change.getUserId(), toUser(change.getUser()).getVersion());
+        }
+    }
+
+    private UserDTO toUser(String json) {
+
+        try {
+            return objectMapper.readValue(json, UserDTO.class);
+        } catch (JsonProcessingException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
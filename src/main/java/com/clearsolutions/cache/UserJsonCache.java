@@ -0,0 +1,89 @@
+package com.clearsolutions.cache;
+
+import com.clearsolutions.dto.UserDTO;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Already serialized JSON of single users, so a hot GET /api/users/{id} only copies bytes into the response.
+ * Entries are keyed by id and tagged with the version they were rendered from; every write bumps the version,
+ * so an entry is simply re-rendered when the user it came from is newer.
+ */
+@Component
+public class UserJsonCache {
+
+    private static final byte[] PREFIX = "{\"data\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] TIMESTAMP = ",\"timestamp\":\"".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SUFFIX = "\"}".getBytes(StandardCharsets.UTF_8);
+
+    private final Cache<Integer, RenderedUser> cache;
+    private final ObjectMapper objectMapper;
+
+    private record RenderedUser(long version, byte[] json) {
+    }
+
+    public UserJsonCache(ObjectMapper objectMapper,
+                         @Value("${user.cache.maximum-size}") long maximumSize,
+                         @Value("${user.cache.expire-after-write}") Duration expireAfterWrite) {
+        this.objectMapper = objectMapper;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .build();
+    }
+
+    /**
+     * Strong validator of a single user representation: the version, which every write bumps.
+     * It is also what PATCH accepts in If-Match.
+     */
+    public static String eTag(UserDTO user) {
+
+        return "\"" + user.getVersion() + '"';
+    }
+
+    /**
+     * Same body as a ResponseDTO holding the user would serialize to, built from the cached user JSON.
+     */
+    public byte[] toResponse(UserDTO user, LocalDateTime timestamp) {
+
+        byte[] data = render(user);
+        byte[] time = DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(timestamp).getBytes(StandardCharsets.US_ASCII);
+
+        ByteArrayOutputStream response = new ByteArrayOutputStream(PREFIX.length + data.length + TIMESTAMP.length + time.length + SUFFIX.length);
+        response.writeBytes(PREFIX);
+        response.writeBytes(data);
+        response.writeBytes(TIMESTAMP);
+        response.writeBytes(time);
+        response.writeBytes(SUFFIX);
+
+        return response.toByteArray();
+    }
+
+    private byte[] render(UserDTO user) {
+
+        RenderedUser rendered = cache.getIfPresent(user.getId());
+        if (rendered != null && rendered.version() == user.getVersion()) {
+            return rendered.json();
+        }
+
+        try {
+            rendered = new RenderedUser(user.getVersion(), objectMapper.writeValueAsBytes(user));
+        } catch (JsonProcessingException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        cache.put(user.getId(), rendered);
+
+        return rendered.json();
+    }
+}
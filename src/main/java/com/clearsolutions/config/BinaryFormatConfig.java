@@ -0,0 +1,50 @@
+package com.clearsolutions.config;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+/**
+ * Smile and CBOR encodings of the JSON responses, chosen by the Accept header; JSON stays the default.
+ * Smile writes each field name once per response and refers back to it afterwards, which is what makes
+ * large user lists compact. Both formats reuse the application's Jackson configuration.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class BinaryFormatConfig {
+
+    public static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+    public static final MediaType APPLICATION_SMILE = MediaType.valueOf(APPLICATION_SMILE_VALUE);
+
+    @Bean
+    public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+
+        return new MappingJackson2SmileHttpMessageConverter(binaryObjectMapper(builder, new SmileFactory()));
+    }
+
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+
+        return new MappingJackson2CborHttpMessageConverter(binaryObjectMapper(builder, new CBORFactory()));
+    }
+
+    /**
+     * Dates are written as numeric arrays instead of ISO strings, the callers of the binary formats
+     * read them back with Jackson, which accepts both.
+     */
+    public static ObjectMapper binaryObjectMapper(Jackson2ObjectMapperBuilder builder, JsonFactory factory) {
+
+        return builder.factory(factory)
+                .featuresToEnable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+    }
+}
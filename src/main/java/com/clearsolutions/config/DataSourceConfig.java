@@ -0,0 +1,115 @@
+package com.clearsolutions.config;
+
+import com.clearsolutions.routing.ReadYourWrites;
+import com.clearsolutions.routing.ReplicaLagMonitor;
+import com.clearsolutions.routing.ReplicaProperties;
+import com.clearsolutions.routing.ReplicaRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.sql.init.SqlDataSourceScriptDatabaseInitializer;
+import org.springframework.boot.autoconfigure.sql.init.SqlInitializationProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+
+/**
+ * Spring Boot skips its own DataSource once an R2DBC ConnectionFactory exists, but the JPA stack is needed
+ * in both the servlet and the reactive deployment, so the Hikari pool is declared here the same way Boot would.
+ */
+@Configuration(proxyBeanMethods = false)
+@EnableConfigurationProperties({DataSourceProperties.class, SqlInitializationProperties.class})
+public class DataSourceConfig {
+
+    static final String REPLICA_ENABLED = "user.datasource.replica.enabled";
+
+    @Bean
+    @ConditionalOnProperty(name = REPLICA_ENABLED, havingValue = "false", matchIfMissing = true)
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource dataSource(DataSourceProperties properties) {
+
+        return properties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+    }
+
+    /**
+     * data.sql seeds the JDBC database only; left to Boot it would run against the R2DBC connection factory too.
+     */
+    @Bean
+    public SqlDataSourceScriptDatabaseInitializer dataSourceScriptDatabaseInitializer(DataSource dataSource,
+                                                                                     SqlInitializationProperties properties) {
+
+        return new SqlDataSourceScriptDatabaseInitializer(dataSource, properties);
+    }
+
+    /**
+     * Primary and replica pool behind one lazy proxy: a connection is only fetched once the transaction
+     * has marked it read-only or not, read-only ones then come from the replica.
+     */
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnProperty(name = REPLICA_ENABLED, havingValue = "true")
+    @EnableConfigurationProperties(ReplicaProperties.class)
+    static class ReplicaRoutingConfig {
+
+        @Bean
+        @ConfigurationProperties("spring.datasource.hikari")
+        public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+
+            HikariDataSource primary = properties.initializeDataSourceBuilder()
+                    .type(HikariDataSource.class)
+                    .build();
+            primary.setPoolName("primary");
+
+            return primary;
+        }
+
+        // same pool settings as the primary
+        @Bean
+        @ConfigurationProperties("spring.datasource.hikari")
+        public HikariDataSource replicaDataSource(DataSourceProperties properties, ReplicaProperties replica) {
+
+            HikariDataSource replicaPool = properties.initializeDataSourceBuilder()
+                    .type(HikariDataSource.class)
+                    .url(replica.url())
+                    .username(replica.username())
+                    .password(replica.password())
+                    .build();
+            replicaPool.setPoolName("replica");
+
+            return replicaPool;
+        }
+
+        @Bean
+        public ReadYourWrites readYourWrites(ReplicaProperties replica) {
+
+            return new ReadYourWrites(replica);
+        }
+
+        @Bean
+        public ReplicaLagMonitor replicaLagMonitor(@Qualifier("primaryDataSource") DataSource primary,
+                                                   @Qualifier("replicaDataSource") DataSource replica,
+                                                   ReplicaProperties properties) {
+
+            return new ReplicaLagMonitor(primary, replica, properties.maxLag());
+        }
+
+        @Bean
+        @Primary
+        public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primary,
+                                     @Qualifier("replicaDataSource") DataSource replica,
+                                     ReadYourWrites readYourWrites, ReplicaLagMonitor lagMonitor) {
+
+            LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(primary);
+            dataSource.setReadOnlyDataSource(new ReplicaRoutingDataSource(primary, replica, readYourWrites, lagMonitor));
+
+            return dataSource;
+        }
+    }
+}
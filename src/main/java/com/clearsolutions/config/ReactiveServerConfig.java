@@ -0,0 +1,21 @@
+package com.clearsolutions.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Tomcat stays on the classpath for the servlet stack and Boot would prefer it for the reactive one too,
+ * so the reactive deployment pins Reactor Netty explicitly.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveServerConfig {
+
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+
+        return new NettyReactiveWebServerFactory();
+    }
+}
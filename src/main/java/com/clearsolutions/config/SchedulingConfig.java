@@ -0,0 +1,9 @@
+package com.clearsolutions.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+@Configuration(proxyBeanMethods = false)
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -0,0 +1,76 @@
+package com.clearsolutions.config;
+
+import com.clearsolutions.purge.JobLease;
+import com.clearsolutions.sharding.ShardOutboxRelay;
+import com.clearsolutions.sharding.ShardRouter;
+import com.clearsolutions.sharding.ShardedUserRepository;
+import com.clearsolutions.sharding.ShardingProperties;
+import com.clearsolutions.sharding.UserIdAllocator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * The shards are pools of their own, not DataSource beans, so JPA and everything else keep using
+ * spring.datasource.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "user.sharding.enabled", havingValue = "true")
+@EnableConfigurationProperties(ShardingProperties.class)
+public class ShardingConfig {
+
+    // closed with the context
+    @Bean
+    public ShardRouter shardRouter(ShardingProperties properties) {
+
+        List<DataSource> shards = new ArrayList<>();
+        for (String url : properties.urls()) {
+            HikariDataSource shard = DataSourceBuilder.create()
+                    .type(HikariDataSource.class)
+                    .url(url)
+                    .username(properties.username())
+                    .password(properties.password())
+                    .build();
+            shard.setPoolName("shard-" + shards.size());
+            shards.add(shard);
+        }
+
+        return new ShardRouter(shards);
+    }
+
+    @Bean
+    public ShardedUserRepository shardedUserRepository(ShardRouter router, ShardingProperties properties,
+                                                       ObjectMapper objectMapper,
+                                                       @Qualifier("applicationTaskExecutor") Executor executor) {
+
+        UserIdAllocator idAllocator = new UserIdAllocator(router.shards().get(0), properties.idBlockSize());
+        idAllocator.createSequence();
+        ShardedUserRepository repository = new ShardedUserRepository(router, idAllocator, objectMapper,
+                properties.emailReservationTimeout(), executor);
+        repository.createSchema();
+
+        return repository;
+    }
+
+    @Bean
+    public ShardOutboxRelay shardOutboxRelay(ShardedUserRepository repository, ShardRouter router,
+                                             ShardingProperties properties, JobLease jobLease,
+                                             ApplicationEventPublisher eventPublisher,
+                                             PlatformTransactionManager transactionManager) {
+
+        return new ShardOutboxRelay(repository, router.shards().size(), jobLease, eventPublisher, transactionManager,
+                properties.relayInterval(), properties.relayBatchSize());
+    }
+}
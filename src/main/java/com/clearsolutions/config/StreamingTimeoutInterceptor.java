@@ -0,0 +1,44 @@
+package com.clearsolutions.config;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.MethodParameter;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.Duration;
+
+/**
+ * Gives handlers that stream their body their own async timeout: spring.mvc.async.request-timeout is sized
+ * for the change feed long poll, while an export or NDJSON dump takes as long as the data does.
+ */
+public class StreamingTimeoutInterceptor implements AsyncHandlerInterceptor {
+
+    private final Duration timeout;
+
+    public StreamingTimeoutInterceptor(Duration timeout) {
+        this.timeout = timeout;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+
+        // still within the dispatch that started async processing, the last point the servlet spec allows this
+        if (handler instanceof HandlerMethod method && streams(method.getReturnType()) && request.isAsyncStarted()) {
+            request.getAsyncContext().setTimeout(timeout.toMillis());
+        }
+    }
+
+    private static boolean streams(MethodParameter returnType) {
+
+        Class<?> type = returnType.getParameterType();
+        if (ResponseEntity.class.isAssignableFrom(type)) {
+            type = ResolvableType.forMethodParameter(returnType).getGeneric().resolve(Object.class);
+        }
+
+        return StreamingResponseBody.class.isAssignableFrom(type);
+    }
+}
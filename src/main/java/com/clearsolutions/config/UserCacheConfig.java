@@ -0,0 +1,25 @@
+package com.clearsolutions.config;
+
+import com.clearsolutions.cache.InMemorySharedUserStore;
+import com.clearsolutions.cache.SharedUserStore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration(proxyBeanMethods = false)
+public class UserCacheConfig {
+
+    // also backs off for a store declared in a parent context
+    @Bean
+    @ConditionalOnMissingBean(SharedUserStore.class)
+    public InMemorySharedUserStore sharedUserStore(@Value("${user.cache.shared.maximum-size}") long maximumSize,
+                                                   @Value("${user.cache.shared.expire-after-write}") Duration expireAfterWrite,
+                                                   ObjectMapper objectMapper) {
+
+        return new InMemorySharedUserStore(maximumSize, expireAfterWrite, objectMapper);
+    }
+}
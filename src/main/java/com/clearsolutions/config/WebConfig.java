@@ -0,0 +1,42 @@
+package com.clearsolutions.config;
+
+import com.clearsolutions.ratelimit.RateLimitInterceptor;
+import com.clearsolutions.ratelimit.RateLimitProperties;
+import com.clearsolutions.routing.ReadYourWrites;
+import com.clearsolutions.routing.ReadYourWritesInterceptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.time.Duration;
+
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@EnableConfigurationProperties(RateLimitProperties.class)
+public class WebConfig implements WebMvcConfigurer {
+
+    private final RateLimitInterceptor rateLimitInterceptor;
+    // only with replica routing
+    private final ObjectProvider<ReadYourWrites> readYourWrites;
+    private final Duration streamingTimeout;
+
+    public WebConfig(RateLimitInterceptor rateLimitInterceptor, ObjectProvider<ReadYourWrites> readYourWrites,
+                     @Value("${user.streaming.request-timeout}") Duration streamingTimeout) {
+        this.rateLimitInterceptor = rateLimitInterceptor;
+        this.readYourWrites = readYourWrites;
+        this.streamingTimeout = streamingTimeout;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+
+        registry.addInterceptor(rateLimitInterceptor).addPathPatterns("/api/**");
+        readYourWrites.ifAvailable(tracker ->
+                registry.addInterceptor(new ReadYourWritesInterceptor(tracker, rateLimitInterceptor::client)).addPathPatterns("/api/**"));
+        registry.addInterceptor(new StreamingTimeoutInterceptor(streamingTimeout)).addPathPatterns("/api/**");
+    }
+}
@@ -0,0 +1,53 @@
+package com.clearsolutions.controllers;
+
+import com.clearsolutions.cache.EmailBloomFilter;
+import com.clearsolutions.cache.UserCache;
+import com.clearsolutions.dto.BloomFilterStatsDTO;
+import com.clearsolutions.dto.CacheStatsDTO;
+import com.clearsolutions.dto.ResponseDTO;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDateTime;
+
+@RestController
+@RequestMapping("/api/cache")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class CacheController {
+
+    private final UserCache userCache;
+    private final EmailBloomFilter emailFilter;
+
+    public CacheController(UserCache userCache, EmailBloomFilter emailFilter) {
+        this.userCache = userCache;
+        this.emailFilter = emailFilter;
+    }
+
+    @GetMapping("/users/stats")
+    public ResponseEntity<ResponseDTO> getUserCacheStats() {
+
+        CacheStatsDTO data = userCache.getStats();
+        ResponseDTO response = ResponseDTO.builder()
+                .data(data)
+                .timestamp(LocalDateTime.now())
+                .build();
+
+        return new ResponseEntity<>(response, HttpStatus.OK);
+    }
+
+    @GetMapping("/emails/stats")
+    public ResponseEntity<ResponseDTO> getEmailFilterStats() {
+
+        BloomFilterStatsDTO data = emailFilter.getStats();
+        ResponseDTO response = ResponseDTO.builder()
+                .data(data)
+                .timestamp(LocalDateTime.now())
+                .build();
+
+        return new ResponseEntity<>(response, HttpStatus.OK);
+    }
+}
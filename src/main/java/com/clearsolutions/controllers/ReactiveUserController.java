@@ -0,0 +1,131 @@
+package com.clearsolutions.controllers;
+
+import com.clearsolutions.dto.ResponseDTO;
+import com.clearsolutions.dto.UserDTO;
+import com.clearsolutions.dto.UserPatchDTO;
+import com.clearsolutions.services.ReactiveUserService;
+import jakarta.validation.Valid;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+
+/**
+ * WebFlux variant of {@link UserController}, active when the application runs as a reactive web application.
+ */
+@RestController
+@RequestMapping("/api")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveUserController {
+
+    private final ReactiveUserService userService;
+
+    public ReactiveUserController(ReactiveUserService userService) {
+        this.userService = userService;
+    }
+
+    @PostMapping("/users")
+    public Mono<ResponseEntity<String>> createUser(@Valid @RequestBody UserDTO userDTO) {
+
+        return userService.createUser(userDTO)
+                .map(user -> new ResponseEntity<>("User registered!", HttpStatus.CREATED));
+    }
+
+    @GetMapping("/users/{id}")
+    public Mono<ResponseEntity<ResponseDTO>> getUserById(@PathVariable("id") int userId) {
+
+        return userService.getUserById(userId)
+                .map(ReactiveUserController::ok);
+    }
+
+    @GetMapping("/users")
+    public Mono<ResponseEntity<ResponseDTO>> getAllUsers(
+            @RequestParam(value = "after", required = false) String after,
+            @RequestParam(value = "limit", defaultValue = "100") int limit
+    ) {
+
+        return userService.getAllUsers(after, limit)
+                .map(ReactiveUserController::ok);
+    }
+
+    // rows are pulled from the database only as fast as the client reads them
+    @GetMapping(value = "/users", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<UserDTO> streamAllUsers() {
+
+        return userService.streamAllUsers();
+    }
+
+    @GetMapping("/usersByBirthDateRange")
+    public Mono<ResponseEntity<ResponseDTO>> getUsersByBirthDateRange(
+            @RequestParam("fromDate") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime fromDate,
+            @RequestParam("toDate") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime toDate,
+            @RequestParam(value = "after", required = false) String after,
+            @RequestParam(value = "limit", defaultValue = "100") int limit
+    ) {
+
+        return userService.getUsersByBirthDateRange(fromDate, toDate, after, limit)
+                .map(ReactiveUserController::ok);
+    }
+
+    @GetMapping(value = "/usersByBirthDateRange", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<UserDTO> streamUsersByBirthDateRange(
+            @RequestParam("fromDate") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime fromDate,
+            @RequestParam("toDate") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime toDate
+    ) {
+
+        return userService.streamUsersByBirthDateRange(fromDate, toDate);
+    }
+
+    @GetMapping("/usersByBirthDateRange/count")
+    public Mono<ResponseEntity<ResponseDTO>> countUsersByBirthDateRange(
+            @RequestParam("fromDate") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime fromDate,
+            @RequestParam("toDate") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime toDate,
+            @RequestParam(value = "groupBy", required = false) String groupBy
+    ) {
+
+        return userService.countUsersByBirthDateRange(fromDate, toDate, groupBy)
+                .map(ReactiveUserController::ok);
+    }
+
+    @PutMapping("/users/{id}")
+    public Mono<ResponseEntity<ResponseDTO>> updateUserById(@Valid @RequestBody UserDTO userDTO, @PathVariable("id") int userId) {
+
+        return userService.updateUserById(userId, userDTO)
+                .map(ReactiveUserController::ok);
+    }
+
+    @PatchMapping("/users/{id}")
+    public Mono<ResponseEntity<Void>> patchUserById(
+            @Valid @RequestBody UserPatchDTO patch,
+            @PathVariable("id") int userId,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch
+    ) {
+
+        return userService.patchUserById(userId, UserController.parseVersion(ifMatch), patch)
+                .then(Mono.just(ResponseEntity.noContent().build()));
+    }
+
+    @DeleteMapping("/users/{id}")
+    public Mono<ResponseEntity<String>> deleteUserById(@PathVariable("id") int userId) {
+
+        return userService.deleteUserById(userId)
+                .then(Mono.just(new ResponseEntity<>("Deleted user with id = " + userId, HttpStatus.OK)));
+    }
+
+    private static ResponseEntity<ResponseDTO> ok(Object data) {
+
+        ResponseDTO response = ResponseDTO.builder()
+                .data(data)
+                .timestamp(LocalDateTime.now())
+                .build();
+
+        return new ResponseEntity<>(response, HttpStatus.OK);
+    }
+}
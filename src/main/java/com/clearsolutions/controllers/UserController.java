@@ -1,26 +1,91 @@
 
 package com.clearsolutions.controllers;
 
+import com.clearsolutions.cache.UserJsonCache;
+import com.clearsolutions.config.BinaryFormatConfig;
+import com.clearsolutions.dto.BirthDateCountDTO;
+import com.clearsolutions.dto.BulkImportResultDTO;
+import com.clearsolutions.dto.PageDTO;
+import com.clearsolutions.dto.UserChangeDTO;
 import com.clearsolutions.dto.ResponseDTO;
+import com.clearsolutions.dto.UserBatchDTO;
+import com.clearsolutions.dto.UserBatchGetDTO;
+import com.clearsolutions.dto.SearchResultDTO;
 import com.clearsolutions.dto.UserDTO;
+import com.clearsolutions.dto.UserPatchDTO;
+import com.clearsolutions.dto.UserWriteStatusDTO;
+import com.clearsolutions.exception.ProblemDetails;
+import com.clearsolutions.services.UserChangeService;
+import com.clearsolutions.services.UserExportService;
+import com.clearsolutions.services.UserImportService;
 import com.clearsolutions.services.UserService;
+import com.clearsolutions.services.UserWriteBehindService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ProblemDetail;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.MimeTypeUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Base64;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class UserController {
 
+    // an idle change stream sends a comment this often, so proxies keep it open and dead clients are noticed
+    private static final Duration CHANGES_HEARTBEAT = Duration.ofSeconds(15);
+
     private final UserService userService;
+    private final UserImportService userImportService;
+    private final UserWriteBehindService userWriteBehindService;
+    private final UserChangeService userChangeService;
+    private final UserExportService userExportService;
+    private final ObjectMapper objectMapper;
+    private final UserJsonCache userJsonCache;
 
-    public UserController(UserService userService) {
+    public UserController(UserService userService, UserImportService userImportService,
+                          UserWriteBehindService userWriteBehindService, UserChangeService userChangeService,
+                          UserExportService userExportService, ObjectMapper objectMapper, UserJsonCache userJsonCache) {
         this.userService = userService;
+        this.userImportService = userImportService;
+        this.userWriteBehindService = userWriteBehindService;
+        this.userChangeService = userChangeService;
+        this.userExportService = userExportService;
+        this.objectMapper = objectMapper;
+        this.userJsonCache = userJsonCache;
     }
 
     @PostMapping("/users")
@@ -31,10 +96,117 @@ public class UserController {
         return new ResponseEntity<>("User registered!", HttpStatus.CREATED);
     }
 
-    @GetMapping("/users/{id}")
-    public ResponseEntity<ResponseDTO> getUserById(@PathVariable("id") int userId) {
+    @PostMapping("/users/async")
+    public ResponseEntity<ResponseDTO> createUserAsync(@Valid @RequestBody UserDTO userDTO) {
+
+        UserWriteStatusDTO data = userWriteBehindService.submit(userDTO);
+        ResponseDTO response = ResponseDTO.builder()
+                .data(data)
+                .timestamp(LocalDateTime.now())
+                .build();
+
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/users/async/" + data.getTrackingId()))
+                .body(response);
+    }
+
+    @GetMapping("/users/async/{trackingId}")
+    public ResponseEntity<ResponseDTO> getWriteStatus(@PathVariable("trackingId") String trackingId) {
+
+        UserWriteStatusDTO data = userWriteBehindService.getStatus(trackingId);
+        ResponseDTO response = ResponseDTO.builder()
+                .data(data)
+                .timestamp(LocalDateTime.now())
+                .build();
+
+        return new ResponseEntity<>(response, HttpStatus.OK);
+    }
+
+    @PostMapping(value = "/users/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<ResponseDTO> importUsers(InputStream body) throws IOException {
+
+        BulkImportResultDTO data;
+        // reads a JSON array or newline-delimited objects one row at a time
+        try (MappingIterator<UserDTO> users = objectMapper.readerFor(UserDTO.class).readValues(body)) {
+            data = userImportService.importUsers(users);
+        }
+        ResponseDTO response = ResponseDTO.builder()
+                .data(data)
+                .timestamp(LocalDateTime.now())
+                .build();
+
+        return new ResponseEntity<>(response, HttpStatus.OK);
+    }
+
+    @GetMapping(value = "/users/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> getUserById(@PathVariable("id") int userId, WebRequest request,
+                                         HttpServletResponse servletResponse) {
+
+        UserDTO user = userService.findUserById(userId).orElse(null);
+        if (user == null) {
+            return userNotFound(userId);
+        }
+        varyByAccept(servletResponse);
+        String eTag = UserJsonCache.eTag(user);
+        long lastModified = lastModified(user.getUpdatedAt());
+        if (request.checkNotModified(eTag, lastModified)) {
+            // 304 with ETag and Last-Modified is already set on the response
+            return null;
+        }
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(eTag)
+                .lastModified(lastModified)
+                .body(userJsonCache.toResponse(user, LocalDateTime.now()));
+    }
+
+    @GetMapping(value = "/users/{id}", produces = {BinaryFormatConfig.APPLICATION_SMILE_VALUE, MediaType.APPLICATION_CBOR_VALUE})
+    public ResponseEntity<?> getBinaryUserById(@PathVariable("id") int userId, WebRequest request,
+                                               HttpServletResponse servletResponse) {
+
+        UserDTO user = userService.findUserById(userId).orElse(null);
+        if (user == null) {
+            return userNotFound(userId);
+        }
+        varyByAccept(servletResponse);
+        MediaType mediaType = binaryMediaType(request);
+        // a strong validator must not match the bytes of another format
+        String format = mediaType.equals(BinaryFormatConfig.APPLICATION_SMILE) ? "smile" : "cbor";
+        String eTag = "\"" + user.getVersion() + '-' + format + '"';
+        long lastModified = lastModified(user.getUpdatedAt());
+        if (request.checkNotModified(eTag, lastModified)) {
+            return null;
+        }
+        ResponseDTO response = ResponseDTO.builder()
+                .data(user)
+                .timestamp(LocalDateTime.now())
+                .build();
+
+        return ResponseEntity.ok()
+                .contentType(mediaType)
+                .eTag(eTag)
+                .lastModified(lastModified)
+                .body(response);
+    }
+
+    // POST so that thousands of ids are not bound by URL length limits
+    @PostMapping("/users/batch-get")
+    public ResponseEntity<ResponseDTO> getUsersByIds(@Valid @RequestBody UserBatchGetDTO batchGet) {
+
+        UserBatchDTO data = userService.getUsersByIds(batchGet.getIds());
+        ResponseDTO response = ResponseDTO.builder()
+                .data(data)
+                .timestamp(LocalDateTime.now())
+                .build();
+
+        return new ResponseEntity<>(response, HttpStatus.OK);
+    }
+
+    @GetMapping("/users/by-email")
+    public ResponseEntity<ResponseDTO> getUserByEmail(@RequestParam("email") String email) {
 
-        UserDTO data = userService.getUserById(userId);
+        UserDTO data = userService.getUserByEmail(email);
         ResponseDTO response = ResponseDTO.builder()
                 .data(data)
                 .timestamp(LocalDateTime.now())
@@ -44,9 +216,99 @@ public class UserController {
     }
 
     @GetMapping("/users")
-    public ResponseEntity<ResponseDTO> getAllUsers() {
+    public ResponseEntity<ResponseDTO> getAllUsers(
+            @RequestParam(value = "after", required = false) String after,
+            @RequestParam(value = "limit", defaultValue = "100") int limit,
+            @RequestParam(value = "fields", required = false) Set<String> fields,
+            WebRequest request,
+            HttpServletResponse servletResponse
+    ) {
+
+        PageDTO<?> data = fields == null || fields.isEmpty()
+                ? userService.getAllUsers(after, limit)
+                : userService.getAllUsers(after, limit, fields);
+        varyByAccept(servletResponse);
+        if (notModified(request, data)) {
+            return null;
+        }
+        ResponseDTO response = ResponseDTO.builder()
+                .data(data)
+                .timestamp(LocalDateTime.now())
+                .build();
+
+        return new ResponseEntity<>(response, HttpStatus.OK);
+    }
+
+    @GetMapping(value = "/users", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllUsers() {
+
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                // rows are separated by the explicit newline below, not by Jackson's default space
+                generator.setRootValueSeparator(null);
+                userService.streamAllUsers(user -> {
+                    try {
+                        generator.writeObject(user);
+                        generator.writeRaw('\n');
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                });
+            }
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
 
-        List<UserDTO> data = userService.getAllUsers();
+    /**
+     * Full or birth-date filtered dump, streamed row by row; gzip-compressed when the client accepts it.
+     */
+    @GetMapping("/users/export")
+    public ResponseEntity<StreamingResponseBody> exportUsers(
+            @RequestParam(value = "format", defaultValue = "csv") String format,
+            @RequestParam(value = "fromDate", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime fromDate,
+            @RequestParam(value = "toDate", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime toDate,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding
+    ) {
+
+        UserExportService.Format exportFormat = UserExportService.Format.of(format);
+        UserExportService.UserExport export = userExportService.prepareExport(exportFormat, fromDate, toDate);
+        boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase(Locale.ROOT).contains("gzip");
+
+        StreamingResponseBody body = outputStream -> {
+            if (gzip) {
+                try (GZIPOutputStream compressed = new GZIPOutputStream(outputStream, 64 * 1024)) {
+                    export.writeTo(compressed);
+                }
+            } else {
+                export.writeTo(outputStream);
+            }
+        };
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(exportFormat.getContentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename("users." + exportFormat.getFileExtension())
+                        .build()
+                        .toString())
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+
+        return response.body(body);
+    }
+
+    @GetMapping("/users/search")
+    public ResponseEntity<ResponseDTO> searchUsers(
+            @RequestParam("q") String query,
+            @RequestParam(value = "page", defaultValue = "0") int page,
+            @RequestParam(value = "size", defaultValue = "20") int size
+    ) {
+
+        SearchResultDTO<UserDTO> data = userService.searchUsers(query, page, size);
         ResponseDTO response = ResponseDTO.builder()
                 .data(data)
                 .timestamp(LocalDateTime.now())
@@ -55,13 +317,83 @@ public class UserController {
         return new ResponseEntity<>(response, HttpStatus.OK);
     }
 
+    /**
+     * Long poll: answers right away when there are changes after {@code since}, otherwise waits up to
+     * {@code wait} seconds for one.
+     */
+    @GetMapping("/users/changes")
+    public CompletableFuture<ResponseEntity<ResponseDTO>> getUserChanges(
+            @RequestParam(value = "since", defaultValue = "0") long since,
+            @RequestParam(value = "limit", defaultValue = "100") int limit,
+            @RequestParam(value = "wait", defaultValue = "0") long waitSeconds
+    ) {
+
+        return userChangeService.awaitChanges(since, limit, Duration.ofSeconds(waitSeconds))
+                .thenApply(data -> {
+                    ResponseDTO response = ResponseDTO.builder()
+                            .data(data)
+                            .timestamp(LocalDateTime.now())
+                            .build();
+
+                    return new ResponseEntity<>(response, HttpStatus.OK);
+                });
+    }
+
+    /**
+     * Server-sent events, one per change with the offset as event id, so a reconnecting client resumes
+     * from its Last-Event-ID.
+     */
+    @GetMapping(value = "/users/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamUserChanges(
+            @RequestParam(value = "since", defaultValue = "0") long since,
+            @RequestParam(value = "limit", defaultValue = "100") int limit,
+            @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId
+    ) {
+
+        // no timeout, the stream lasts until the client goes away
+        SseEmitter emitter = new SseEmitter(0L);
+        AtomicBoolean open = new AtomicBoolean(true);
+        emitter.onCompletion(() -> open.set(false));
+        emitter.onError(ex -> open.set(false));
+        streamChanges(emitter, open, lastEventId != null ? lastEventId : since, limit);
+
+        return emitter;
+    }
+
     @GetMapping("/usersByBirthDateRange")
     public ResponseEntity<ResponseDTO> getUsersByBirthDateRange(
             @RequestParam("fromDate") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime fromDate,
-            @RequestParam("toDate") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime toDate
+            @RequestParam("toDate") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime toDate,
+            @RequestParam(value = "after", required = false) String after,
+            @RequestParam(value = "limit", defaultValue = "100") int limit,
+            @RequestParam(value = "fields", required = false) Set<String> fields,
+            WebRequest request,
+            HttpServletResponse servletResponse
+    ) {
+
+        PageDTO<?> data = fields == null || fields.isEmpty()
+                ? userService.getUsersByBirthDateRange(fromDate, toDate, after, limit)
+                : userService.getUsersByBirthDateRange(fromDate, toDate, after, limit, fields);
+        varyByAccept(servletResponse);
+        if (notModified(request, data)) {
+            return null;
+        }
+        ResponseDTO response = ResponseDTO.builder()
+                .data(data)
+                .timestamp(LocalDateTime.now())
+                .build();
+
+        return new ResponseEntity<>(response, HttpStatus.OK);
+    }
+
+    @GetMapping("/usersByBirthDateRange/count")
+    public ResponseEntity<ResponseDTO> countUsersByBirthDateRange(
+            @RequestParam("fromDate") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime fromDate,
+            @RequestParam("toDate") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime toDate,
+            @RequestParam(value = "groupBy", required = false) String groupBy
     ) {
 
-        List<UserDTO> data = userService.getUsersByBirthDateRange(fromDate, toDate);
+        BirthDateCountDTO data = userService.countUsersByBirthDateRange(fromDate, toDate, groupBy);
         ResponseDTO response = ResponseDTO.builder()
                 .data(data)
                 .timestamp(LocalDateTime.now())
@@ -82,6 +414,18 @@ public class UserController {
         return new ResponseEntity<>(response, HttpStatus.OK);
     }
 
+    @PatchMapping("/users/{id}")
+    public ResponseEntity<Void> patchUserById(
+            @Valid @RequestBody UserPatchDTO patch,
+            @PathVariable("id") int userId,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch
+    ) {
+
+        userService.patchUserById(userId, parseVersion(ifMatch), patch);
+
+        return ResponseEntity.noContent().build();
+    }
+
     @DeleteMapping("/users/{id}")
     public ResponseEntity<String> deleteUserById(@PathVariable("id") int userId) {
 
@@ -89,4 +433,128 @@ public class UserController {
 
         return new ResponseEntity<>("Deleted user with id = " + userId, HttpStatus.OK);
     }
+
+    private void streamChanges(SseEmitter emitter, AtomicBoolean open, long since, int limit) {
+
+        userChangeService.awaitChanges(since, limit, CHANGES_HEARTBEAT).whenComplete((data, ex) -> {
+            if (!open.get()) {
+                return;
+            }
+            if (ex != null) {
+                emitter.completeWithError(ex);
+                return;
+            }
+            try {
+                if (data.getItems().isEmpty()) {
+                    emitter.send(SseEmitter.event().comment("heartbeat"));
+                }
+                for (UserChangeDTO change : data.getItems()) {
+                    emitter.send(SseEmitter.event()
+                            .id(String.valueOf(change.getOffset()))
+                            .name(change.getType().name())
+                            .data(change, MediaType.APPLICATION_JSON));
+                }
+            } catch (IOException | IllegalStateException sendEx) {
+                // the client disconnected
+                open.set(false);
+                return;
+            }
+            streamChanges(emitter, open, data.getLastOffset(), limit);
+        });
+    }
+
+    /**
+     * Weak validator over the ids and versions of the page's items plus its cursor, so polling an unchanged page
+     * returns 304 without a body. Every write bumps the version, so nothing has to be serialized to tell pages apart.
+     */
+    private static boolean notModified(WebRequest request, PageDTO<?> page) {
+
+        long lastModified = -1;
+        Map<Integer, Long> versions = page.getVersions();
+        if (versions == null) {
+            versions = new LinkedHashMap<>();
+            for (Object item : page.getItems()) {
+                if (!(item instanceof UserDTO user)) {
+                    // without versions the page cannot be told from an older copy of itself
+                    return false;
+                }
+                versions.put(user.getId(), user.getVersion());
+                lastModified = Math.max(lastModified, lastModified(user.getUpdatedAt()));
+            }
+        }
+
+        ByteBuffer ids = ByteBuffer.allocate(versions.size() * (Integer.BYTES + Long.BYTES));
+        versions.forEach((id, version) -> ids.putInt(id).putLong(version));
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            // every Java platform has to support SHA-256
+            throw new IllegalStateException(ex);
+        }
+        digest.update(ids.flip());
+        if (page.getNextCursor() != null) {
+            digest.update(page.getNextCursor().getBytes(StandardCharsets.US_ASCII));
+        }
+
+        return request.checkNotModified("W/\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(digest.digest()) + '"', lastModified);
+    }
+
+    // the binary format the Accept header prefers, picked like the message converters pick it
+    private static MediaType binaryMediaType(WebRequest request) {
+
+        List<MediaType> accepted = MediaType.parseMediaTypes(request.getHeader(HttpHeaders.ACCEPT));
+        MimeTypeUtils.sortBySpecificity(accepted);
+        for (MediaType mediaType : accepted) {
+            if (mediaType.isCompatibleWith(BinaryFormatConfig.APPLICATION_SMILE)) {
+                return BinaryFormatConfig.APPLICATION_SMILE;
+            }
+            if (mediaType.isCompatibleWith(MediaType.APPLICATION_CBOR)) {
+                return MediaType.APPLICATION_CBOR;
+            }
+        }
+
+        return MediaType.APPLICATION_CBOR;
+    }
+
+    // JSON, Smile and CBOR share the URL, so caches must keep them apart; set before any 304 so it carries it too
+    private static void varyByAccept(HttpServletResponse servletResponse) {
+
+        servletResponse.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+    }
+
+    // ids are probed a lot, so a missing user is answered here instead of going through an exception
+    private static ResponseEntity<ProblemDetail> userNotFound(int userId) {
+
+        return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .contentType(MediaType.APPLICATION_PROBLEM_JSON)
+                .body(ProblemDetails.of(HttpStatus.NOT_FOUND, "User with id = " + userId + " - not found!"));
+    }
+
+    private static long lastModified(LocalDateTime updatedAt) {
+
+        return updatedAt == null ? -1 : updatedAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    static Long parseVersion(String ifMatch) {
+
+        if (ifMatch == null) {
+            return null;
+        }
+
+        String version = ifMatch.trim();
+        if (version.startsWith("W/")) {
+            version = version.substring(2);
+        }
+        version = version.replace("\"", "");
+        // the Smile and CBOR representations carry their format after the version, see getBinaryUserById
+        if (version.endsWith("-smile") || version.endsWith("-cbor")) {
+            version = version.substring(0, version.lastIndexOf('-'));
+        }
+        try {
+            return Long.parseLong(version);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("'If-Match' must contain the user version!");
+        }
+    }
 }
@@ -0,0 +1,24 @@
+package com.clearsolutions.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+public class BirthDateBucketDTO {
+
+    private int year;
+    // null when grouping by year only
+    private Integer month;
+    private long count;
+
+    public BirthDateBucketDTO(Integer year, Long count) {
+        this(year, null, count);
+    }
+
+    public BirthDateBucketDTO(Integer year, Integer month, Long count) {
+        this.year = year;
+        this.month = month;
+        this.count = count;
+    }
+}
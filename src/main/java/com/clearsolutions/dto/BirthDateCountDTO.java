@@ -0,0 +1,19 @@
+package com.clearsolutions.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class BirthDateCountDTO {
+
+    private long total;
+    // null unless the count was grouped by year or month
+    private List<BirthDateBucketDTO> buckets;
+}
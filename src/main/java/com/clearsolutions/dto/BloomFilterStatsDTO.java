@@ -0,0 +1,19 @@
+package com.clearsolutions.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class BloomFilterStatsDTO {
+
+    private long approximateElementCount;
+    private double expectedFalsePositiveRate;
+    private long bitSize;
+    private int hashFunctions;
+    private long memoryBytes;
+}
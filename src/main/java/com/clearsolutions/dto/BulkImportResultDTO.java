@@ -0,0 +1,21 @@
+package com.clearsolutions.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class BulkImportResultDTO {
+
+    private int received;
+    private int imported;
+    private int rejected;
+    // capped, so a file full of bad rows cannot blow up the response
+    private List<BulkRowErrorDTO> errors;
+}
@@ -0,0 +1,19 @@
+package com.clearsolutions.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class BulkRowErrorDTO {
+
+    // zero-based position of the row in the uploaded document
+    private int row;
+    private Map<String, String> errors;
+}
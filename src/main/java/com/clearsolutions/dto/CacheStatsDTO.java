@@ -0,0 +1,19 @@
+package com.clearsolutions.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class CacheStatsDTO {
+
+    private long size;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private double hitRate;
+}
@@ -0,0 +1,28 @@
+package com.clearsolutions.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class PageDTO<T> {
+
+    private List<T> items;
+    // opaque cursor for the next page, null when there are no more rows
+    private String nextCursor;
+    // id to version of every item, set for projected items, which may hold neither; never serialized
+    @JsonIgnore
+    private Map<Integer, Long> versions;
+
+    public PageDTO(List<T> items, String nextCursor) {
+        this(items, nextCursor, null);
+    }
+}
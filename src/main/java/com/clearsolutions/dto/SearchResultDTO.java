@@ -0,0 +1,21 @@
+package com.clearsolutions.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class SearchResultDTO<T> {
+
+    // best match first
+    private List<T> items;
+    private int page;
+    private int size;
+    private long total;
+}
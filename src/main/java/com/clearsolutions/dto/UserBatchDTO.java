@@ -0,0 +1,32 @@
+package com.clearsolutions.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class UserBatchDTO {
+
+    // one per requested id, in request order, repeated ids included
+    private List<Item> items;
+    private int found;
+    private int notFound;
+
+    @Data
+    @Builder
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Item {
+
+        private int id;
+        private boolean found;
+        // null when not found
+        private UserDTO user;
+    }
+}
@@ -0,0 +1,23 @@
+package com.clearsolutions.dto;
+
+import com.clearsolutions.services.impl.UserServiceImpl;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class UserBatchGetDTO {
+
+    @NotEmpty(message = "ids must not be empty!")
+    @Size(max = UserServiceImpl.MAX_BATCH_GET_IDS, message = "at most " + UserServiceImpl.MAX_BATCH_GET_IDS + " ids are allowed!")
+    private List<@NotNull(message = "ids must not contain null!") Integer> ids;
+}
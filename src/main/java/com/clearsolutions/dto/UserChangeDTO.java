@@ -0,0 +1,25 @@
+package com.clearsolutions.dto;
+
+import com.clearsolutions.events.UserChangedEvent;
+import com.fasterxml.jackson.annotation.JsonRawValue;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class UserChangeDTO {
+
+    private long offset;
+    private int userId;
+    private UserChangedEvent.Type type;
+    // the stored UserDTO JSON, written out as is; null for deletes
+    @JsonRawValue
+    private String user;
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,19 @@
+package com.clearsolutions.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class UserChangesDTO {
+
+    private List<UserChangeDTO> items;
+    // pass it back as 'since' to continue after these items
+    private long lastOffset;
+}
@@ -29,4 +29,8 @@ public class UserDTO {
     private LocalDateTime birthDate;
     private String address;
     private String phoneNumber;
+    // read-only, send it back in If-Match to update conditionally
+    private long version;
+    // read-only, time of the last write
+    private LocalDateTime updatedAt;
 }
@@ -0,0 +1,38 @@
+package com.clearsolutions.dto;
+
+import jakarta.validation.constraints.Email;
+import jakarta.validation.constraints.Past;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Partial update of a user, null fields are left unchanged.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class UserPatchDTO {
+
+    @Email(message = "email format is not correct!")
+    private String email;
+    @Size(min = 2, message = "user first name should have at least 2 characters!")
+    private String firstName;
+    @Size(min = 2, message = "user last name should have at least 2 characters!")
+    private String lastName;
+    @Past(message = "must contain a past date!")
+    private LocalDateTime birthDate;
+    private String address;
+    private String phoneNumber;
+
+    public boolean isEmpty() {
+
+        return email == null && firstName == null && lastName == null
+                && birthDate == null && address == null && phoneNumber == null;
+    }
+}
@@ -0,0 +1,22 @@
+package com.clearsolutions.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class UserWriteStatusDTO {
+
+    private String trackingId;
+    private Status status;
+    // why a write failed, empty otherwise
+    private String message;
+
+    public enum Status {
+        QUEUED, WRITTEN, FAILED
+    }
+}
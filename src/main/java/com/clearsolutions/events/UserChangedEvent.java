@@ -0,0 +1,15 @@
+package com.clearsolutions.events;
+
+import com.clearsolutions.dto.UserDTO;
+
+/**
+ * Published after a user is created, updated or deleted.
+ *
+ * @param user the new state when the publisher already has it, null after a delete or a partial update
+ */
+public record UserChangedEvent(int userId, Type type, UserDTO user) {
+
+    public enum Type {
+        CREATED, UPDATED, DELETED
+    }
+}
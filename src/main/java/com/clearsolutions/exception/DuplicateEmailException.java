@@ -0,0 +1,13 @@
+package com.clearsolutions.exception;
+
+import java.io.Serial;
+
+public class DuplicateEmailException extends RuntimeException {
+
+    @Serial
+    private static final long serialVersionUID = 4;
+
+    public DuplicateEmailException(String message) {
+        super(message);
+    }
+}
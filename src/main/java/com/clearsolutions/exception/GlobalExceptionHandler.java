@@ -1,8 +1,16 @@
 package com.clearsolutions.exception;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.expression.AccessException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ProblemDetail;
 import org.springframework.http.ResponseEntity;
+import org.springframework.validation.BindingResult;
 import org.springframework.validation.FieldError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -10,67 +18,144 @@ import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.context.request.WebRequest;
 
-import java.time.LocalDateTime;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 @ControllerAdvice
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class GlobalExceptionHandler {
 
+    static final String ERRORS_METER = "user.api.errors";
+
+    // absent in web slice tests, errors are then simply not counted
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    public GlobalExceptionHandler(ObjectProvider<MeterRegistry> meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
     @ExceptionHandler(RuntimeException.class)
-    public ResponseEntity<ErrorObject> handleRuntimeException(RuntimeException ex, WebRequest request) {
+    public ResponseEntity<ProblemDetail> handleRuntimeException(RuntimeException ex, WebRequest request) {
+
+        countError(HttpStatus.INTERNAL_SERVER_ERROR, ex);
 
-        ErrorObject errorObject = ErrorObject.builder()
-                .statusCode(HttpStatus.INTERNAL_SERVER_ERROR.value())
-                .message(ex.getMessage())
-                .timestamp(LocalDateTime.now())
-                .build();
+        ProblemDetail problem = ProblemDetails.of(HttpStatus.INTERNAL_SERVER_ERROR, ex.getMessage());
 
-        return new ResponseEntity<>(errorObject, HttpStatus.INTERNAL_SERVER_ERROR);
+        return new ResponseEntity<>(problem, HttpStatus.INTERNAL_SERVER_ERROR);
     }
 
     @ExceptionHandler(IllegalArgumentException.class)
-    public ResponseEntity<ErrorObject> handleIllegalArgumentException(IllegalArgumentException ex, WebRequest request) {
+    public ResponseEntity<ProblemDetail> handleIllegalArgumentException(IllegalArgumentException ex, WebRequest request) {
 
-        ErrorObject errorObject = ErrorObject.builder()
-                .statusCode(HttpStatus.BAD_REQUEST.value())
-                .message(ex.getMessage())
-                .timestamp(LocalDateTime.now())
-                .build();
+        countError(HttpStatus.BAD_REQUEST, ex);
 
-        return new ResponseEntity<>(errorObject, HttpStatus.BAD_REQUEST);
+        ProblemDetail problem = ProblemDetails.of(HttpStatus.BAD_REQUEST, ex.getMessage());
+
+        return new ResponseEntity<>(problem, HttpStatus.BAD_REQUEST);
     }
 
     @ExceptionHandler(UserNotFoundException.class)
-    public ResponseEntity<ErrorObject> handleUserNotFoundException(UserNotFoundException ex, WebRequest request) {
+    public ResponseEntity<ProblemDetail> handleUserNotFoundException(UserNotFoundException ex, WebRequest request) {
+
+        countError(HttpStatus.NOT_FOUND, ex);
+
+        ProblemDetail problem = ProblemDetails.of(HttpStatus.NOT_FOUND, ex.getMessage());
+
+        return new ResponseEntity<>(problem, HttpStatus.NOT_FOUND);
+    }
 
-        ErrorObject errorObject = ErrorObject.builder()
-                .statusCode(HttpStatus.NOT_FOUND.value())
-                .message(ex.getMessage())
-                .timestamp(LocalDateTime.now())
-                .build();
+    @ExceptionHandler({UserVersionConflictException.class, OptimisticLockingFailureException.class})
+    public ResponseEntity<ProblemDetail> handleVersionConflictException(RuntimeException ex, WebRequest request) {
 
-        return new ResponseEntity<>(errorObject, HttpStatus.NOT_FOUND);
+        countError(HttpStatus.CONFLICT, ex);
+
+        ProblemDetail problem = ProblemDetails.of(HttpStatus.CONFLICT, ex instanceof UserVersionConflictException ? ex.getMessage() : "User was modified concurrently!");
+
+        return new ResponseEntity<>(problem, HttpStatus.CONFLICT);
+    }
+
+    @ExceptionHandler(DuplicateEmailException.class)
+    public ResponseEntity<ProblemDetail> handleDuplicateEmailException(DuplicateEmailException ex, WebRequest request) {
+
+        countError(HttpStatus.CONFLICT, ex);
+
+        ProblemDetail problem = ProblemDetails.of(HttpStatus.CONFLICT, ex.getMessage());
+
+        return new ResponseEntity<>(problem, HttpStatus.CONFLICT);
+    }
+
+    @ExceptionHandler(WriteQueueFullException.class)
+    public ResponseEntity<ProblemDetail> handleWriteQueueFullException(WriteQueueFullException ex, WebRequest request) {
+
+        countError(HttpStatus.TOO_MANY_REQUESTS, ex);
+
+        ProblemDetail problem = ProblemDetails.of(HttpStatus.TOO_MANY_REQUESTS, ex.getMessage());
+
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(problem);
+    }
+
+    @ExceptionHandler(RateLimitExceededException.class)
+    public ResponseEntity<ProblemDetail> handleRateLimitExceededException(RateLimitExceededException ex, WebRequest request) {
+
+        countError(HttpStatus.TOO_MANY_REQUESTS, ex);
+
+        ProblemDetail problem = ProblemDetails.of(HttpStatus.TOO_MANY_REQUESTS, ex.getMessage());
+
+        // whole seconds, rounded up so a client retrying on time is not rejected again
+        long retryAfter = Math.max(1, ex.getRetryAfter().plusSeconds(1).minusNanos(1).toSeconds());
+
+        // rejected before the handler ran, also for streaming endpoints whose own format cannot carry the error
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter))
+                .contentType(MediaType.APPLICATION_PROBLEM_JSON)
+                .body(problem);
+    }
+
+    @ExceptionHandler(ServiceOverloadedException.class)
+    public ResponseEntity<ProblemDetail> handleServiceOverloadedException(ServiceOverloadedException ex, WebRequest request) {
+
+        countError(HttpStatus.SERVICE_UNAVAILABLE, ex);
+
+        ProblemDetail problem = ProblemDetails.of(HttpStatus.SERVICE_UNAVAILABLE, ex.getMessage());
+
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .contentType(MediaType.APPLICATION_PROBLEM_JSON)
+                .body(problem);
     }
 
     @ExceptionHandler(MethodArgumentNotValidException.class)
-    public ResponseEntity<ErrorObject> handleMethodArgumentNotValidException(MethodArgumentNotValidException ex) {
+    public ResponseEntity<ProblemDetail> handleMethodArgumentNotValidException(MethodArgumentNotValidException ex) {
 
-        Map<String, String> errors = new HashMap<>();
+        countError(HttpStatus.BAD_REQUEST, ex);
 
-        ex.getBindingResult().getAllErrors().forEach((error) -> {
-            String fieldName = ((FieldError) error).getField();
-            String errorMessage = error.getDefaultMessage();
-            errors.put(fieldName, errorMessage);
-        });
+        ProblemDetail problem = ProblemDetails.of(HttpStatus.BAD_REQUEST, "Request body is not valid!");
+        problem.setProperty("errors", fieldErrors(ex.getBindingResult()));
+
+        return new ResponseEntity<>(problem, HttpStatus.BAD_REQUEST);
+    }
+
+    /**
+     * First message per rejected field, in the order the validator reported them.
+     */
+    static Map<String, String> fieldErrors(BindingResult bindingResult) {
+
+        Map<String, String> errors = new LinkedHashMap<>();
+        for (FieldError error : bindingResult.getFieldErrors()) {
+            errors.putIfAbsent(error.getField(), error.getDefaultMessage());
+        }
+
+        return errors;
+    }
 
-        ErrorObject errorObject = ErrorObject.builder()
-                .statusCode(HttpStatus.BAD_REQUEST.value())
-                .message(errors.toString())
-                .timestamp(LocalDateTime.now())
-                .build();
+    private void countError(HttpStatus status, Exception ex) {
 
-        return new ResponseEntity<>(errorObject, HttpStatus.BAD_REQUEST);
+        meterRegistry.ifAvailable(registry -> registry.counter(ERRORS_METER,
+                        "status", String.valueOf(status.value()),
+                        "exception", ex.getClass().getSimpleName())
+                .increment());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,23 @@
+package com.clearsolutions.exception;
+
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ProblemDetail;
+
+import java.time.LocalDateTime;
+
+/**
+ * RFC 7807 bodies of all error responses, with the time of the error as an extra "timestamp" member.
+ */
+public final class ProblemDetails {
+
+    private ProblemDetails() {
+    }
+
+    public static ProblemDetail of(HttpStatusCode status, String detail) {
+
+        ProblemDetail problem = ProblemDetail.forStatusAndDetail(status, detail);
+        problem.setProperty("timestamp", LocalDateTime.now());
+
+        return problem;
+    }
+}
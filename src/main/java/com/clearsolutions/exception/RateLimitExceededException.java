@@ -0,0 +1,21 @@
+package com.clearsolutions.exception;
+
+import java.io.Serial;
+import java.time.Duration;
+
+public class RateLimitExceededException extends RuntimeException {
+
+    @Serial
+    private static final long serialVersionUID = 6;
+
+    private final Duration retryAfter;
+
+    public RateLimitExceededException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,85 @@
+package com.clearsolutions.exception;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ProblemDetail;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.support.WebExchangeBindException;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * WebFlux counterpart of {@link GlobalExceptionHandler}, producing the same error bodies.
+ */
+@ControllerAdvice
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveExceptionHandler {
+
+    // absent in web slice tests, errors are then simply not counted
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    public ReactiveExceptionHandler(ObjectProvider<MeterRegistry> meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @ExceptionHandler(RuntimeException.class)
+    public ResponseEntity<ProblemDetail> handleRuntimeException(RuntimeException ex) {
+
+        return error(HttpStatus.INTERNAL_SERVER_ERROR, ex, ex.getMessage());
+    }
+
+    @ExceptionHandler(ResponseStatusException.class)
+    public ResponseEntity<ProblemDetail> handleResponseStatusException(ResponseStatusException ex) {
+
+        return error(ex.getStatusCode(), ex, ex.getReason());
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<ProblemDetail> handleIllegalArgumentException(IllegalArgumentException ex) {
+
+        return error(HttpStatus.BAD_REQUEST, ex, ex.getMessage());
+    }
+
+    @ExceptionHandler(UserNotFoundException.class)
+    public ResponseEntity<ProblemDetail> handleUserNotFoundException(UserNotFoundException ex) {
+
+        return error(HttpStatus.NOT_FOUND, ex, ex.getMessage());
+    }
+
+    @ExceptionHandler({UserVersionConflictException.class, OptimisticLockingFailureException.class})
+    public ResponseEntity<ProblemDetail> handleVersionConflictException(RuntimeException ex) {
+
+        return error(HttpStatus.CONFLICT, ex,
+                ex instanceof UserVersionConflictException ? ex.getMessage() : "User was modified concurrently!");
+    }
+
+    @ExceptionHandler(DuplicateEmailException.class)
+    public ResponseEntity<ProblemDetail> handleDuplicateEmailException(DuplicateEmailException ex) {
+
+        return error(HttpStatus.CONFLICT, ex, ex.getMessage());
+    }
+
+    @ExceptionHandler(WebExchangeBindException.class)
+    public ResponseEntity<ProblemDetail> handleWebExchangeBindException(WebExchangeBindException ex) {
+
+        ResponseEntity<ProblemDetail> response = error(HttpStatus.BAD_REQUEST, ex, "Request body is not valid!");
+        response.getBody().setProperty("errors", GlobalExceptionHandler.fieldErrors(ex.getBindingResult()));
+
+        return response;
+    }
+
+    private ResponseEntity<ProblemDetail> error(HttpStatusCode status, Exception ex, String detail) {
+
+        meterRegistry.ifAvailable(registry -> registry.counter(GlobalExceptionHandler.ERRORS_METER,
+                        "status", String.valueOf(status.value()),
+                        "exception", ex.getClass().getSimpleName())
+                .increment());
+
+        return new ResponseEntity<>(ProblemDetails.of(status, detail), status);
+    }
+}
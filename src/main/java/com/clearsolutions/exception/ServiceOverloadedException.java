@@ -0,0 +1,13 @@
+package com.clearsolutions.exception;
+
+import java.io.Serial;
+
+public class ServiceOverloadedException extends RuntimeException {
+
+    @Serial
+    private static final long serialVersionUID = 7;
+
+    public ServiceOverloadedException(String message) {
+        super(message);
+    }
+}
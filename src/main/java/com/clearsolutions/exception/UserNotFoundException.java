@@ -2,12 +2,15 @@ package com.clearsolutions.exception;
 
 import java.io.Serial;
 
+/**
+ * Thrown for ids and emails clients merely probe, so it skips capturing a stack trace.
+ */
 public class UserNotFoundException extends RuntimeException {
 
     @Serial
     private static final long serialVersionUID = 2;
 
     public UserNotFoundException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 }
@@ -0,0 +1,13 @@
+package com.clearsolutions.exception;
+
+import java.io.Serial;
+
+public class UserVersionConflictException extends RuntimeException {
+
+    @Serial
+    private static final long serialVersionUID = 3;
+
+    public UserVersionConflictException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,13 @@
+package com.clearsolutions.exception;
+
+import java.io.Serial;
+
+public class WriteQueueFullException extends RuntimeException {
+
+    @Serial
+    private static final long serialVersionUID = 5;
+
+    public WriteQueueFullException(String message) {
+        super(message);
+    }
+}
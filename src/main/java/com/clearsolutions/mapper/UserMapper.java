@@ -2,32 +2,66 @@ package com.clearsolutions.mapper;
 
 import com.clearsolutions.dto.UserDTO;
 import com.clearsolutions.models.UserEntity;
+import com.clearsolutions.models.UserRow;
+import org.mapstruct.factory.Mappers;
 
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Static entry point to the mapping code MapStruct generates from {@link UserMappings}.
+ */
 public class UserMapper {
 
+    private static final UserMappings MAPPINGS = Mappers.getMapper(UserMappings.class);
+
     public static UserDTO mapToDto(UserEntity user) {
 
-        return UserDTO.builder()
-                .id(user.getId())
-                .email(user.getEmail())
-                .firstName(user.getFirstName())
-                .lastName(user.getLastName())
-                .birthDate(user.getBirthDate())
-                .address(user.getAddress())
-                .phoneNumber(user.getPhoneNumber())
-                .build();
+        return MAPPINGS.mapToDto(user);
     }
 
     public static UserEntity mapToEntity(UserDTO userDTO) {
 
-        return UserEntity.builder()
-                .id(userDTO.getId())
-                .email(userDTO.getEmail())
-                .firstName(userDTO.getFirstName())
-                .lastName(userDTO.getLastName())
-                .birthDate(userDTO.getBirthDate())
-                .address(userDTO.getAddress())
-                .phoneNumber(userDTO.getPhoneNumber())
-                .build();
+        return MAPPINGS.mapToEntity(userDTO);
+    }
+
+    public static UserDTO mapToDto(UserRow user) {
+
+        return MAPPINGS.mapToDto(user);
+    }
+
+    public static UserRow mapToRow(UserDTO userDTO) {
+
+        return MAPPINGS.mapToRow(userDTO);
+    }
+
+    /**
+     * Maps a page in one pre-sized list, instead of the growing one {@code stream().toList()} collects into.
+     */
+    public static List<UserDTO> mapAll(List<UserEntity> users) {
+
+        return MAPPINGS.mapAll(users);
+    }
+
+    public static List<UserDTO> mapAllRows(List<UserRow> users) {
+
+        return MAPPINGS.mapAllRows(users);
+    }
+
+    /**
+     * Replaces the user-editable state of {@code user} with {@code userDTO}, skipping null required fields;
+     * id and version are never copied.
+     */
+    public static void updateEntity(UserDTO userDTO, UserEntity user) {
+
+        MAPPINGS.updateEntity(userDTO, user);
+    }
+
+    /**
+     * Emails are stored lowercase, so the unique index on the column is effectively case-insensitive.
+     */
+    public static String normalizeEmail(String email) {
+
+        return email == null ? null : email.trim().toLowerCase(Locale.ROOT);
     }
 }
@@ -0,0 +1,61 @@
+package com.clearsolutions.mapper;
+
+import com.clearsolutions.dto.UserDTO;
+import com.clearsolutions.models.UserEntity;
+import com.clearsolutions.models.UserRow;
+import org.mapstruct.Builder;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+import org.mapstruct.MappingTarget;
+import org.mapstruct.Named;
+import org.mapstruct.NullValuePropertyMappingStrategy;
+
+import java.util.List;
+
+/**
+ * Compiled by MapStruct into plain getter/setter calls. Targets are created with their no-args constructor
+ * instead of the Lombok builder, so mapping a row allocates nothing but the target object.
+ */
+@Mapper(builder = @Builder(disableBuilder = true))
+interface UserMappings {
+
+    UserDTO mapToDto(UserEntity user);
+
+    @Mapping(target = "version", defaultValue = "0L")
+    UserDTO mapToDto(UserRow user);
+
+    // the generated loops size the result list from the source list
+    List<UserDTO> mapAll(List<UserEntity> users);
+
+    List<UserDTO> mapAllRows(List<UserRow> users);
+
+    @Mapping(target = "email", qualifiedByName = "email")
+    @Mapping(target = "version", ignore = true)
+    @Mapping(target = "updatedAt", ignore = true)
+    @Mapping(target = "deletedAt", ignore = true)
+    UserEntity mapToEntity(UserDTO userDTO);
+
+    @Mapping(target = "id", ignore = true)
+    @Mapping(target = "email", qualifiedByName = "email")
+    @Mapping(target = "version", ignore = true)
+    @Mapping(target = "updatedAt", ignore = true)
+    @Mapping(target = "deletedAt", ignore = true)
+    UserRow mapToRow(UserDTO userDTO);
+
+    // address and phone number are optional, so a missing value clears them; the required fields are kept
+    @Mapping(target = "id", ignore = true)
+    @Mapping(target = "email", qualifiedByName = "email",
+            nullValuePropertyMappingStrategy = NullValuePropertyMappingStrategy.IGNORE)
+    @Mapping(target = "firstName", nullValuePropertyMappingStrategy = NullValuePropertyMappingStrategy.IGNORE)
+    @Mapping(target = "lastName", nullValuePropertyMappingStrategy = NullValuePropertyMappingStrategy.IGNORE)
+    @Mapping(target = "birthDate", nullValuePropertyMappingStrategy = NullValuePropertyMappingStrategy.IGNORE)
+    @Mapping(target = "version", ignore = true)
+    @Mapping(target = "updatedAt", ignore = true)
+    @Mapping(target = "deletedAt", ignore = true)
+    void updateEntity(UserDTO userDTO, @MappingTarget UserEntity user);
+
+    @Named("email")
+    default String email(String email) {
+        return UserMapper.normalizeEmail(email);
+    }
+}
@@ -0,0 +1,44 @@
+package com.clearsolutions.models;
+
+import com.clearsolutions.events.UserChangedEvent;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Persistable;
+
+import java.time.LocalDateTime;
+
+/**
+ * Outbox row written in the same transaction as the user change it describes.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(name = "user_change")
+public class UserChangeEntity implements Persistable<Long> {
+
+    // the feed offset, taken from UserChangeOffsetEntity so rows become visible in offset order
+    @Id
+    private Long id;
+    @Column(name = "user_id", nullable = false)
+    private int userId;
+    @Enumerated(EnumType.STRING)
+    @Column(name = "type", nullable = false, length = 16)
+    private UserChangedEvent.Type type;
+    // UserDTO as JSON, null for deletes; the user columns are varchar(255), so it always fits
+    @Column(name = "payload", length = 4096)
+    private String payload;
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    // rows are only ever inserted, so save() persists them without a select first
+    @Override
+    public boolean isNew() {
+
+        return true;
+    }
+}
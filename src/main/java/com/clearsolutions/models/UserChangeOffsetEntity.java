@@ -0,0 +1,27 @@
+package com.clearsolutions.models;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Single-row counter behind the change feed offsets. Incrementing it locks the row until commit,
+ * so offsets are handed out in commit order and a reader never sees a gap that is filled later.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Entity
+@Table(name = "user_change_offset")
+public class UserChangeOffsetEntity {
+
+    public static final int ID = 1;
+
+    @Id
+    private int id;
+    @Column(name = "last_offset", nullable = false)
+    private long lastOffset;
+}
@@ -5,20 +5,35 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.SQLRestriction;
 
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 
 @Data
 @Builder
 @AllArgsConstructor
 @NoArgsConstructor
 @Entity
-@Table(name = "user_table")
+@Table(name = "user_table", indexes = {
+        @Index(name = "idx_user_birth_date_id", columnList = "birth_date, id"),
+        @Index(name = "idx_user_deleted_at", columnList = "deleted_at")
+}, uniqueConstraints = {
+        @UniqueConstraint(name = "uk_user_email", columnNames = "email")
+})
+// soft-deleted rows are invisible to every entity load and JPQL query, native queries must filter them themselves
+@SQLRestriction("deleted_at is null")
 public class UserEntity {
 
+    // each value of user_seq is the top of a block of this many ids, see ReactiveUserServiceImpl too
+    public static final int ID_ALLOCATION_SIZE = 50;
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // pooled sequence instead of IDENTITY so Hibernate can batch inserts
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "user_seq")
+    @SequenceGenerator(name = "user_seq", sequenceName = "user_seq", allocationSize = ID_ALLOCATION_SIZE)
     private int id;
+    // always lowercase, see UserMapper.normalizeEmail
     @Column(name = "email", nullable = false)
     private String email;
     @Column(name = "first_name", nullable = false)
@@ -31,4 +46,19 @@ public class UserEntity {
     private String address;
     @Column(name = "phone_number")
     private String phoneNumber;
+    @Version
+    @Column(name = "version", nullable = false)
+    private long version;
+    // millisecond precision, so it survives the round trip to the database and HTTP dates unchanged
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+    // set by UserRepository.softDeleteById, the row is hard-deleted later by DeletedUserPurger
+    @Column(name = "deleted_at")
+    private LocalDateTime deletedAt;
+
+    @PrePersist
+    @PreUpdate
+    void touch() {
+        updatedAt = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+    }
 }
@@ -0,0 +1,45 @@
+package com.clearsolutions.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.LocalDateTime;
+
+/**
+ * R2DBC mapping of user_table, used by the reactive stack. The schema itself is owned by {@link UserEntity}.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Table("user_table")
+public class UserRow {
+
+    @Id
+    private Integer id;
+    @Column("email")
+    private String email;
+    @Column("first_name")
+    private String firstName;
+    @Column("last_name")
+    private String lastName;
+    @Column("birth_date")
+    private LocalDateTime birthDate;
+    @Column("address")
+    private String address;
+    @Column("phone_number")
+    private String phoneNumber;
+    @Version
+    @Column("version")
+    private Long version;
+    @Column("updated_at")
+    private LocalDateTime updatedAt;
+    @Column("deleted_at")
+    private LocalDateTime deletedAt;
+}
@@ -0,0 +1,64 @@
+package com.clearsolutions.purge;
+
+import com.clearsolutions.repositories.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Hard-deletes soft-deleted users once they are older than the retention period. Every batch is its own
+ * short transaction, so a large backlog never holds row locks for long or blocks writers of live rows.
+ * Only the instance holding the {@link JobLease} purges, the others skip their run.
+ */
+@Slf4j
+@Component
+public class DeletedUserPurger {
+
+    static final String JOB = "deleted-user-purge";
+
+    private final UserRepository userRepository;
+    private final JobLease jobLease;
+
+    // public only for testing purpose
+    @Value("${user.purge.batch-size}")
+    public int batchSize;
+    @Value("${user.purge.retention}")
+    public Duration retention;
+    @Value("${user.purge.interval}")
+    public Duration interval;
+
+    public DeletedUserPurger(UserRepository userRepository, JobLease jobLease) {
+        this.userRepository = userRepository;
+        this.jobLease = jobLease;
+    }
+
+    /**
+     * Returns the number of purged users.
+     */
+    @Scheduled(fixedDelayString = "${user.purge.interval}")
+    public long purge() {
+
+        // held across two intervals, so the holder renews it before anyone else may take over
+        if (!jobLease.tryAcquire(JOB, interval.multipliedBy(2))) {
+            return 0;
+        }
+
+        LocalDateTime cutoff = LocalDateTime.now().minus(retention);
+        long purged = 0;
+        int batch;
+        do {
+            batch = userRepository.purgeDeletedBefore(cutoff, batchSize);
+            purged += batch;
+        } while (batch == batchSize);
+
+        if (purged > 0) {
+            log.info("Purged {} deleted users", purged);
+        }
+
+        return purged;
+    }
+}
@@ -0,0 +1,37 @@
+package com.clearsolutions.purge;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Lets one instance at a time run a scheduled job: the instance that moves the job's {@code job_lease} row
+ * into the future holds it until then, and renews it on its next run. Another instance only takes over once
+ * the holder stopped renewing. Instance clocks must agree to well within the lease duration.
+ */
+@Component
+public class JobLease {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String owner = UUID.randomUUID().toString();
+
+    public JobLease(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Returns whether this instance holds the lease on the job for the given duration from now.
+     */
+    public boolean tryAcquire(String job, Duration duration) {
+
+        LocalDateTime now = LocalDateTime.now();
+
+        return jdbcTemplate.update("update job_lease set locked_until = ?, locked_by = ? " +
+                        "where name = ? and (locked_until <= ? or locked_by = ?)",
+                Timestamp.valueOf(now.plus(duration)), owner, job, Timestamp.valueOf(now), owner) == 1;
+    }
+}
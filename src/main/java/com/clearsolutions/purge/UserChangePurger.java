@@ -0,0 +1,62 @@
+package com.clearsolutions.purge;
+
+import com.clearsolutions.repositories.UserChangeRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Retention of the {@code user_change} outbox: changes older than the retention period are deleted,
+ * oldest first, one short transaction per batch, on one instance at a time.
+ */
+@Slf4j
+@Component
+public class UserChangePurger {
+
+    static final String JOB = "user-change-purge";
+
+    private final UserChangeRepository userChangeRepository;
+    private final JobLease jobLease;
+
+    // public only for testing purpose
+    @Value("${user.changes.purge-batch-size}")
+    public int batchSize;
+    @Value("${user.changes.retention}")
+    public Duration retention;
+    @Value("${user.changes.purge-interval}")
+    public Duration interval;
+
+    public UserChangePurger(UserChangeRepository userChangeRepository, JobLease jobLease) {
+        this.userChangeRepository = userChangeRepository;
+        this.jobLease = jobLease;
+    }
+
+    /**
+     * Returns the number of deleted changes.
+     */
+    @Scheduled(fixedDelayString = "${user.changes.purge-interval}")
+    public long purge() {
+
+        if (!jobLease.tryAcquire(JOB, interval.multipliedBy(2))) {
+            return 0;
+        }
+
+        LocalDateTime cutoff = LocalDateTime.now().minus(retention);
+        long purged = 0;
+        int batch;
+        do {
+            batch = userChangeRepository.deleteCreatedBefore(cutoff, batchSize);
+            purged += batch;
+        } while (batch == batchSize);
+
+        if (purged > 0) {
+            log.info("Purged {} user changes", purged);
+        }
+
+        return purged;
+    }
+}
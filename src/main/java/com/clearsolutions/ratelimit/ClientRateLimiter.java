@@ -0,0 +1,68 @@
+package com.clearsolutions.ratelimit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket per client, kept as a single {@link AtomicLong} holding the time at which the bucket would be full
+ * again (the generic cell rate algorithm). Taking tokens moves that time forward by their refill time with one
+ * compare-and-set, so concurrent requests of the same client never block each other.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class ClientRateLimiter {
+
+    private final Cache<String, AtomicLong> buckets;
+    private final LongSupplier nanoClock;
+    private final long nanosPerToken;
+    // how far the full time may lie in the future, i.e. the capacity expressed as refill time
+    private final long burstNanos;
+
+    @Autowired
+    public ClientRateLimiter(RateLimitProperties properties) {
+        this(properties, System::nanoTime);
+    }
+
+    ClientRateLimiter(RateLimitProperties properties, LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+        this.nanosPerToken = TimeUnit.SECONDS.toNanos(1) / properties.refillPerSecond();
+        this.burstNanos = nanosPerToken * properties.capacity();
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(properties.maxClients())
+                // an idle bucket is full again by then, dropping it changes nothing
+                .expireAfterAccess(Duration.ofNanos(burstNanos).plusSeconds(1))
+                .build();
+    }
+
+    /**
+     * Takes {@code cost} tokens from the client's bucket.
+     *
+     * @return {@link Duration#ZERO} when the tokens were taken, otherwise how long until they are available
+     */
+    public Duration tryAcquire(String client, int cost) {
+
+        long now = nanoClock.getAsLong();
+        AtomicLong fullAt = buckets.get(client, key -> new AtomicLong(now));
+        long spentNanos = nanosPerToken * cost;
+
+        while (true) {
+            long current = fullAt.get();
+            long next = Math.max(current, now) + spentNanos;
+            long waitNanos = next - now - burstNanos;
+            if (waitNanos > 0) {
+                return Duration.ofNanos(waitNanos);
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return Duration.ZERO;
+            }
+        }
+    }
+}
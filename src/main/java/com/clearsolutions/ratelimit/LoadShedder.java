@@ -0,0 +1,74 @@
+package com.clearsolutions.ratelimit;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Component;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decides whether the service is too busy to take a request. Requests holding a request thread are counted,
+ * and the connection pool is asked how many threads already wait for a connection. Expensive requests are
+ * turned away as soon as the pool has waiters, cheap ones only once the in-flight limit is reached,
+ * so single-user reads keep working while list and export calls back off.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class LoadShedder {
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // absent in web slice tests, only the in-flight limit applies then; primary and replica pool with routing
+    private final ObjectProvider<HikariDataSource> dataSource;
+
+    @Value("${user.load-shedding.max-in-flight}")
+    public int maxInFlight; // public only for testing purpose
+    @Value("${user.load-shedding.max-pending-connections}")
+    public int maxPendingConnections; // public only for testing purpose
+
+    public LoadShedder(ObjectProvider<HikariDataSource> dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Admits the request and counts it as in flight until {@link #release()}.
+     *
+     * @param expensive whether the request costs more than the cheapest endpoints
+     * @return false when the request should be shed, it is then not counted
+     */
+    public boolean tryAdmit(boolean expensive) {
+
+        if (expensive && pendingConnections() >= maxPendingConnections) {
+            return false;
+        }
+        if (inFlight.incrementAndGet() > maxInFlight) {
+            inFlight.decrementAndGet();
+            return false;
+        }
+
+        return true;
+    }
+
+    public void release() {
+
+        inFlight.decrementAndGet();
+    }
+
+    public int inFlight() {
+
+        return inFlight.get();
+    }
+
+    private int pendingConnections() {
+
+        return dataSource.stream()
+                .map(HikariDataSource::getHikariPoolMXBean)
+                .filter(Objects::nonNull)
+                .mapToInt(HikariPoolMXBean::getThreadsAwaitingConnection)
+                .max()
+                .orElse(0);
+    }
+}
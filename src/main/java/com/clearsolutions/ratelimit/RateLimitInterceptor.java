@@ -0,0 +1,77 @@
+package com.clearsolutions.ratelimit;
+
+import com.clearsolutions.exception.RateLimitExceededException;
+import com.clearsolutions.exception.ServiceOverloadedException;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import java.time.Duration;
+
+/**
+ * Charges every API request to its client's token bucket and sheds it when the service is overloaded.
+ * Rejections are thrown, so GlobalExceptionHandler renders them like any other error. A request stops counting
+ * as in flight once it releases its thread, async ones when they start waiting, and their redispatch is free.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class RateLimitInterceptor implements AsyncHandlerInterceptor {
+
+    public static final String API_KEY_HEADER = "X-API-Key";
+
+    private final ClientRateLimiter rateLimiter;
+    private final LoadShedder loadShedder;
+    private final RateLimitProperties properties;
+
+    public RateLimitInterceptor(ClientRateLimiter rateLimiter, LoadShedder loadShedder, RateLimitProperties properties) {
+        this.rateLimiter = rateLimiter;
+        this.loadShedder = loadShedder;
+        this.properties = properties;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+
+        if (request.getDispatcherType() != DispatcherType.REQUEST || !(handler instanceof HandlerMethod method)) {
+            return true;
+        }
+
+        int cost = properties.costOf(method.getMethod().getName());
+        Duration wait = rateLimiter.tryAcquire(client(request), cost);
+        if (!wait.isZero()) {
+            throw new RateLimitExceededException("Rate limit exceeded, retry in " + wait.toMillis() + " ms!", wait);
+        }
+        if (!loadShedder.tryAdmit(cost > properties.defaultCost())) {
+            throw new ServiceOverloadedException("Service is overloaded, retry later!");
+        }
+
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+
+        loadShedder.release();
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+
+        if (request.getDispatcherType() == DispatcherType.REQUEST && handler instanceof HandlerMethod) {
+            loadShedder.release();
+        }
+    }
+
+    // API key when it is one of the issued ones, otherwise the address the request came from:
+    // any key sent would let a client get a fresh bucket by sending a new one with every request
+    public String client(HttpServletRequest request) {
+
+        String apiKey = request.getHeader(API_KEY_HEADER);
+
+        return properties.isIssued(apiKey) ? "key:" + apiKey : "ip:" + request.getRemoteAddr();
+    }
+}
@@ -0,0 +1,31 @@
+package com.clearsolutions.ratelimit;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Token budget of every client and what each endpoint spends from it.
+ *
+ * @param capacity        tokens a client can spend in a burst
+ * @param refillPerSecond tokens given back per second, the sustained rate
+ * @param maxClients      buckets kept in memory, idle clients are evicted first
+ * @param defaultCost     cost of a handler method missing in {@code costs}
+ * @param costs           cost by handler method name
+ * @param apiKeys         keys issued to clients, only these get a bucket of their own
+ */
+@ConfigurationProperties("user.rate-limit")
+public record RateLimitProperties(int capacity, int refillPerSecond, long maxClients, int defaultCost,
+                                  Map<String, Integer> costs, Set<String> apiKeys) {
+
+    public int costOf(String handlerMethod) {
+
+        return costs == null ? defaultCost : costs.getOrDefault(handlerMethod, defaultCost);
+    }
+
+    public boolean isIssued(String apiKey) {
+
+        return apiKey != null && apiKeys != null && apiKeys.contains(apiKey);
+    }
+}
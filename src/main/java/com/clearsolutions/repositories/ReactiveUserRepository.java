@@ -0,0 +1,60 @@
+package com.clearsolutions.repositories;
+
+import com.clearsolutions.models.UserRow;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+
+/**
+ * Every query skips soft-deleted rows; use these instead of the inherited findById and existsById, which do not.
+ */
+public interface ReactiveUserRepository extends R2dbcRepository<UserRow, Integer> {
+
+    @Query("SELECT * FROM user_table WHERE id = :id AND deleted_at IS NULL")
+    Mono<UserRow> findActiveById(int id);
+
+    @Query("SELECT COUNT(*) > 0 FROM user_table WHERE id = :id AND deleted_at IS NULL")
+    Mono<Boolean> existsActiveById(int id);
+
+    // same statement as UserRepository.softDeleteById
+    @Modifying
+    @Query("UPDATE user_table SET deleted_at = :deletedAt, updated_at = :deletedAt, version = version + 1 " +
+            "WHERE id = :id AND deleted_at IS NULL")
+    Mono<Integer> softDeleteById(int id, LocalDateTime deletedAt);
+
+    @Modifying
+    @Query("DELETE FROM user_table WHERE email = :email AND deleted_at IS NOT NULL")
+    Mono<Integer> purgeDeletedByEmail(String email);
+
+    @Query("SELECT * FROM user_table WHERE id > :afterId AND deleted_at IS NULL ORDER BY id LIMIT :limit")
+    Flux<UserRow> findPage(int afterId, int limit);
+
+    @Query("SELECT * FROM user_table WHERE deleted_at IS NULL ORDER BY id")
+    Flux<UserRow> streamAll();
+
+    @Query("SELECT * FROM user_table WHERE birth_date BETWEEN :fromDate AND :toDate AND deleted_at IS NULL " +
+            "ORDER BY birth_date, id LIMIT :limit")
+    Flux<UserRow> findByBirthDateBetween(LocalDateTime fromDate, LocalDateTime toDate, int limit);
+
+    @Query("SELECT * FROM user_table WHERE birth_date BETWEEN :fromDate AND :toDate AND deleted_at IS NULL " +
+            "AND (birth_date > :afterBirthDate OR (birth_date = :afterBirthDate AND id > :afterId)) " +
+            "ORDER BY birth_date, id LIMIT :limit")
+    Flux<UserRow> findByBirthDateBetweenAfter(LocalDateTime fromDate, LocalDateTime toDate,
+                                              LocalDateTime afterBirthDate, int afterId, int limit);
+
+    @Query("SELECT * FROM user_table WHERE birth_date BETWEEN :fromDate AND :toDate AND deleted_at IS NULL " +
+            "ORDER BY birth_date, id")
+    Flux<UserRow> streamByBirthDateBetween(LocalDateTime fromDate, LocalDateTime toDate);
+
+    @Query("SELECT COUNT(*) FROM user_table WHERE birth_date BETWEEN :fromDate AND :toDate AND deleted_at IS NULL")
+    Mono<Long> countByBirthDateBetween(LocalDateTime fromDate, LocalDateTime toDate);
+
+    // same pooled sequence Hibernate uses, the returned value is the top of a block of
+    // UserEntity.ID_ALLOCATION_SIZE ids nobody else will hand out
+    @Query("SELECT NEXT VALUE FOR user_seq")
+    Mono<Integer> nextId();
+}
@@ -0,0 +1,21 @@
+package com.clearsolutions.repositories;
+
+import com.clearsolutions.models.UserChangeOffsetEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface UserChangeOffsetRepository extends JpaRepository<UserChangeOffsetEntity, Integer> {
+
+    /**
+     * Reserves the next {@code count} offsets; returns the number of updated rows, 0 if the counter row
+     * seeded by data.sql is missing. The row stays locked until the transaction ends.
+     */
+    @Modifying
+    @Query("update UserChangeOffsetEntity o set o.lastOffset = o.lastOffset + :count where o.id = " + UserChangeOffsetEntity.ID)
+    int increment(@Param("count") long count);
+
+    @Query("select o.lastOffset from UserChangeOffsetEntity o where o.id = " + UserChangeOffsetEntity.ID)
+    long lastOffset();
+}
@@ -0,0 +1,30 @@
+package com.clearsolutions.repositories;
+
+import com.clearsolutions.dto.UserChangeDTO;
+import com.clearsolutions.models.UserChangeEntity;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface UserChangeRepository extends JpaRepository<UserChangeEntity, Long> {
+
+    @Transactional(readOnly = true)
+    @Query("select new com.clearsolutions.dto.UserChangeDTO(c.id, c.userId, c.type, c.payload, c.createdAt) " +
+            "from UserChangeEntity c where c.id > :since order by c.id")
+    List<UserChangeDTO> findByIdGreaterThan(@Param("since") long since, Limit limit);
+
+    /**
+     * Deletes up to {@code limit} of the oldest changes created before {@code cutoff}, returns how many.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "delete from user_change where id in (select id from user_change " +
+            "where created_at < :cutoff order by id limit :limit)", nativeQuery = true)
+    int deleteCreatedBefore(@Param("cutoff") LocalDateTime cutoff, @Param("limit") int limit);
+}
@@ -0,0 +1,41 @@
+package com.clearsolutions.repositories;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+
+/**
+ * Plain JDBC reads for exports: rows are handed to the callback straight off a forward-only cursor,
+ * without entities, DTOs or a result list, so memory use does not depend on the number of rows.
+ */
+@Repository
+public class UserExportRepository {
+
+    public static final String[] COLUMNS = {"id", "email", "first_name", "last_name", "birth_date", "address",
+            "phone_number", "version", "updated_at"};
+
+    private static final String SELECT = "select " + String.join(", ", COLUMNS) + " from user_table where deleted_at is null";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public UserExportRepository(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(500);
+    }
+
+    /**
+     * Every live user in id order, or only those born between the dates (both inclusive) in birth date order.
+     * The callback sees the columns in {@link #COLUMNS} order.
+     */
+    public void forEachUser(LocalDateTime fromDate, LocalDateTime toDate, RowCallbackHandler handler) {
+
+        if (fromDate == null) {
+            jdbcTemplate.query(SELECT + " order by id", handler);
+        } else {
+            jdbcTemplate.query(SELECT + " and birth_date between ? and ? order by birth_date, id", handler, fromDate, toDate);
+        }
+    }
+}
@@ -1,11 +1,117 @@
 package com.clearsolutions.repositories;
 
+import com.clearsolutions.dto.BirthDateBucketDTO;
+import com.clearsolutions.dto.UserDTO;
 import com.clearsolutions.models.UserEntity;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Read queries return {@link UserDTO} through constructor expressions, so list endpoints never create managed
+ * entities or dirty-checking snapshots. Their read-only transactions also switch the Hibernate session
+ * to {@code FlushMode.MANUAL}.
+ */
+public interface UserRepository extends JpaRepository<UserEntity, Integer>, UserRepositoryCustom {
+
+    String SELECT_USER_DTO = "select new com.clearsolutions.dto.UserDTO(u.id, u.email, u.firstName, u.lastName, " +
+            "u.birthDate, u.address, u.phoneNumber, u.version, u.updatedAt) from UserEntity u ";
 
-public interface UserRepository extends JpaRepository<UserEntity, Integer> {
     List<UserEntity> findByBirthDateBetween(LocalDateTime fromDate, LocalDateTime toDate);
+
+    @Transactional(readOnly = true)
+    @Query(SELECT_USER_DTO + "where u.id = :id")
+    Optional<UserDTO> findDtoById(@Param("id") int id);
+
+    @Transactional(readOnly = true)
+    @Query(SELECT_USER_DTO + "where u.email = :email")
+    Optional<UserDTO> findByEmail(@Param("email") String email);
+
+    boolean existsByEmail(String email);
+
+    // native, so soft-deleted rows are included: their emails stay taken until the rows are purged
+    @QueryHints(@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "500"))
+    @Query(value = "select email from user_table", nativeQuery = true)
+    Stream<String> streamAllEmails();
+
+    /**
+     * Marks the user deleted in one statement; returns 0 when there is no such user or it is already deleted.
+     * The version bump makes a concurrent versioned update of the row fail instead of reviving it.
+     */
+    @Transactional
+    @Modifying
+    @Query("update UserEntity u set u.deletedAt = :deletedAt, u.updatedAt = :deletedAt, u.version = u.version + 1 " +
+            "where u.id = :id and u.deletedAt is null")
+    int softDeleteById(@Param("id") int id, @Param("deletedAt") LocalDateTime deletedAt);
+
+    /**
+     * Hard-deletes a soft-deleted user still holding the email, so the email can be registered again.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "delete from user_table where email = :email and deleted_at is not null", nativeQuery = true)
+    int purgeDeletedByEmail(@Param("email") String email);
+
+    /**
+     * Hard-deletes up to {@code limit} users soft-deleted before {@code cutoff}, lowest ids first.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "delete from user_table where id in (select id from user_table " +
+            "where deleted_at < :cutoff order by id limit :limit)", nativeQuery = true)
+    int purgeDeletedBefore(@Param("cutoff") LocalDateTime cutoff, @Param("limit") int limit);
+
+    @Transactional(readOnly = true)
+    @Query(SELECT_USER_DTO + "where u.id in :ids")
+    List<UserDTO> findDtosByIdIn(@Param("ids") Collection<Integer> ids);
+
+    @Transactional(readOnly = true)
+    @Query(SELECT_USER_DTO + "where u.id > :id order by u.id")
+    List<UserDTO> findByIdGreaterThanOrderByIdAsc(@Param("id") int id, Limit limit);
+
+    @Transactional(readOnly = true)
+    @Query(SELECT_USER_DTO + "where u.birthDate between :fromDate and :toDate order by u.birthDate, u.id")
+    List<UserDTO> findByBirthDateBetweenOrderByBirthDateAscIdAsc(@Param("fromDate") LocalDateTime fromDate,
+                                                                 @Param("toDate") LocalDateTime toDate,
+                                                                 Limit limit);
+
+    @Transactional(readOnly = true)
+    @Query(SELECT_USER_DTO + "where u.birthDate between :fromDate and :toDate " +
+            "and (u.birthDate > :afterBirthDate or (u.birthDate = :afterBirthDate and u.id > :afterId)) " +
+            "order by u.birthDate, u.id")
+    List<UserDTO> findByBirthDateBetweenAfter(@Param("fromDate") LocalDateTime fromDate,
+                                              @Param("toDate") LocalDateTime toDate,
+                                              @Param("afterBirthDate") LocalDateTime afterBirthDate,
+                                              @Param("afterId") int afterId,
+                                              Limit limit);
+
+    long countByBirthDateBetween(LocalDateTime fromDate, LocalDateTime toDate);
+
+    @Query("select new com.clearsolutions.dto.BirthDateBucketDTO(year(u.birthDate), count(u)) " +
+            "from UserEntity u where u.birthDate between :fromDate and :toDate " +
+            "group by year(u.birthDate) order by year(u.birthDate)")
+    List<BirthDateBucketDTO> countByBirthDateBetweenGroupByYear(@Param("fromDate") LocalDateTime fromDate,
+                                                                @Param("toDate") LocalDateTime toDate);
+
+    @Query("select new com.clearsolutions.dto.BirthDateBucketDTO(year(u.birthDate), month(u.birthDate), count(u)) " +
+            "from UserEntity u where u.birthDate between :fromDate and :toDate " +
+            "group by year(u.birthDate), month(u.birthDate) order by year(u.birthDate), month(u.birthDate)")
+    List<BirthDateBucketDTO> countByBirthDateBetweenGroupByMonth(@Param("fromDate") LocalDateTime fromDate,
+                                                                 @Param("toDate") LocalDateTime toDate);
+
+    @QueryHints(@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "500"))
+    @Query(SELECT_USER_DTO + "order by u.id")
+    Stream<UserDTO> streamAll();
 }
@@ -0,0 +1,32 @@
+package com.clearsolutions.repositories;
+
+import com.clearsolutions.dto.UserPatchDTO;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+public interface UserRepositoryCustom {
+
+    /**
+     * Updates only the non-null columns of {@code patch} and bumps the version in a single statement.
+     *
+     * @param expectedVersion when not null the row is only updated if it still has this version
+     * @return the number of updated rows, 0 if the user is missing or the version did not match
+     */
+    int patchById(int userId, Long expectedVersion, UserPatchDTO patch);
+
+    /**
+     * Keyset page ordered by id that selects only the given attributes, each row maps attribute name to value.
+     */
+    List<Map<String, Object>> findFieldsByIdGreaterThan(Collection<String> fields, int afterId, int limit);
+
+    /**
+     * Keyset page ordered by birth date and id that selects only the given attributes.
+     *
+     * @param afterBirthDate birth date of the last row of the previous page, null for the first page
+     */
+    List<Map<String, Object>> findFieldsByBirthDateBetween(Collection<String> fields, LocalDateTime fromDate, LocalDateTime toDate,
+                                                           LocalDateTime afterBirthDate, int afterId, int limit);
+}
@@ -0,0 +1,124 @@
+package com.clearsolutions.repositories;
+
+import com.clearsolutions.dto.UserPatchDTO;
+import com.clearsolutions.mapper.UserMapper;
+import com.clearsolutions.models.UserEntity;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.CriteriaUpdate;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Selection;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class UserRepositoryCustomImpl implements UserRepositoryCustom {
+
+    private final EntityManager entityManager;
+
+    public UserRepositoryCustomImpl(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    @Transactional
+    public int patchById(int userId, Long expectedVersion, UserPatchDTO patch) {
+
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<UserEntity> update = cb.createCriteriaUpdate(UserEntity.class);
+        Root<UserEntity> root = update.from(UserEntity.class);
+
+        if (patch.getEmail() != null) {
+            update.set(root.<String>get("email"), UserMapper.normalizeEmail(patch.getEmail()));
+        }
+        if (patch.getFirstName() != null) {
+            update.set(root.<String>get("firstName"), patch.getFirstName());
+        }
+        if (patch.getLastName() != null) {
+            update.set(root.<String>get("lastName"), patch.getLastName());
+        }
+        if (patch.getBirthDate() != null) {
+            update.set(root.<LocalDateTime>get("birthDate"), patch.getBirthDate());
+        }
+        if (patch.getAddress() != null) {
+            update.set(root.<String>get("address"), patch.getAddress());
+        }
+        if (patch.getPhoneNumber() != null) {
+            update.set(root.<String>get("phoneNumber"), patch.getPhoneNumber());
+        }
+        update.set(root.<Long>get("version"), cb.sum(root.<Long>get("version"), 1L));
+        // bulk updates bypass the entity's lifecycle callbacks
+        update.set(root.<LocalDateTime>get("updatedAt"), LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS));
+
+        Predicate where = cb.and(cb.equal(root.get("id"), userId), cb.isNull(root.get("deletedAt")));
+        if (expectedVersion != null) {
+            where = cb.and(where, cb.equal(root.get("version"), expectedVersion));
+        }
+        update.where(where);
+
+        return entityManager.createQuery(update).executeUpdate();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Map<String, Object>> findFieldsByIdGreaterThan(Collection<String> fields, int afterId, int limit) {
+
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<UserEntity> root = query.from(UserEntity.class);
+
+        query.multiselect(select(root, fields))
+                .where(cb.greaterThan(root.get("id"), afterId))
+                .orderBy(cb.asc(root.get("id")));
+
+        return toRows(entityManager.createQuery(query).setMaxResults(limit).getResultList(), fields);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Map<String, Object>> findFieldsByBirthDateBetween(Collection<String> fields, LocalDateTime fromDate, LocalDateTime toDate,
+                                                                  LocalDateTime afterBirthDate, int afterId, int limit) {
+
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<UserEntity> root = query.from(UserEntity.class);
+
+        Predicate where = cb.between(root.get("birthDate"), fromDate, toDate);
+        if (afterBirthDate != null) {
+            where = cb.and(where, cb.or(
+                    cb.greaterThan(root.get("birthDate"), afterBirthDate),
+                    cb.and(cb.equal(root.get("birthDate"), afterBirthDate), cb.greaterThan(root.get("id"), afterId))));
+        }
+        query.multiselect(select(root, fields))
+                .where(where)
+                .orderBy(cb.asc(root.get("birthDate")), cb.asc(root.get("id")));
+
+        return toRows(entityManager.createQuery(query).setMaxResults(limit).getResultList(), fields);
+    }
+
+    private static List<Selection<?>> select(Root<UserEntity> root, Collection<String> fields) {
+
+        return fields.stream()
+                .<Selection<?>>map(field -> root.get(field).alias(field))
+                .toList();
+    }
+
+    private static List<Map<String, Object>> toRows(List<Tuple> tuples, Collection<String> fields) {
+
+        return tuples.stream()
+                .map(tuple -> {
+                    Map<String, Object> row = new LinkedHashMap<>();
+                    fields.forEach(field -> row.put(field, tuple.get(field)));
+                    return row;
+                })
+                .toList();
+    }
+}
@@ -0,0 +1,51 @@
+package com.clearsolutions.routing;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * Remembers which clients wrote recently, so their reads stay on the primary until the replica has surely
+ * caught up. The client of the current request is bound to its thread; work handed to other threads runs
+ * unbound and may read from the replica.
+ */
+public class ReadYourWrites {
+
+    private final ThreadLocal<String> client = new ThreadLocal<>();
+    // presence means the client wrote within the window
+    private final Cache<String, Boolean> writers;
+
+    public ReadYourWrites(ReplicaProperties properties) {
+        this.writers = Caffeine.newBuilder()
+                .maximumSize(properties.maxClients())
+                .expireAfterWrite(properties.readYourWrites())
+                .build();
+    }
+
+    public void bind(String client) {
+
+        this.client.set(client);
+    }
+
+    public void unbind() {
+
+        client.remove();
+    }
+
+    /**
+     * Starts the window of the bound client, if any.
+     */
+    public void wrote() {
+
+        String current = client.get();
+        if (current != null) {
+            writers.put(current, Boolean.TRUE);
+        }
+    }
+
+    public boolean mustReadPrimary() {
+
+        String current = client.get();
+
+        return current != null && writers.getIfPresent(current) != null;
+    }
+}
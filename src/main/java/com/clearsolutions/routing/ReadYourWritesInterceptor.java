@@ -0,0 +1,50 @@
+package com.clearsolutions.routing;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Binds the client of every API request for {@link ReadYourWrites} and starts its window once a write
+ * request is done, whatever its outcome, since a failed request may still have committed.
+ */
+public class ReadYourWritesInterceptor implements AsyncHandlerInterceptor {
+
+    private static final Set<String> READS = Set.of(HttpMethod.GET.name(), HttpMethod.HEAD.name(),
+            HttpMethod.OPTIONS.name());
+
+    private final ReadYourWrites readYourWrites;
+    private final Function<HttpServletRequest, String> client;
+
+    public ReadYourWritesInterceptor(ReadYourWrites readYourWrites, Function<HttpServletRequest, String> client) {
+        this.readYourWrites = readYourWrites;
+        this.client = client;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+
+        readYourWrites.bind(client.apply(request));
+
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+
+        readYourWrites.unbind();
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+
+        if (!READS.contains(request.getMethod())) {
+            readYourWrites.wrote();
+        }
+        readYourWrites.unbind();
+    }
+}
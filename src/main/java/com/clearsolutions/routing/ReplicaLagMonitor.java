@@ -0,0 +1,85 @@
+package com.clearsolutions.routing;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Measures replication lag with the {@code user_change} outbox both databases carry: when the replica's latest
+ * offset is behind the primary's, the lag is the age of the first change it is missing. The replica is unusable
+ * until the first measurement, while it lags more than the maximum and while it cannot be asked.
+ */
+@Slf4j
+public class ReplicaLagMonitor {
+
+    private static final String LAST_OFFSET = "select last_offset from user_change_offset where id = 1";
+    private static final String CREATED_AT = "select created_at from user_change where id = ?";
+
+    private final JdbcTemplate primary;
+    private final JdbcTemplate replica;
+    private final Duration maxLag;
+    private volatile boolean usable;
+
+    public ReplicaLagMonitor(DataSource primary, DataSource replica, Duration maxLag) {
+        this.primary = new JdbcTemplate(primary);
+        this.replica = new JdbcTemplate(replica);
+        this.maxLag = maxLag;
+    }
+
+    public boolean isReplicaUsable() {
+
+        return usable;
+    }
+
+    /**
+     * Returns the measured lag, null when the replica could not be asked.
+     */
+    @Scheduled(fixedDelayString = "${user.datasource.replica.lag-check-interval}")
+    public Duration check() {
+
+        Duration lag;
+        try {
+            lag = lag();
+        } catch (RuntimeException ex) {
+            log.debug("Replica lag check failed", ex);
+            lag = null;
+        }
+
+        boolean nowUsable = lag != null && lag.compareTo(maxLag) <= 0;
+        if (nowUsable && !usable) {
+            log.info("Reading from the replica, lag {}", lag);
+        } else if (!nowUsable && usable) {
+            log.warn("Reading from the primary, replica lag {}", lag == null ? "unknown" : lag);
+        }
+        usable = nowUsable;
+
+        return lag;
+    }
+
+    private Duration lag() {
+
+        long primaryOffset = lastOffset(primary);
+        long replicaOffset = lastOffset(replica);
+        if (replicaOffset >= primaryOffset) {
+            return Duration.ZERO;
+        }
+
+        Timestamp missingSince = primary.queryForObject(CREATED_AT, Timestamp.class, replicaOffset + 1);
+
+        return Duration.between(missingSince.toLocalDateTime(), LocalDateTime.now());
+    }
+
+    // 0 before the first change
+    private static long lastOffset(JdbcTemplate database) {
+
+        List<Long> offsets = database.queryForList(LAST_OFFSET, Long.class);
+
+        return offsets.isEmpty() ? 0 : offsets.get(0);
+    }
+}
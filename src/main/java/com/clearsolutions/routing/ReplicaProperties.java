@@ -0,0 +1,21 @@
+package com.clearsolutions.routing;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Read replica serving the read-only transactions.
+ *
+ * @param enabled          whether read-only transactions are routed to the replica at all
+ * @param url              JDBC URL of the replica, same driver as the primary
+ * @param maxLag           replication lag above which reads fall back to the primary
+ * @param lagCheckInterval how often the lag is measured
+ * @param readYourWrites   how long a client's reads stay on the primary after its last write request
+ * @param maxClients       recent writers kept in memory, the oldest are forgotten first
+ */
+@ConfigurationProperties("user.datasource.replica")
+public record ReplicaProperties(boolean enabled, String url, String username, String password,
+                                Duration maxLag, Duration lagCheckInterval, Duration readYourWrites,
+                                long maxClients) {
+}
@@ -0,0 +1,57 @@
+package com.clearsolutions.routing;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Where read-only connections come from: the replica, unless the current client wrote within its read-your-writes
+ * window, the replica lags too far behind, or the caller asked for the primary with {@link #readFromPrimary}.
+ * Read-write connections never get here, the {@code LazyConnectionDataSourceProxy} in front takes them
+ * from the primary directly.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    public enum Route { PRIMARY, REPLICA }
+
+    private static final ThreadLocal<Boolean> PRIMARY_ONLY = ThreadLocal.withInitial(() -> false);
+
+    private final ReadYourWrites readYourWrites;
+    private final ReplicaLagMonitor lagMonitor;
+
+    public ReplicaRoutingDataSource(DataSource primary, DataSource replica, ReadYourWrites readYourWrites,
+                                    ReplicaLagMonitor lagMonitor) {
+        this.readYourWrites = readYourWrites;
+        this.lagMonitor = lagMonitor;
+        setTargetDataSources(Map.of(Route.PRIMARY, primary, Route.REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+    }
+
+    /**
+     * Runs the reads against the primary even where they would go to a replica, for readers that must not
+     * lag behind, such as the ones acting on commit notifications. Without routing it just runs them.
+     */
+    public static <T> T readFromPrimary(Supplier<T> reads) {
+
+        boolean outer = PRIMARY_ONLY.get();
+        PRIMARY_ONLY.set(true);
+        try {
+            return reads.get();
+        } finally {
+            PRIMARY_ONLY.set(outer);
+        }
+    }
+
+    @Override
+    protected Route determineCurrentLookupKey() {
+
+        if (PRIMARY_ONLY.get() || readYourWrites.mustReadPrimary() || !lagMonitor.isReplicaUsable()) {
+            return Route.PRIMARY;
+        }
+
+        return Route.REPLICA;
+    }
+}
@@ -0,0 +1,256 @@
+package com.clearsolutions.search;
+
+import com.clearsolutions.dto.UserDTO;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory trigram index over email, first name, last name and phone number.
+ * A query is answered by intersecting the sorted id lists of its trigrams, starting from the rarest one,
+ * and verifying the few remaining candidates against the stored field values, so no row is ever scanned.
+ * Phone numbers are indexed and matched by their digits only.
+ */
+@Component
+public class UserSearchIndex {
+
+    public static final int MIN_QUERY_LENGTH = 3;
+
+    private static final Pattern PHONE_QUERY = Pattern.compile("[\\d\\s+()-]+");
+    private static final int EXACT = 3;
+    private static final int PREFIX = 2;
+    private static final int SUBSTRING = 1;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Postings> postings = new HashMap<>();
+    // normalized email, first name, last name and phone digits per user id
+    private final Map<Integer, String[]> documents = new HashMap<>();
+
+    public record Hits(List<Integer> ids, int total) {
+    }
+
+    /**
+     * Adds the user or replaces its previously indexed values.
+     */
+    public void index(UserDTO user) {
+
+        String[] fields = {
+                normalize(user.getEmail()),
+                normalize(user.getFirstName()),
+                normalize(user.getLastName()),
+                digits(user.getPhoneNumber())
+        };
+
+        lock.writeLock().lock();
+        try {
+            String[] previous = documents.put(user.getId(), fields);
+            if (previous != null) {
+                trigrams(previous).forEach(trigram -> removePosting(trigram, user.getId()));
+            }
+            trigrams(fields).forEach(trigram -> postings.computeIfAbsent(trigram, key -> new Postings()).add(user.getId()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int userId) {
+
+        lock.writeLock().lock();
+        try {
+            String[] previous = documents.remove(userId);
+            if (previous != null) {
+                trigrams(previous).forEach(trigram -> removePosting(trigram, userId));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds users whose fields contain the query, ranked exact match first, then prefix, then substring match,
+     * ties broken by id.
+     *
+     * @param query at least {@link #MIN_QUERY_LENGTH} characters
+     */
+    public Hits search(String query, int offset, int limit) {
+
+        String term = PHONE_QUERY.matcher(query).matches() ? digits(query) : normalize(query);
+        if (term.length() < MIN_QUERY_LENGTH) {
+            throw new IllegalArgumentException("'q' must have at least " + MIN_QUERY_LENGTH + " characters!");
+        }
+
+        // worst ranked hit of the requested window sits on top, so it is the one evicted
+        Comparator<int[]> ranking = Comparator.<int[]>comparingInt(hit -> hit[1]).reversed().thenComparingInt(hit -> hit[0]);
+        PriorityQueue<int[]> window = new PriorityQueue<>(ranking.reversed());
+        int total = 0;
+
+        lock.readLock().lock();
+        try {
+            for (int userId : candidates(term)) {
+                int score = score(documents.get(userId), term);
+                if (score == 0) {
+                    continue;
+                }
+                total++;
+                window.add(new int[]{userId, score});
+                if (window.size() > offset + limit) {
+                    window.poll();
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<int[]> ranked = new ArrayList<>(window);
+        ranked.sort(ranking);
+        List<Integer> ids = ranked.stream()
+                .skip(offset)
+                .map(hit -> hit[0])
+                .toList();
+
+        return new Hits(ids, total);
+    }
+
+    private int[] candidates(String term) {
+
+        List<Postings> lists = new ArrayList<>();
+        for (long trigram : trigrams(term)) {
+            Postings list = postings.get(trigram);
+            if (list == null) {
+                return new int[0];
+            }
+            lists.add(list);
+        }
+        lists.sort(Comparator.comparingInt(list -> list.size));
+
+        int[] result = Arrays.copyOf(lists.get(0).ids, lists.get(0).size);
+        for (int i = 1; i < lists.size() && result.length > 0; i++) {
+            result = intersect(result, lists.get(i));
+        }
+
+        return result;
+    }
+
+    private static int[] intersect(int[] ids, Postings list) {
+
+        int[] result = new int[Math.min(ids.length, list.size)];
+        int size = 0;
+        for (int i = 0, j = 0; i < ids.length && j < list.size; ) {
+            if (ids[i] == list.ids[j]) {
+                result[size++] = ids[i];
+                i++;
+                j++;
+            } else if (ids[i] < list.ids[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+
+        return Arrays.copyOf(result, size);
+    }
+
+    private static int score(String[] fields, String term) {
+
+        int best = 0;
+        for (String field : fields) {
+            if (field.equals(term)) {
+                return EXACT;
+            } else if (field.startsWith(term)) {
+                best = Math.max(best, PREFIX);
+            } else if (field.contains(term)) {
+                best = Math.max(best, SUBSTRING);
+            }
+        }
+
+        return best;
+    }
+
+    private void removePosting(long trigram, int userId) {
+
+        Postings list = postings.get(trigram);
+        if (list != null && list.remove(userId) && list.size == 0) {
+            postings.remove(trigram);
+        }
+    }
+
+    private static Set<Long> trigrams(String... values) {
+
+        Set<Long> trigrams = new HashSet<>();
+        for (String value : values) {
+            for (int i = 0; i + MIN_QUERY_LENGTH <= value.length(); i++) {
+                trigrams.add(((long) value.charAt(i) << 32) | ((long) value.charAt(i + 1) << 16) | value.charAt(i + 2));
+            }
+        }
+
+        return trigrams;
+    }
+
+    private static String normalize(String value) {
+
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static String digits(String value) {
+
+        return value == null ? "" : value.replaceAll("\\D", "");
+    }
+
+    /**
+     * Sorted, growable list of user ids; ids are assigned in ascending order, so adds are nearly always appends.
+     */
+    private static final class Postings {
+
+        private int[] ids = new int[4];
+        private int size;
+
+        void add(int userId) {
+
+            int position = Arrays.binarySearch(ids, 0, size, userId);
+            if (position >= 0) {
+                return;
+            }
+            position = -position - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, position, ids, position + 1, size - position);
+            ids[position] = userId;
+            size++;
+        }
+
+        boolean remove(int userId) {
+
+            int position = Arrays.binarySearch(ids, 0, size, userId);
+            if (position < 0) {
+                return false;
+            }
+            System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+            size--;
+
+            return true;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.clearsolutions.search;
+
+import com.clearsolutions.dto.UserChangeDTO;
+import com.clearsolutions.dto.UserChangesDTO;
+import com.clearsolutions.dto.UserDTO;
+import com.clearsolutions.events.UserChangedEvent;
+import com.clearsolutions.repositories.UserRepository;
+import com.clearsolutions.routing.ReplicaRoutingDataSource;
+import com.clearsolutions.services.UserChangeService;
+import com.clearsolutions.services.impl.UserChangeServiceImpl;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.UncheckedIOException;
+import java.util.stream.Stream;
+
+/**
+ * Keeps {@link UserSearchIndex} in step with the table: a full rebuild once the application is ready,
+ * then the {@code user_change} log is tailed from the offset taken before the rebuild. Changes that raced
+ * with the rebuild are replayed over it, and changes made by other instances reach this one's index too.
+ * Both read the primary, so the rebuilt snapshot is never older than its offset.
+ */
+@Slf4j
+@Component
+public class UserSearchIndexer {
+
+    private final UserSearchIndex searchIndex;
+    private final UserRepository userRepository;
+    private final UserChangeService userChangeService;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate readOnlyTransaction;
+    // -1 until the rebuild
+    private long offset = -1;
+
+    public UserSearchIndexer(UserSearchIndex searchIndex, UserRepository userRepository,
+                             UserChangeService userChangeService, ObjectMapper objectMapper,
+                             PlatformTransactionManager transactionManager) {
+        this.searchIndex = searchIndex;
+        this.userRepository = userRepository;
+        this.userChangeService = userChangeService;
+        this.objectMapper = objectMapper;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+
+        long start = System.nanoTime();
+        ReplicaRoutingDataSource.readFromPrimary(() -> readOnlyTransaction.execute(status -> {
+            // offsets are handed out in commit order, every change up to this one is in the scan below
+            offset = userChangeService.lastOffset();
+            try (Stream<UserDTO> users = userRepository.streamAll()) {
+                users.forEach(searchIndex::index);
+            }
+            return null;
+        }));
+        log.info("Indexed {} users for search in {} ms", searchIndex.size(), (System.nanoTime() - start) / 1_000_000);
+        poll();
+    }
+
+    /**
+     * Returns the number of changes applied.
+     */
+    @Scheduled(fixedDelayString = "${user.search.poll-interval}")
+    public synchronized int poll() {
+
+        if (offset < 0) {
+            return 0;
+        }
+
+        return ReplicaRoutingDataSource.readFromPrimary(this::applyChanges);
+    }
+
+    private int applyChanges() {
+
+        int applied = 0;
+        UserChangesDTO changes;
+        do {
+            changes = userChangeService.getChanges(offset, UserChangeServiceImpl.MAX_LIMIT);
+            // the payload is the user as of the change, applying them in offset order ends on the latest one
+            for (UserChangeDTO change : changes.getItems()) {
+                if (change.getType() == UserChangedEvent.Type.DELETED || change.getUser() == null) {
+                    searchIndex.remove(change.getUserId());
+                } else {
+                    searchIndex.index(toUser(change.getUser()));
+                }
+            }
+            applied += changes.getItems().size();
+            offset = changes.getLastOffset();
+        } while (changes.getItems().size() == UserChangeServiceImpl.MAX_LIMIT);
+
+        return applied;
+    }
+
+    private UserDTO toUser(String json) {
+
+        try {
+            return objectMapper.readValue(json, UserDTO.class);
+        } catch (JsonProcessingException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.clearsolutions.services;
+
+import com.clearsolutions.dto.BirthDateCountDTO;
+import com.clearsolutions.dto.PageDTO;
+import com.clearsolutions.dto.UserDTO;
+import com.clearsolutions.dto.UserPatchDTO;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+
+/**
+ * Non-blocking counterpart of {@link UserService}, backed by R2DBC.
+ */
+public interface ReactiveUserService {
+
+    Mono<UserDTO> createUser(UserDTO user);
+
+    Mono<UserDTO> updateUserById(int userId, UserDTO user);
+
+    Mono<Void> patchUserById(int userId, Long expectedVersion, UserPatchDTO patch);
+
+    Mono<UserDTO> getUserById(int userId);
+
+    Mono<PageDTO<UserDTO>> getAllUsers(String after, int limit);
+
+    Flux<UserDTO> streamAllUsers();
+
+    Mono<PageDTO<UserDTO>> getUsersByBirthDateRange(LocalDateTime fromDate, LocalDateTime toDate, String after, int limit);
+
+    Flux<UserDTO> streamUsersByBirthDateRange(LocalDateTime fromDate, LocalDateTime toDate);
+
+    Mono<BirthDateCountDTO> countUsersByBirthDateRange(LocalDateTime fromDate, LocalDateTime toDate, String groupBy);
+
+    Mono<Void> deleteUserById(int userId);
+}
@@ -0,0 +1,25 @@
+package com.clearsolutions.services;
+
+import com.clearsolutions.dto.UserChangesDTO;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+public interface UserChangeService {
+
+    /**
+     * Changes committed after the {@code since} offset, oldest first.
+     */
+    UserChangesDTO getChanges(long since, int limit);
+
+    /**
+     * Same as {@link #getChanges(long, int)}, but waits up to {@code timeout} for a change when there is none yet;
+     * completes with no items when the timeout passes.
+     */
+    CompletableFuture<UserChangesDTO> awaitChanges(long since, int limit, Duration timeout);
+
+    /**
+     * Offset of the latest committed change, 0 before the first one.
+     */
+    long lastOffset();
+}
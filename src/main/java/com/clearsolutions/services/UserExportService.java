@@ -0,0 +1,53 @@
+package com.clearsolutions.services;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.Locale;
+
+public interface UserExportService {
+
+    /**
+     * Checks the request and returns the export; no row is read until it is written.
+     *
+     * @param fromDate null together with {@code toDate} to export every user
+     */
+    UserExport prepareExport(Format format, LocalDateTime fromDate, LocalDateTime toDate);
+
+    @FunctionalInterface
+    interface UserExport {
+
+        void writeTo(OutputStream outputStream) throws IOException;
+    }
+
+    enum Format {
+
+        CSV("text/csv", "csv"),
+        NDJSON("application/x-ndjson", "ndjson");
+
+        private final String contentType;
+        private final String fileExtension;
+
+        Format(String contentType, String fileExtension) {
+            this.contentType = contentType;
+            this.fileExtension = fileExtension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getFileExtension() {
+            return fileExtension;
+        }
+
+        public static Format of(String format) {
+
+            try {
+                return valueOf(format.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("'format' must be either 'csv' or 'ndjson'!");
+            }
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.clearsolutions.services;
+
+import com.clearsolutions.dto.BulkImportResultDTO;
+import com.clearsolutions.dto.UserDTO;
+
+import java.util.Iterator;
+
+public interface UserImportService {
+
+    BulkImportResultDTO importUsers(Iterator<UserDTO> users);
+}
@@ -1,21 +1,67 @@
 package com.clearsolutions.services;
 
+import com.clearsolutions.dto.BirthDateCountDTO;
+import com.clearsolutions.dto.PageDTO;
+import com.clearsolutions.dto.SearchResultDTO;
+import com.clearsolutions.dto.UserBatchDTO;
 import com.clearsolutions.dto.UserDTO;
+import com.clearsolutions.dto.UserPatchDTO;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public interface UserService {
 
     UserDTO createUser(UserDTO user);
 
+    /**
+     * Runs the checks of {@link #createUser(UserDTO)} that bean validation does not cover, without saving anything.
+     */
+    void validateNewUser(UserDTO user);
+
     UserDTO updateUserById(int userId, UserDTO user);
 
+    void patchUserById(int userId, Long expectedVersion, UserPatchDTO patch);
+
     UserDTO getUserById(int userId);
 
-    List<UserDTO> getAllUsers();
+    /**
+     * Same lookup as {@link #getUserById(int)}, but an unknown id is an empty result instead of an exception.
+     */
+    Optional<UserDTO> findUserById(int userId);
+
+    /**
+     * Looks up many users at once, cached ones first; one item per requested id, in request order,
+     * marks the ids no user exists for.
+     */
+    UserBatchDTO getUsersByIds(List<Integer> userIds);
+
+    UserDTO getUserByEmail(String email);
+
+    PageDTO<UserDTO> getAllUsers(String after, int limit);
+
+    /**
+     * Same page as {@link #getAllUsers(String, int)} but each item only holds the requested {@link UserDTO} fields.
+     */
+    PageDTO<Map<String, Object>> getAllUsers(String after, int limit, Set<String> fields);
+
+    void streamAllUsers(Consumer<UserDTO> consumer);
+
+    PageDTO<UserDTO> getUsersByBirthDateRange(LocalDateTime fromDate, LocalDateTime toDate, String after, int limit);
+
+    PageDTO<Map<String, Object>> getUsersByBirthDateRange(LocalDateTime fromDate, LocalDateTime toDate, String after, int limit,
+                                                          Set<String> fields);
+
+    BirthDateCountDTO countUsersByBirthDateRange(LocalDateTime fromDate, LocalDateTime toDate, String groupBy);
 
-    List<UserDTO> getUsersByBirthDateRange(LocalDateTime fromDate, LocalDateTime toDate);
+    /**
+     * Ranked lookup by a part of the email, first name, last name or phone number.
+     */
+    SearchResultDTO<UserDTO> searchUsers(String query, int page, int size);
 
     void deleteUserById(int userId);
 }
@@ -0,0 +1,14 @@
+package com.clearsolutions.services;
+
+import com.clearsolutions.dto.UserDTO;
+import com.clearsolutions.dto.UserWriteStatusDTO;
+
+public interface UserWriteBehindService {
+
+    /**
+     * Validates the user, journals it and queues it for a batched save; returns before anything is saved.
+     */
+    UserWriteStatusDTO submit(UserDTO user);
+
+    UserWriteStatusDTO getStatus(String trackingId);
+}
@@ -0,0 +1,420 @@
+package com.clearsolutions.services.impl;
+
+import com.clearsolutions.dto.BirthDateBucketDTO;
+import com.clearsolutions.dto.BirthDateCountDTO;
+import com.clearsolutions.dto.PageDTO;
+import com.clearsolutions.dto.UserDTO;
+import com.clearsolutions.dto.UserPatchDTO;
+import com.clearsolutions.events.UserChangedEvent;
+import com.clearsolutions.exception.DuplicateEmailException;
+import com.clearsolutions.exception.UserNotFoundException;
+import com.clearsolutions.exception.UserVersionConflictException;
+import com.clearsolutions.mapper.UserMapper;
+import com.clearsolutions.models.UserChangeOffsetEntity;
+import com.clearsolutions.models.UserEntity;
+import com.clearsolutions.models.UserRow;
+import com.clearsolutions.repositories.ReactiveUserRepository;
+import com.clearsolutions.services.ReactiveUserService;
+import com.clearsolutions.utils.CursorCodec;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.r2dbc.spi.ConnectionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveUserServiceImpl implements ReactiveUserService {
+
+    // marker for "first page", reactive pipelines cannot carry a null cursor
+    private static final CursorCodec.BirthDateCursor NO_CURSOR = new CursorCodec.BirthDateCursor(LocalDateTime.MIN, 0);
+
+    private final ReactiveUserRepository userRepository;
+    private final R2dbcEntityTemplate entityTemplate;
+    private final DatabaseClient databaseClient;
+    private final TransactionalOperator transactionalOperator;
+    private final ObjectMapper objectMapper;
+    // the block ids are taken from, replaced once used up
+    private final AtomicReference<IdBlock> ids = new AtomicReference<>(new IdBlock(1, 0));
+
+    // public only for testing purpose
+    @Value("${user.required-age}")
+    public int requiredAge;
+
+    public ReactiveUserServiceImpl(ReactiveUserRepository userRepository, R2dbcEntityTemplate entityTemplate,
+                                   DatabaseClient databaseClient, ConnectionFactory connectionFactory,
+                                   ObjectMapper objectMapper) {
+        this.userRepository = userRepository;
+        this.entityTemplate = entityTemplate;
+        this.databaseClient = databaseClient;
+        // not a bean, so @Transactional keeps resolving to the JPA transaction manager
+        this.transactionalOperator = TransactionalOperator.create(new R2dbcTransactionManager(connectionFactory));
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public Mono<UserDTO> createUser(UserDTO userDTO) {
+
+        return Mono.fromRunnable(() -> validateAge(userDTO.getBirthDate()))
+                .then(insert(userDTO))
+                // a deleted user keeps the email until it is purged, only a conflicting insert pays for freeing it;
+                // the email index is the only unique key a new row can violate, the id comes from the sequence
+                .onErrorResume(DuplicateKeyException.class, ex ->
+                        userRepository.purgeDeletedByEmail(UserMapper.normalizeEmail(userDTO.getEmail()))
+                                .flatMap(purged -> purged > 0 ? insert(userDTO) : Mono.error(ex)))
+                .onErrorMap(DuplicateKeyException.class, ex -> duplicateEmail(userDTO.getEmail()));
+    }
+
+    // its own transaction, so a conflict rolls back before the email is freed and the insert retried
+    private Mono<UserDTO> insert(UserDTO userDTO) {
+
+        return nextId()
+                .flatMap(id -> {
+                    UserRow user = UserMapper.mapToRow(userDTO);
+                    user.setId(id);
+                    user.setUpdatedAt(now());
+                    return entityTemplate.insert(user);
+                })
+                .map(UserMapper::mapToDto)
+                .flatMap(user -> recordChange(user.getId(), UserChangedEvent.Type.CREATED, user).thenReturn(user))
+                .as(transactionalOperator::transactional);
+    }
+
+    @Override
+    public Mono<UserDTO> updateUserById(int userId, UserDTO userDTO) {
+
+        return userRepository.findActiveById(userId)
+                .switchIfEmpty(Mono.error(() -> notFound(userId)))
+                .flatMap(user -> {
+                    if (userDTO.getBirthDate() != null) {
+                        validateAge(userDTO.getBirthDate());
+                        user.setBirthDate(userDTO.getBirthDate());
+                    }
+                    // like UserMapper.updateEntity: the required fields are kept when missing, the optional ones cleared
+                    if (userDTO.getEmail() != null) {
+                        user.setEmail(UserMapper.normalizeEmail(userDTO.getEmail()));
+                    }
+                    if (userDTO.getFirstName() != null) {
+                        user.setFirstName(userDTO.getFirstName());
+                    }
+                    if (userDTO.getLastName() != null) {
+                        user.setLastName(userDTO.getLastName());
+                    }
+                    user.setAddress(userDTO.getAddress());
+                    user.setPhoneNumber(userDTO.getPhoneNumber());
+                    user.setUpdatedAt(now());
+                    return entityTemplate.update(user);
+                })
+                .map(UserMapper::mapToDto)
+                .flatMap(user -> recordChange(userId, UserChangedEvent.Type.UPDATED, user).thenReturn(user))
+                .onErrorMap(DuplicateKeyException.class, ex -> duplicateEmail(userDTO.getEmail()))
+                .as(transactionalOperator::transactional);
+    }
+
+    @Override
+    public Mono<Void> patchUserById(int userId, Long expectedVersion, UserPatchDTO patch) {
+
+        if (patch.isEmpty()) {
+            return Mono.error(new IllegalArgumentException("Nothing to update!"));
+        }
+        if (patch.getBirthDate() != null) {
+            try {
+                validateAge(patch.getBirthDate());
+            } catch (IllegalArgumentException ex) {
+                return Mono.error(ex);
+            }
+        }
+
+        Map<String, Object> columns = new LinkedHashMap<>();
+        putIfNotNull(columns, "email", UserMapper.normalizeEmail(patch.getEmail()));
+        putIfNotNull(columns, "first_name", patch.getFirstName());
+        putIfNotNull(columns, "last_name", patch.getLastName());
+        putIfNotNull(columns, "birth_date", patch.getBirthDate());
+        putIfNotNull(columns, "address", patch.getAddress());
+        putIfNotNull(columns, "phone_number", patch.getPhoneNumber());
+        columns.put("updated_at", now());
+
+        StringBuilder sql = new StringBuilder("UPDATE user_table SET ");
+        columns.keySet().forEach(column -> sql.append(column).append(" = :").append(column).append(", "));
+        sql.append("version = version + 1 WHERE id = :id AND deleted_at IS NULL");
+        if (expectedVersion != null) {
+            sql.append(" AND version = :version");
+        }
+
+        DatabaseClient.GenericExecuteSpec update = databaseClient.sql(sql.toString()).bind("id", userId);
+        for (Map.Entry<String, Object> column : columns.entrySet()) {
+            update = update.bind(column.getKey(), column.getValue());
+        }
+        if (expectedVersion != null) {
+            update = update.bind("version", expectedVersion);
+        }
+
+        return update.fetch().rowsUpdated()
+                .flatMap(rows -> {
+                    if (rows > 0) {
+                        // a partial update, the change carries the whole user like UserChangeServiceImpl.record does
+                        return userRepository.findActiveById(userId)
+                                .flatMap(user -> recordChange(userId, UserChangedEvent.Type.UPDATED, UserMapper.mapToDto(user)));
+                    }
+                    if (expectedVersion == null) {
+                        return Mono.<Void>error(notFound(userId));
+                    }
+                    return userRepository.existsActiveById(userId)
+                            .flatMap(exists -> Mono.<Void>error(exists
+                                    ? new UserVersionConflictException("User with id = " + userId + " was modified, expected version " + expectedVersion + '!')
+                                    : notFound(userId)));
+                })
+                .onErrorMap(DuplicateKeyException.class, ex -> duplicateEmail(patch.getEmail()))
+                .as(transactionalOperator::transactional);
+    }
+
+    @Override
+    public Mono<UserDTO> getUserById(int userId) {
+
+        return userRepository.findActiveById(userId)
+                .map(UserMapper::mapToDto)
+                .switchIfEmpty(Mono.error(() -> notFound(userId)));
+    }
+
+    @Override
+    public Mono<PageDTO<UserDTO>> getAllUsers(String after, int limit) {
+
+        return Mono.fromCallable(() -> {
+                    validateLimit(limit);
+                    return after == null ? 0 : CursorCodec.decodeId(after);
+                })
+                .flatMapMany(afterId -> userRepository.findPage(afterId, limit))
+                .collectList()
+                .map(UserMapper::mapAllRows)
+                .map(users -> PageDTO.<UserDTO>builder()
+                        .items(users)
+                        .nextCursor(users.size() < limit ? null : CursorCodec.encodeId(users.get(users.size() - 1).getId()))
+                        .build());
+    }
+
+    @Override
+    public Flux<UserDTO> streamAllUsers() {
+
+        return userRepository.streamAll()
+                .map(UserMapper::mapToDto);
+    }
+
+    @Override
+    public Mono<PageDTO<UserDTO>> getUsersByBirthDateRange(LocalDateTime fromDate, LocalDateTime toDate, String after, int limit) {
+
+        return Mono.fromCallable(() -> {
+                    validateRange(fromDate, toDate);
+                    validateLimit(limit);
+                    return after == null ? NO_CURSOR : CursorCodec.decodeBirthDateAndId(after);
+                })
+                .flatMapMany(cursor -> cursor == NO_CURSOR
+                        ? userRepository.findByBirthDateBetween(fromDate, toDate, limit)
+                        : userRepository.findByBirthDateBetweenAfter(fromDate, toDate, cursor.birthDate(), cursor.id(), limit))
+                .collectList()
+                .map(UserMapper::mapAllRows)
+                .map(users -> {
+                    String nextCursor = null;
+                    if (users.size() == limit) {
+                        UserDTO last = users.get(users.size() - 1);
+                        nextCursor = CursorCodec.encodeBirthDateAndId(last.getBirthDate(), last.getId());
+                    }
+                    return PageDTO.<UserDTO>builder()
+                            .items(users)
+                            .nextCursor(nextCursor)
+                            .build();
+                });
+    }
+
+    @Override
+    public Flux<UserDTO> streamUsersByBirthDateRange(LocalDateTime fromDate, LocalDateTime toDate) {
+
+        return Mono.fromRunnable(() -> validateRange(fromDate, toDate))
+                .thenMany(userRepository.streamByBirthDateBetween(fromDate, toDate))
+                .map(UserMapper::mapToDto);
+    }
+
+    @Override
+    public Mono<BirthDateCountDTO> countUsersByBirthDateRange(LocalDateTime fromDate, LocalDateTime toDate, String groupBy) {
+
+        try {
+            validateRange(fromDate, toDate);
+        } catch (IllegalArgumentException ex) {
+            return Mono.error(ex);
+        }
+
+        if (groupBy == null || groupBy.isEmpty()) {
+            return userRepository.countByBirthDateBetween(fromDate, toDate)
+                    .map(total -> BirthDateCountDTO.builder().total(total).build());
+        }
+
+        boolean byMonth;
+        if ("year".equalsIgnoreCase(groupBy)) {
+            byMonth = false;
+        } else if ("month".equalsIgnoreCase(groupBy)) {
+            byMonth = true;
+        } else {
+            return Mono.error(new IllegalArgumentException("'groupBy' must be either 'year' or 'month'!"));
+        }
+
+        String period = byMonth ? "YEAR(birth_date), MONTH(birth_date)" : "YEAR(birth_date)";
+        String sql = "SELECT " + period + ", COUNT(*) FROM user_table WHERE birth_date BETWEEN :fromDate AND :toDate " +
+                "AND deleted_at IS NULL GROUP BY " + period + " ORDER BY " + period;
+
+        return databaseClient.sql(sql)
+                .bind("fromDate", fromDate)
+                .bind("toDate", toDate)
+                .map((row, metadata) -> byMonth
+                        ? new BirthDateBucketDTO(row.get(0, Integer.class), row.get(1, Integer.class), row.get(2, Long.class))
+                        : new BirthDateBucketDTO(row.get(0, Integer.class), row.get(1, Long.class)))
+                .all()
+                .collectList()
+                .map(buckets -> BirthDateCountDTO.builder()
+                        .total(buckets.stream().mapToLong(BirthDateBucketDTO::getCount).sum())
+                        .buckets(buckets)
+                        .build());
+    }
+
+    @Override
+    public Mono<Void> deleteUserById(int userId) {
+
+        return userRepository.softDeleteById(userId, now())
+                .flatMap(rows -> rows > 0
+                        ? recordChange(userId, UserChangedEvent.Type.DELETED, null)
+                        : Mono.<Void>error(notFound(userId)))
+                .as(transactionalOperator::transactional);
+    }
+
+    /**
+     * Hands out the block behind each user_seq value like Hibernate's pooled optimizer does, so a reactive insert
+     * costs one sequence call per {@link UserEntity#ID_ALLOCATION_SIZE} users and never reuses an id Hibernate hands out.
+     */
+    private Mono<Integer> nextId() {
+
+        return Mono.defer(() -> {
+            int id = ids.get().take();
+            if (id > 0) {
+                return Mono.just(id);
+            }
+            // concurrent callers may each fetch a block, the ids of the one that is replaced are only skipped
+            return userRepository.nextId().map(hi -> {
+                IdBlock block = new IdBlock(Math.max(1, hi - UserEntity.ID_ALLOCATION_SIZE + 1), hi);
+                int first = block.take();
+                ids.set(block);
+                return first;
+            });
+        });
+    }
+
+    /**
+     * Writes the user_change outbox row of a change, so the reactive stack feeds the same log as
+     * {@link UserChangeServiceImpl}. Must be the last statement of the caller's transaction: the offset counter
+     * stays locked from here to the commit, which keeps offsets in commit order.
+     */
+    private Mono<Void> recordChange(int userId, UserChangedEvent.Type type, UserDTO user) {
+
+        String payload;
+        try {
+            payload = user == null ? null : objectMapper.writeValueAsString(user);
+        } catch (JsonProcessingException ex) {
+            return Mono.error(new UncheckedIOException(ex));
+        }
+
+        return databaseClient.sql("UPDATE user_change_offset SET last_offset = last_offset + 1 WHERE id = " + UserChangeOffsetEntity.ID)
+                .fetch().rowsUpdated()
+                .flatMap(rows -> rows > 0
+                        ? Mono.just(rows)
+                        : Mono.error(new IllegalStateException("user_change_offset has no counter row, it is seeded by data.sql!")))
+                .then(databaseClient.sql("SELECT last_offset FROM user_change_offset WHERE id = " + UserChangeOffsetEntity.ID)
+                        .map(row -> row.get(0, Long.class))
+                        .one())
+                .flatMap(offset -> {
+                    DatabaseClient.GenericExecuteSpec insert = databaseClient.sql("INSERT INTO user_change " +
+                                    "(id, user_id, type, payload, created_at) VALUES (:id, :userId, :type, :payload, :createdAt)")
+                            .bind("id", offset)
+                            .bind("userId", userId)
+                            .bind("type", type.name())
+                            .bind("createdAt", LocalDateTime.now());
+                    insert = payload == null ? insert.bindNull("payload", String.class) : insert.bind("payload", payload);
+                    return insert.fetch().rowsUpdated();
+                })
+                .then();
+    }
+
+    private static final class IdBlock {
+
+        private final AtomicInteger next;
+        private final int hi;
+
+        IdBlock(int lo, int hi) {
+            this.next = new AtomicInteger(lo);
+            this.hi = hi;
+        }
+
+        // 0 once the block is used up
+        int take() {
+
+            int id = next.getAndIncrement();
+            return id <= hi ? id : 0;
+        }
+    }
+
+    private static void putIfNotNull(Map<String, Object> columns, String column, Object value) {
+
+        if (value != null) {
+            columns.put(column, value);
+        }
+    }
+
+    // same precision as UserEntity.touch()
+    private static LocalDateTime now() {
+
+        return LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+    }
+
+    private static DuplicateEmailException duplicateEmail(String email) {
+
+        return new DuplicateEmailException("User with email = " + UserMapper.normalizeEmail(email) + " already exists!");
+    }
+
+    private static UserNotFoundException notFound(int userId) {
+
+        return new UserNotFoundException("User with id = " + userId + " - not found!");
+    }
+
+    private void validateAge(LocalDateTime birthDate) {
+
+        if (ChronoUnit.YEARS.between(birthDate, LocalDateTime.now()) < requiredAge) {
+            throw new IllegalArgumentException("Age should be more than or equal to " + requiredAge + '!');
+        }
+    }
+
+    private void validateLimit(int limit) {
+
+        if (limit < 1 || limit > UserServiceImpl.MAX_PAGE_LIMIT) {
+            throw new IllegalArgumentException("'limit' must be between 1 and " + UserServiceImpl.MAX_PAGE_LIMIT + '!');
+        }
+    }
+
+    private void validateRange(LocalDateTime fromDate, LocalDateTime toDate) {
+
+        if (fromDate.isAfter(toDate)) {
+            throw new IllegalArgumentException("'fromDate' must be before the 'toDate'!");
+        }
+    }
+}
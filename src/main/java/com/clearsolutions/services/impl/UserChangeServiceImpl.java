@@ -0,0 +1,203 @@
+package com.clearsolutions.services.impl;
+
+import com.clearsolutions.dto.UserChangeDTO;
+import com.clearsolutions.dto.UserChangesDTO;
+import com.clearsolutions.dto.UserDTO;
+import com.clearsolutions.events.UserChangedEvent;
+import com.clearsolutions.models.UserChangeEntity;
+import com.clearsolutions.models.UserChangeOffsetEntity;
+import com.clearsolutions.repositories.UserChangeOffsetRepository;
+import com.clearsolutions.repositories.UserChangeRepository;
+import com.clearsolutions.repositories.UserRepository;
+import com.clearsolutions.routing.ReplicaRoutingDataSource;
+import com.clearsolutions.services.UserChangeService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transactional outbox of user changes: every {@link UserChangedEvent} is stored as a {@code user_change} row
+ * inside the transaction that made the change, and waiting readers are woken once it commits.
+ * {@link ReactiveUserServiceImpl} writes the same rows in its R2DBC transactions.
+ * Rows older than {@code user.changes.retention} are removed by {@link com.clearsolutions.purge.UserChangePurger}.
+ */
+@Service
+public class UserChangeServiceImpl implements UserChangeService {
+
+    public static final int MAX_LIMIT = 1000;
+    public static final Duration MAX_WAIT = Duration.ofSeconds(30);
+
+    private final UserChangeRepository userChangeRepository;
+    private final UserChangeOffsetRepository userChangeOffsetRepository;
+    private final UserRepository userRepository;
+    private final ObjectMapper objectMapper;
+    private final Executor executor;
+    private final Set<Runnable> waiters = ConcurrentHashMap.newKeySet();
+
+    public UserChangeServiceImpl(UserChangeRepository userChangeRepository,
+                                 UserChangeOffsetRepository userChangeOffsetRepository, UserRepository userRepository,
+                                 ObjectMapper objectMapper, @Qualifier("applicationTaskExecutor") Executor executor) {
+        this.userChangeRepository = userChangeRepository;
+        this.userChangeOffsetRepository = userChangeOffsetRepository;
+        this.userRepository = userRepository;
+        this.objectMapper = objectMapper;
+        this.executor = executor;
+    }
+
+    // runs synchronously in the publisher's transaction, the row is written right before that commits
+    @EventListener
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void record(UserChangedEvent event) {
+
+        UserDTO user = event.user();
+        if (user == null && event.type() != UserChangedEvent.Type.DELETED) {
+            user = userRepository.findDtoById(event.userId()).orElse(null);
+        }
+
+        UserChangeEntity change = UserChangeEntity.builder()
+                .userId(event.userId())
+                .type(event.type())
+                .payload(user == null ? null : toJson(user))
+                .createdAt(LocalDateTime.now())
+                .build();
+        pendingChanges().changes.add(change);
+    }
+
+    @Override
+    public UserChangesDTO getChanges(long since, int limit) {
+
+        validate(since, limit);
+        List<UserChangeDTO> changes = userChangeRepository.findByIdGreaterThan(since, Limit.of(limit));
+        long lastOffset = changes.isEmpty() ? since : changes.get(changes.size() - 1).getOffset();
+
+        return new UserChangesDTO(changes, lastOffset);
+    }
+
+    @Override
+    public CompletableFuture<UserChangesDTO> awaitChanges(long since, int limit, Duration timeout) {
+
+        validate(since, limit);
+        if (timeout.isNegative() || timeout.compareTo(MAX_WAIT) > 0) {
+            throw new IllegalArgumentException("'wait' must be between 0 and " + MAX_WAIT.toSeconds() + " seconds!");
+        }
+
+        CompletableFuture<UserChangesDTO> result = new CompletableFuture<>();
+        Runnable waiter = () -> {
+            if (result.isDone()) {
+                return;
+            }
+            try {
+                // woken by a commit on the primary, which a replica may not have applied yet
+                UserChangesDTO changes = ReplicaRoutingDataSource.readFromPrimary(() -> getChanges(since, limit));
+                if (!changes.getItems().isEmpty()) {
+                    result.complete(changes);
+                }
+            } catch (RuntimeException ex) {
+                result.completeExceptionally(ex);
+            }
+        };
+        // registered before the first read, so a commit in between still wakes it
+        waiters.add(waiter);
+        result.whenComplete((changes, ex) -> waiters.remove(waiter));
+
+        // the caller's thread never blocks, not even on the first read
+        executor.execute(() -> {
+            waiter.run();
+            CompletableFuture.delayedExecutor(timeout.toMillis(), TimeUnit.MILLISECONDS, executor)
+                    .execute(() -> result.complete(new UserChangesDTO(List.of(), since)));
+        });
+
+        return result;
+    }
+
+    @Override
+    public long lastOffset() {
+
+        return userChangeOffsetRepository.findById(UserChangeOffsetEntity.ID)
+                .map(UserChangeOffsetEntity::getLastOffset)
+                .orElse(0L);
+    }
+
+    private static void validate(long since, int limit) {
+
+        if (since < 0) {
+            throw new IllegalArgumentException("'since' must not be negative!");
+        }
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("'limit' must be between 1 and " + MAX_LIMIT + '!');
+        }
+    }
+
+    private PendingChanges pendingChanges() {
+
+        PendingChanges pending = (PendingChanges) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            pending = new PendingChanges();
+            TransactionSynchronizationManager.bindResource(this, pending);
+            TransactionSynchronizationManager.registerSynchronization(pending);
+        }
+
+        return pending;
+    }
+
+    private String toJson(UserDTO user) {
+
+        try {
+            return objectMapper.writeValueAsString(user);
+        } catch (JsonProcessingException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * The changes of one transaction. Their offsets are reserved right before it commits, so the counter row
+     * is locked from there to the commit only, not for the whole transaction, and offsets still follow commit order.
+     */
+    private final class PendingChanges implements TransactionSynchronization {
+
+        private final List<UserChangeEntity> changes = new ArrayList<>();
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+
+            // the transaction's own writes go out before the lock is taken
+            userChangeRepository.flush();
+            if (userChangeOffsetRepository.increment(changes.size()) == 0) {
+                throw new IllegalStateException("user_change_offset has no counter row, it is seeded by data.sql!");
+            }
+            long offset = userChangeOffsetRepository.lastOffset() - changes.size();
+            for (UserChangeEntity change : changes) {
+                change.setId(++offset);
+            }
+            userChangeRepository.saveAll(changes);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+
+            TransactionSynchronizationManager.unbindResourceIfPossible(UserChangeServiceImpl.this);
+            if (status == STATUS_COMMITTED) {
+                // once per commit, however many changes it holds
+                waiters.forEach(executor::execute);
+            }
+        }
+    }
+}
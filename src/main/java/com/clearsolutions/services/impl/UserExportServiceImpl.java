@@ -0,0 +1,156 @@
+package com.clearsolutions.services.impl;
+
+import com.clearsolutions.repositories.UserExportRepository;
+import com.clearsolutions.services.UserExportService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Writes each row as soon as the cursor delivers it. CSV columns are the table columns, NDJSON objects
+ * use the {@link com.clearsolutions.dto.UserDTO} property names, so they match the other JSON endpoints.
+ */
+@Service
+public class UserExportServiceImpl implements UserExportService {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String[] JSON_FIELDS = {"id", "email", "firstName", "lastName", "birthDate", "address",
+            "phoneNumber", "version", "updatedAt"};
+
+    private final UserExportRepository userExportRepository;
+    private final ObjectMapper objectMapper;
+    // some drivers only stream with a cursor inside a transaction, others ignore the fetch size without one
+    private final TransactionTemplate readOnlyTransaction;
+
+    public UserExportServiceImpl(UserExportRepository userExportRepository, ObjectMapper objectMapper,
+                                 PlatformTransactionManager transactionManager) {
+        this.userExportRepository = userExportRepository;
+        this.objectMapper = objectMapper;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    @Override
+    public UserExport prepareExport(Format format, LocalDateTime fromDate, LocalDateTime toDate) {
+
+        if ((fromDate == null) != (toDate == null)) {
+            throw new IllegalArgumentException("'fromDate' and 'toDate' must be given together!");
+        }
+        if (fromDate != null && fromDate.isAfter(toDate)) {
+            throw new IllegalArgumentException("'fromDate' must be before the 'toDate'!");
+        }
+
+        return outputStream -> {
+            try {
+                readOnlyTransaction.executeWithoutResult(status -> {
+                    try {
+                        if (format == Format.CSV) {
+                            writeCsv(fromDate, toDate, outputStream);
+                        } else {
+                            writeNdjson(fromDate, toDate, outputStream);
+                        }
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                });
+            } catch (UncheckedIOException ex) {
+                throw ex.getCause();
+            }
+        };
+    }
+
+    private void writeCsv(LocalDateTime fromDate, LocalDateTime toDate, OutputStream outputStream) throws IOException {
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), BUFFER_SIZE);
+        writer.write(String.join(",", UserExportRepository.COLUMNS));
+        writer.write("\r\n");
+        userExportRepository.forEachUser(fromDate, toDate, rs -> {
+            try {
+                for (int column = 1; column <= UserExportRepository.COLUMNS.length; column++) {
+                    if (column > 1) {
+                        writer.write(',');
+                    }
+                    writeCsvValue(writer, text(rs.getObject(column)));
+                }
+                writer.write("\r\n");
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+        writer.flush();
+    }
+
+    private void writeNdjson(LocalDateTime fromDate, LocalDateTime toDate, OutputStream outputStream) throws IOException {
+
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream);
+        // rows are separated by the explicit newline below, not by Jackson's default space
+        generator.setRootValueSeparator(null);
+        userExportRepository.forEachUser(fromDate, toDate, rs -> {
+            try {
+                generator.writeStartObject();
+                for (int column = 1; column <= JSON_FIELDS.length; column++) {
+                    generator.writeFieldName(JSON_FIELDS[column - 1]);
+                    Object value = rs.getObject(column);
+                    if (value == null) {
+                        generator.writeNull();
+                    } else if (value instanceof Number number) {
+                        generator.writeNumber(number.longValue());
+                    } else {
+                        generator.writeString(text(value));
+                    }
+                }
+                generator.writeEndObject();
+                generator.writeRaw('\n');
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        });
+        generator.flush();
+    }
+
+    // dates in the same ISO format Jackson writes for LocalDateTime
+    private static String text(Object value) {
+
+        if (value instanceof Timestamp timestamp) {
+            return DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(timestamp.toLocalDateTime());
+        }
+        if (value instanceof LocalDateTime dateTime) {
+            return DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(dateTime);
+        }
+
+        return value == null ? null : value.toString();
+    }
+
+    // RFC 4180: quote a value holding a separator, quote or line break, doubling the quotes inside it
+    private static void writeCsvValue(Writer writer, String value) throws IOException {
+
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\r' || c == '\n';
+        }
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
@@ -0,0 +1,213 @@
+package com.clearsolutions.services.impl;
+
+import com.clearsolutions.cache.EmailBloomFilter;
+import com.clearsolutions.dto.BulkImportResultDTO;
+import com.clearsolutions.dto.BulkRowErrorDTO;
+import com.clearsolutions.dto.UserDTO;
+import com.clearsolutions.events.UserChangedEvent;
+import com.clearsolutions.mapper.UserMapper;
+import com.clearsolutions.models.UserEntity;
+import com.clearsolutions.repositories.UserRepository;
+import com.clearsolutions.services.UserImportService;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceException;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+@Service
+public class UserImportServiceImpl implements UserImportService {
+
+    public static final int MAX_REPORTED_ERRORS = 1000;
+
+    private final UserRepository userRepository;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final Validator validator;
+    private final ApplicationEventPublisher eventPublisher;
+    private final EmailBloomFilter emailFilter;
+
+    // public only for testing purpose
+    @Value("${user.required-age}")
+    public int requiredAge;
+    @Value("${user.bulk.batch-size}")
+    public int batchSize;
+
+    public UserImportServiceImpl(UserRepository userRepository, EntityManager entityManager,
+                                 TransactionTemplate transactionTemplate, Validator validator,
+                                 ApplicationEventPublisher eventPublisher, EmailBloomFilter emailFilter) {
+        this.userRepository = userRepository;
+        this.entityManager = entityManager;
+        this.transactionTemplate = transactionTemplate;
+        this.validator = validator;
+        this.eventPublisher = eventPublisher;
+        this.emailFilter = emailFilter;
+    }
+
+    @Override
+    public BulkImportResultDTO importUsers(Iterator<UserDTO> users) {
+
+        ImportReport report = new ImportReport();
+        List<PendingRow> batch = new ArrayList<>(batchSize);
+
+        while (true) {
+            UserDTO userDTO;
+            try {
+                if (!users.hasNext()) {
+                    break;
+                }
+            } catch (RuntimeException ex) {
+                // the document itself is malformed, nothing after this point can be read reliably;
+                // reported at the position reading stopped, but it is no row that was received
+                report.abort(report.received, Map.of("body", "malformed input: " + ex.getMessage()));
+                break;
+            }
+
+            int row = report.received++;
+            try {
+                userDTO = users.next();
+            } catch (RuntimeException ex) {
+                report.reject(row, Map.of("body", "unreadable row: " + ex.getMessage()));
+                continue;
+            }
+
+            if (userDTO == null) {
+                report.reject(row, Map.of("body", "row must be an object!"));
+                continue;
+            }
+
+            Map<String, String> errors = validate(userDTO);
+            if (!errors.isEmpty()) {
+                report.reject(row, errors);
+                continue;
+            }
+
+            batch.add(new PendingRow(row, userDTO));
+            if (batch.size() >= batchSize) {
+                persist(batch, report);
+                batch.clear();
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            persist(batch, report);
+        }
+
+        return BulkImportResultDTO.builder()
+                .received(report.received)
+                .imported(report.imported)
+                .rejected(report.rejected)
+                .errors(report.errors)
+                .build();
+    }
+
+    private Map<String, String> validate(UserDTO userDTO) {
+
+        Map<String, String> errors = new HashMap<>();
+        for (ConstraintViolation<UserDTO> violation : validator.validate(userDTO)) {
+            errors.put(violation.getPropertyPath().toString(), violation.getMessage());
+        }
+
+        LocalDateTime birthDate = userDTO.getBirthDate();
+        if (birthDate != null && ChronoUnit.YEARS.between(birthDate, LocalDateTime.now()) < requiredAge) {
+            errors.putIfAbsent("birthDate", "Age should be more than or equal to " + requiredAge + '!');
+        }
+
+        return errors;
+    }
+
+    private void persist(List<PendingRow> batch, ImportReport report) {
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                List<UserEntity> users = new ArrayList<>(batch.size());
+                for (PendingRow pendingRow : batch) {
+                    UserEntity user = toNewEntity(pendingRow.user());
+                    entityManager.persist(user);
+                    users.add(user);
+                }
+                entityManager.flush();
+                entityManager.clear();
+                users.forEach(this::afterCreated);
+            });
+            report.imported += batch.size();
+        } catch (DataAccessException | PersistenceException ex) {
+            // fall back to one transaction per row so a single bad row only rejects itself
+            for (PendingRow pendingRow : batch) {
+                try {
+                    saveRow(pendingRow.user());
+                    report.imported++;
+                } catch (DataAccessException | PersistenceException rowEx) {
+                    report.reject(pendingRow.row(), Map.of("row", NestedExceptionUtils.getMostSpecificCause(rowEx).getMessage()));
+                }
+            }
+        }
+    }
+
+    private void saveRow(UserDTO userDTO) {
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> afterCreated(userRepository.save(toNewEntity(userDTO))));
+        } catch (DataIntegrityViolationException ex) {
+            // a deleted user keeps the email until it is purged, only a conflicting row pays for freeing it
+            if (userRepository.purgeDeletedByEmail(UserMapper.normalizeEmail(userDTO.getEmail())) == 0) {
+                throw ex;
+            }
+            transactionTemplate.executeWithoutResult(status -> afterCreated(userRepository.save(toNewEntity(userDTO))));
+        }
+    }
+
+    // the event reaches listeners only once the batch commits
+    private void afterCreated(UserEntity user) {
+
+        emailFilter.put(user.getEmail());
+        eventPublisher.publishEvent(new UserChangedEvent(user.getId(), UserChangedEvent.Type.CREATED, UserMapper.mapToDto(user)));
+    }
+
+    private static UserEntity toNewEntity(UserDTO userDTO) {
+
+        UserEntity user = UserMapper.mapToEntity(userDTO);
+        user.setId(0);
+
+        return user;
+    }
+
+    private record PendingRow(int row, UserDTO user) {
+    }
+
+    private static final class ImportReport {
+
+        private final List<BulkRowErrorDTO> errors = new ArrayList<>();
+        private int received;
+        private int imported;
+        private int rejected;
+
+        private void reject(int row, Map<String, String> rowErrors) {
+
+            rejected++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(new BulkRowErrorDTO(row, rowErrors));
+            }
+        }
+
+        // always reported, even past the cap, as it explains why fewer rows were received than sent
+        private void abort(int position, Map<String, String> documentErrors) {
+
+            errors.add(new BulkRowErrorDTO(position, documentErrors));
+        }
+    }
+}
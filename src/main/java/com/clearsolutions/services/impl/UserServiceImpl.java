@@ -1,100 +1,496 @@
 package com.clearsolutions.services.impl;
 
+import com.clearsolutions.cache.EmailBloomFilter;
+import com.clearsolutions.cache.UserCache;
+import com.clearsolutions.dto.BirthDateBucketDTO;
+import com.clearsolutions.dto.BirthDateCountDTO;
+import com.clearsolutions.dto.PageDTO;
+import com.clearsolutions.dto.SearchResultDTO;
+import com.clearsolutions.dto.UserBatchDTO;
 import com.clearsolutions.dto.UserDTO;
+import com.clearsolutions.dto.UserPatchDTO;
+import com.clearsolutions.events.UserChangedEvent;
+import com.clearsolutions.exception.DuplicateEmailException;
 import com.clearsolutions.exception.UserNotFoundException;
+import com.clearsolutions.exception.UserVersionConflictException;
 import com.clearsolutions.mapper.UserMapper;
 import com.clearsolutions.models.UserEntity;
 import com.clearsolutions.repositories.UserRepository;
-import org.springframework.beans.BeanUtils;
+import com.clearsolutions.routing.ReplicaRoutingDataSource;
+import com.clearsolutions.search.UserSearchIndex;
+import com.clearsolutions.utils.CursorCodec;
+import com.clearsolutions.utils.RequestCollapser;
+import io.micrometer.core.annotation.Timed;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import com.clearsolutions.services.UserService;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 @Service
+@Timed("user.service")
 public class UserServiceImpl implements UserService {
 
+    public static final int MAX_PAGE_LIMIT = 1000;
+    public static final int MAX_BATCH_GET_IDS = 5000;
+    // ids per IN list, keeps statements and their plans cacheable
+    static final int IN_CHUNK_SIZE = 500;
+    public static final Set<String> USER_FIELDS = Set.of("id", "email", "firstName", "lastName", "birthDate", "address",
+            "phoneNumber", "version", "updatedAt");
+
     private final UserRepository userRepository;
+    private final UserCache userCache;
+    private final UserSearchIndex userSearchIndex;
+    private final ApplicationEventPublisher eventPublisher;
+    private final EmailBloomFilter emailFilter;
+    private final TransactionTemplate transaction;
 
     // public only for testing purpose
     @Value("${user.required-age}")
     public int requiredAge;
+    // null unless a collapse window is set
+    private RequestCollapser<Integer, UserDTO> lookupCollapser;
 
-    public UserServiceImpl(UserRepository userRepository) {
+    public UserServiceImpl(UserRepository userRepository, UserCache userCache, UserSearchIndex userSearchIndex,
+                           ApplicationEventPublisher eventPublisher, EmailBloomFilter emailFilter,
+                           PlatformTransactionManager transactionManager) {
         this.userRepository = userRepository;
+        this.userCache = userCache;
+        this.userSearchIndex = userSearchIndex;
+        this.eventPublisher = eventPublisher;
+        this.emailFilter = emailFilter;
+        // writes that may conflict on the email retry in a new transaction, see reusingDeletedEmail
+        this.transaction = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Single-id cache misses arriving within the window are loaded by one IN query, zero loads each on its own.
+     * The query runs on whichever caller's thread runs the batch, so it reads the primary: another caller may
+     * have to see its own writes.
+     */
+    @Value("${user.lookup.collapse-window}")
+    public void setCollapseWindow(Duration window) {
+
+        lookupCollapser = window.isZero() ? null : new RequestCollapser<>(
+                userIds -> ReplicaRoutingDataSource.readFromPrimary(() -> findUsersByIdIn(userIds)), window, IN_CHUNK_SIZE);
     }
 
     @Override
     public UserDTO createUser(UserDTO userDTO) {
 
-        UserEntity user = UserMapper.mapToEntity(userDTO);
+        validateNewUser(userDTO);
 
-        if (ChronoUnit.YEARS.between(user.getBirthDate(), LocalDateTime.now()) < requiredAge) {
-            throw new IllegalArgumentException("Age should be more than or equal to " + requiredAge + '!');
-        }
+        return reusingDeletedEmail(userDTO.getEmail(), () -> transaction.execute(status -> {
+            UserEntity user = saveUnique(UserMapper.mapToEntity(userDTO));
+            UserDTO createdUser = UserMapper.mapToDto(user);
+            userCache.put(createdUser);
+            eventPublisher.publishEvent(new UserChangedEvent(createdUser.getId(), UserChangedEvent.Type.CREATED, createdUser));
+
+            return createdUser;
+        }));
+    }
 
-        user = userRepository.save(user);
+    @Override
+    public void validateNewUser(UserDTO userDTO) {
 
-        return UserMapper.mapToDto(user);
+        validateAge(userDTO.getBirthDate());
+        validateEmailIsFree(UserMapper.normalizeEmail(userDTO.getEmail()));
     }
 
     @Override
     public UserDTO updateUserById(int userId, UserDTO userDTO) {
 
-        UserEntity tempUser = new UserEntity();
-        UserEntity existingUser = userRepository.findById(userId)
-                .orElseThrow(() -> new UserNotFoundException("User with id = " + userId + " - not found!"));
+        return reusingDeletedEmail(userDTO.getEmail(), () -> transaction.execute(status -> {
+            UserEntity existingUser = userRepository.findById(userId)
+                    .orElseThrow(() -> new UserNotFoundException("User with id = " + userId + " - not found!"));
 
-        BeanUtils.copyProperties(userDTO, tempUser, "id", "birthDate");
-        if (userDTO.getBirthDate() != null) {
-            if (ChronoUnit.YEARS.between(userDTO.getBirthDate(), LocalDateTime.now()) < requiredAge) {
-                throw new IllegalArgumentException("Age should be more than or equal to " + 18 + '!');
+            if (userDTO.getBirthDate() != null) {
+                validateAge(userDTO.getBirthDate());
+            }
+            String email = UserMapper.normalizeEmail(userDTO.getEmail());
+            if (email != null && !email.equals(existingUser.getEmail())) {
+                validateEmailIsFree(email);
             }
-            tempUser.setBirthDate(userDTO.getBirthDate());
+            UserMapper.updateEntity(userDTO, existingUser);
+
+            UserEntity updatedUser = saveUnique(existingUser);
+            UserDTO updatedUserDto = UserMapper.mapToDto(updatedUser);
+            userCache.put(updatedUserDto);
+            eventPublisher.publishEvent(new UserChangedEvent(userId, UserChangedEvent.Type.UPDATED, updatedUserDto));
+
+            return updatedUserDto;
+        }));
+    }
+
+    @Override
+    public void patchUserById(int userId, Long expectedVersion, UserPatchDTO patch) {
+
+        if (patch.isEmpty()) {
+            throw new IllegalArgumentException("Nothing to update!");
+        }
+        if (patch.getBirthDate() != null) {
+            validateAge(patch.getBirthDate());
         }
-        BeanUtils.copyProperties(tempUser, existingUser, "id");
 
-        UserEntity updatedUser = userRepository.save(existingUser);
+        reusingDeletedEmail(patch.getEmail(), () -> transaction.execute(status -> {
+            applyPatch(userId, expectedVersion, patch);
+            return null;
+        }));
+    }
+
+    private void applyPatch(int userId, Long expectedVersion, UserPatchDTO patch) {
 
-        return UserMapper.mapToDto(updatedUser);
+        int updated = userRepository.patchById(userId, expectedVersion, patch);
+        if (updated == 0) {
+            // a second statement tells a version conflict from a missing user
+            if (expectedVersion != null && userRepository.existsById(userId)) {
+                throw new UserVersionConflictException("User with id = " + userId + " was modified, expected version " + expectedVersion + '!');
+            }
+            throw new UserNotFoundException("User with id = " + userId + " - not found!");
+        }
+        if (patch.getEmail() != null) {
+            emailFilter.put(patch.getEmail());
+        }
+        // read back inside the transaction, unlike an eviction the new version cannot be undone
+        // by a load that raced with the patch
+        UserDTO patchedUser = userRepository.findDtoById(userId)
+                .orElseThrow(() -> new UserNotFoundException("User with id = " + userId + " - not found!"));
+        userCache.put(patchedUser);
+        eventPublisher.publishEvent(new UserChangedEvent(userId, UserChangedEvent.Type.UPDATED, patchedUser));
     }
 
     @Override
     public UserDTO getUserById(int userId) {
 
-        UserEntity user = userRepository.findById(userId)
+        return findUserById(userId)
                 .orElseThrow(() -> new UserNotFoundException("User with id = " + userId + " - not found!"));
+    }
+
+    @Override
+    public Optional<UserDTO> findUserById(int userId) {
+
+        return Optional.ofNullable(userCache.get(userId, this::loadUser));
+    }
+
+    @Override
+    public UserBatchDTO getUsersByIds(List<Integer> userIds) {
+
+        if (userIds.isEmpty() || userIds.size() > MAX_BATCH_GET_IDS) {
+            throw new IllegalArgumentException("'ids' must hold between 1 and " + MAX_BATCH_GET_IDS + " ids!");
+        }
+
+        Map<Integer, UserDTO> users = userCache.getAll(userIds, this::findUsersByIdIn);
+        List<UserBatchDTO.Item> items = new ArrayList<>(userIds.size());
+        int found = 0;
+        for (int userId : userIds) {
+            UserDTO user = users.get(userId);
+            if (user != null) {
+                found++;
+            }
+            items.add(new UserBatchDTO.Item(userId, user != null, user));
+        }
+
+        return new UserBatchDTO(items, found, items.size() - found);
+    }
+
+    private UserDTO loadUser(int userId) {
+
+        if (lookupCollapser == null) {
+            return userRepository.findDtoById(userId).orElse(null);
+        }
+
+        return lookupCollapser.load(userId);
+    }
+
+    private Map<Integer, UserDTO> findUsersByIdIn(Set<Integer> userIds) {
 
-        return UserMapper.mapToDto(user);
+        Map<Integer, UserDTO> users = new HashMap<>();
+        List<Integer> ids = new ArrayList<>(userIds);
+        for (int from = 0; from < ids.size(); from += IN_CHUNK_SIZE) {
+            userRepository.findDtosByIdIn(ids.subList(from, Math.min(from + IN_CHUNK_SIZE, ids.size())))
+                    .forEach(user -> users.put(user.getId(), user));
+        }
+
+        return users;
     }
 
     @Override
-    public List<UserDTO> getAllUsers() {
+    public UserDTO getUserByEmail(String email) {
 
-        return userRepository.findAll().stream()
-                .map(UserMapper::mapToDto)
-                .toList();
+        String normalizedEmail = UserMapper.normalizeEmail(email);
+        // no filter here: it is empty while warming up and misses writes made by other instances
+        return userRepository.findByEmail(normalizedEmail)
+                .orElseThrow(() -> new UserNotFoundException("User with email = " + normalizedEmail + " - not found!"));
     }
 
     @Override
-    public List<UserDTO> getUsersByBirthDateRange(LocalDateTime fromDate, LocalDateTime toDate) {
+    public PageDTO<UserDTO> getAllUsers(String after, int limit) {
 
-        if (fromDate.isAfter(toDate)) {
-            throw new IllegalArgumentException("'fromDate' must be before the 'toDate'!");
+        validateLimit(limit);
+
+        int afterId = after == null ? 0 : CursorCodec.decodeId(after);
+        List<UserDTO> users = userRepository.findByIdGreaterThanOrderByIdAsc(afterId, Limit.of(limit));
+        String nextCursor = users.size() < limit ? null : CursorCodec.encodeId(users.get(users.size() - 1).getId());
+
+        return PageDTO.<UserDTO>builder()
+                .items(users)
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    @Override
+    public PageDTO<Map<String, Object>> getAllUsers(String after, int limit, Set<String> fields) {
+
+        validateLimit(limit);
+        Set<String> selected = selectFields(fields, "id", "version");
+
+        int afterId = after == null ? 0 : CursorCodec.decodeId(after);
+        List<Map<String, Object>> users = userRepository.findFieldsByIdGreaterThan(selected, afterId, limit);
+
+        String nextCursor = null;
+        if (users.size() == limit) {
+            nextCursor = CursorCodec.encodeId((Integer) users.get(users.size() - 1).get("id"));
+        }
+
+        return PageDTO.<Map<String, Object>>builder()
+                .versions(versions(users))
+                .items(retainFields(users, fields))
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void streamAllUsers(Consumer<UserDTO> consumer) {
+
+        // DTO rows are never attached to the persistence context, so heap use does not grow with the table
+        try (Stream<UserDTO> users = userRepository.streamAll()) {
+            users.forEach(consumer);
+        }
+    }
+
+    @Override
+    public PageDTO<UserDTO> getUsersByBirthDateRange(LocalDateTime fromDate, LocalDateTime toDate, String after, int limit) {
+
+        validateRange(fromDate, toDate);
+        validateLimit(limit);
+
+        List<UserDTO> users;
+        if (after == null) {
+            users = userRepository.findByBirthDateBetweenOrderByBirthDateAscIdAsc(fromDate, toDate, Limit.of(limit));
+        } else {
+            CursorCodec.BirthDateCursor cursor = CursorCodec.decodeBirthDateAndId(after);
+            users = userRepository.findByBirthDateBetweenAfter(fromDate, toDate, cursor.birthDate(), cursor.id(), Limit.of(limit));
+        }
+
+        String nextCursor = null;
+        if (users.size() == limit) {
+            UserDTO last = users.get(users.size() - 1);
+            nextCursor = CursorCodec.encodeBirthDateAndId(last.getBirthDate(), last.getId());
         }
 
-        return userRepository.findByBirthDateBetween(fromDate, toDate).stream()
-                .map(UserMapper::mapToDto)
-                .toList();
+        return PageDTO.<UserDTO>builder()
+                .items(users)
+                .nextCursor(nextCursor)
+                .build();
     }
 
+    @Override
+    public PageDTO<Map<String, Object>> getUsersByBirthDateRange(LocalDateTime fromDate, LocalDateTime toDate, String after, int limit,
+                                                                 Set<String> fields) {
+
+        validateRange(fromDate, toDate);
+        validateLimit(limit);
+        Set<String> selected = selectFields(fields, "birthDate", "id", "version");
+
+        CursorCodec.BirthDateCursor cursor = after == null ? null : CursorCodec.decodeBirthDateAndId(after);
+        List<Map<String, Object>> users = userRepository.findFieldsByBirthDateBetween(selected, fromDate, toDate,
+                cursor == null ? null : cursor.birthDate(), cursor == null ? 0 : cursor.id(), limit);
+
+        String nextCursor = null;
+        if (users.size() == limit) {
+            Map<String, Object> last = users.get(users.size() - 1);
+            nextCursor = CursorCodec.encodeBirthDateAndId((LocalDateTime) last.get("birthDate"), (Integer) last.get("id"));
+        }
+
+        return PageDTO.<Map<String, Object>>builder()
+                .versions(versions(users))
+                .items(retainFields(users, fields))
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    @Override
+    public BirthDateCountDTO countUsersByBirthDateRange(LocalDateTime fromDate, LocalDateTime toDate, String groupBy) {
+
+        validateRange(fromDate, toDate);
+
+        if (groupBy == null || groupBy.isEmpty()) {
+            return BirthDateCountDTO.builder()
+                    .total(userRepository.countByBirthDateBetween(fromDate, toDate))
+                    .build();
+        }
+
+        List<BirthDateBucketDTO> buckets = switch (groupBy.toLowerCase(Locale.ROOT)) {
+            case "year" -> userRepository.countByBirthDateBetweenGroupByYear(fromDate, toDate);
+            case "month" -> userRepository.countByBirthDateBetweenGroupByMonth(fromDate, toDate);
+            default -> throw new IllegalArgumentException("'groupBy' must be either 'year' or 'month'!");
+        };
+
+        return BirthDateCountDTO.builder()
+                .total(buckets.stream().mapToLong(BirthDateBucketDTO::getCount).sum())
+                .buckets(buckets)
+                .build();
+    }
 
     @Override
+    public SearchResultDTO<UserDTO> searchUsers(String query, int page, int size) {
+
+        validateLimit(size);
+        // bounded so that the offset fits into an int
+        if (page < 0 || (long) page * size > Integer.MAX_VALUE - size) {
+            throw new IllegalArgumentException("'page' must be between 0 and " + (Integer.MAX_VALUE - size) / size + '!');
+        }
+
+        UserSearchIndex.Hits hits = userSearchIndex.search(query, page * size, size);
+        // the index only holds the searchable fields, the page itself is read by primary key
+        Map<Integer, UserDTO> users = new HashMap<>();
+        if (!hits.ids().isEmpty()) {
+            userRepository.findDtosByIdIn(hits.ids()).forEach(user -> users.put(user.getId(), user));
+        }
+
+        return SearchResultDTO.<UserDTO>builder()
+                .items(hits.ids().stream().map(users::get).filter(Objects::nonNull).toList())
+                .page(page)
+                .size(size)
+                .total(hits.total())
+                .build();
+    }
+
+    @Override
+    @Transactional
     public void deleteUserById(int userId) {
 
-        userRepository.deleteById(userId);
+        if (userRepository.softDeleteById(userId, LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS)) == 0) {
+            throw new UserNotFoundException("User with id = " + userId + " - not found!");
+        }
+        userCache.remove(userId);
+        eventPublisher.publishEvent(new UserChangedEvent(userId, UserChangedEvent.Type.DELETED, null));
+    }
+
+    private void validateAge(LocalDateTime birthDate) {
+
+        if (ChronoUnit.YEARS.between(birthDate, LocalDateTime.now()) < requiredAge) {
+            throw new IllegalArgumentException("Age should be more than or equal to " + requiredAge + '!');
+        }
+    }
+
+    // a new email is answered by the Bloom filter alone, only possible duplicates cost a lookup;
+    // an email the filter has not seen yet is still caught by the unique index in reusingDeletedEmail
+    private void validateEmailIsFree(String email) {
+
+        if (emailFilter.mightContain(email) && userRepository.existsByEmail(email)) {
+            throw duplicateEmail(email);
+        }
+    }
+
+    // the unique index still decides when two requests race for the same email, see reusingDeletedEmail
+    private UserEntity saveUnique(UserEntity user) {
+
+        UserEntity savedUser = userRepository.save(user);
+        // sequence ids defer the insert to commit, flush so the violation surfaces here
+        userRepository.flush();
+        emailFilter.put(savedUser.getEmail());
+
+        return savedUser;
+    }
+
+    /**
+     * A deleted user keeps its email until it is purged. Only a write that conflicts on the email pays for
+     * freeing it, the write then runs once more; the first attempt must be its own, already rolled back, transaction.
+     */
+    private <T> T reusingDeletedEmail(String email, Supplier<T> write) {
+
+        try {
+            return write.get();
+        } catch (DataIntegrityViolationException ex) {
+            if (email == null || userRepository.purgeDeletedByEmail(UserMapper.normalizeEmail(email)) == 0) {
+                throw duplicateEmail(email);
+            }
+        }
+        try {
+            return write.get();
+        } catch (DataIntegrityViolationException ex) {
+            throw duplicateEmail(email);
+        }
+    }
+
+    private static DuplicateEmailException duplicateEmail(String email) {
+
+        return new DuplicateEmailException("User with email = " + UserMapper.normalizeEmail(email) + " already exists!");
+    }
+
+    private void validateLimit(int limit) {
+
+        if (limit < 1 || limit > MAX_PAGE_LIMIT) {
+            throw new IllegalArgumentException("'limit' must be between 1 and " + MAX_PAGE_LIMIT + '!');
+        }
+    }
+
+    // the keyset columns are always selected because the next cursor is built from them, the version for the page ETag
+    private static Set<String> selectFields(Set<String> fields, String... keysetFields) {
+
+        for (String field : fields) {
+            if (!USER_FIELDS.contains(field)) {
+                throw new IllegalArgumentException("Unknown field '" + field + "', expected any of " + USER_FIELDS + '!');
+            }
+        }
+        Set<String> selected = new LinkedHashSet<>(fields);
+        selected.addAll(List.of(keysetFields));
+
+        return selected;
+    }
+
+    private static Map<Integer, Long> versions(List<Map<String, Object>> rows) {
+
+        Map<Integer, Long> versions = new LinkedHashMap<>();
+        rows.forEach(row -> versions.put((Integer) row.get("id"), (Long) row.get("version")));
+
+        return versions;
+    }
+
+    private static List<Map<String, Object>> retainFields(List<Map<String, Object>> rows, Set<String> fields) {
+
+        rows.forEach(row -> row.keySet().retainAll(fields));
+
+        return rows;
+    }
+
+    private void validateRange(LocalDateTime fromDate, LocalDateTime toDate) {
+
+        if (fromDate.isAfter(toDate)) {
+            throw new IllegalArgumentException("'fromDate' must be before the 'toDate'!");
+        }
     }
 }
@@ -0,0 +1,202 @@
+package com.clearsolutions.services.impl;
+
+import com.clearsolutions.dto.BulkImportResultDTO;
+import com.clearsolutions.dto.BulkRowErrorDTO;
+import com.clearsolutions.dto.UserDTO;
+import com.clearsolutions.dto.UserWriteStatusDTO;
+import com.clearsolutions.exception.UserNotFoundException;
+import com.clearsolutions.exception.WriteQueueFullException;
+import com.clearsolutions.services.UserImportService;
+import com.clearsolutions.services.UserService;
+import com.clearsolutions.services.UserWriteBehindService;
+import com.clearsolutions.writebehind.UserWrite;
+import com.clearsolutions.writebehind.UserWriteJournal;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Write-behind creation of users: requests are validated and journaled on the caller's thread,
+ * a single writer thread saves them in batches through {@link UserImportService}, so the database commit
+ * is off the request path and amortized over a whole batch. Every write leaves the journal once it is reported
+ * as written or failed, so only writes whose outcome was never reported are replayed on the next start.
+ */
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class UserWriteBehindServiceImpl implements UserWriteBehindService {
+
+    private static final long POLL_MILLIS = 100;
+
+    private final UserService userService;
+    private final UserImportService userImportService;
+    private final UserWriteJournal journal;
+    private final BlockingQueue<UserWrite> queue = new LinkedBlockingQueue<>();
+    // queued plus currently saving, bounded by queueCapacity
+    private final AtomicInteger backlog = new AtomicInteger();
+    private final Cache<String, UserWriteStatusDTO> statuses;
+    private final Thread writer = new Thread(this::drain, "user-write-behind");
+    private volatile boolean running = true;
+
+    // public only for testing purpose
+    @Value("${user.write-behind.queue-capacity}")
+    public int queueCapacity;
+    @Value("${user.bulk.batch-size}")
+    public int batchSize;
+
+    public UserWriteBehindServiceImpl(UserService userService, UserImportService userImportService, UserWriteJournal journal,
+                                      @Value("${user.write-behind.status.maximum-size}") long statusMaximumSize,
+                                      @Value("${user.write-behind.status.expire-after-write}") Duration statusExpireAfterWrite) {
+        this.userService = userService;
+        this.userImportService = userImportService;
+        this.journal = journal;
+        this.statuses = Caffeine.newBuilder()
+                .maximumSize(statusMaximumSize)
+                .expireAfterWrite(statusExpireAfterWrite)
+                .build();
+    }
+
+    /**
+     * Re-queues whatever the previous run accepted but did not save, then starts the writer.
+     */
+    @PostConstruct
+    public void start() throws IOException {
+
+        List<UserWrite> unfinished = journal.open();
+        backlog.addAndGet(unfinished.size());
+        unfinished.forEach(this::enqueue);
+
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Stops accepting writes and lets the writer save what is already queued.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(30));
+    }
+
+    @Override
+    public UserWriteStatusDTO submit(UserDTO userDTO) {
+
+        if (!running) {
+            throw new WriteQueueFullException("Write queue is shutting down!");
+        }
+        userService.validateNewUser(userDTO);
+
+        // the slot is taken before the journal append, so a rejected write costs no disk sync
+        if (backlog.incrementAndGet() > queueCapacity) {
+            backlog.decrementAndGet();
+            throw new WriteQueueFullException("Write queue is full, retry later!");
+        }
+        UserWrite write = new UserWrite(UUID.randomUUID().toString(), userDTO);
+        try {
+            journal.append(write);
+        } catch (RuntimeException ex) {
+            backlog.decrementAndGet();
+            throw ex;
+        }
+
+        return enqueue(write);
+    }
+
+    @Override
+    public UserWriteStatusDTO getStatus(String trackingId) {
+
+        UserWriteStatusDTO status = statuses.getIfPresent(trackingId);
+        if (status == null) {
+            throw new UserNotFoundException("Write with tracking id = " + trackingId + " - not found!");
+        }
+
+        return status;
+    }
+
+    private UserWriteStatusDTO enqueue(UserWrite write) {
+
+        UserWriteStatusDTO status = status(write, UserWriteStatusDTO.Status.QUEUED, null);
+        queue.add(write);
+
+        return status;
+    }
+
+    private void drain() {
+
+        List<UserWrite> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                UserWrite first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                save(batch);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                backlog.addAndGet(-batch.size());
+                batch.clear();
+            }
+        }
+    }
+
+    private void save(List<UserWrite> batch) {
+
+        BulkImportResultDTO result;
+        try {
+            result = userImportService.importUsers(batch.stream().map(UserWrite::user).iterator());
+        } catch (RuntimeException ex) {
+            // a write reported as failed is up to its client to resubmit, replaying it would contradict the report
+            for (UserWrite write : batch) {
+                status(write, UserWriteStatusDTO.Status.FAILED, ex.getMessage());
+                journal.complete(write.trackingId());
+            }
+            return;
+        }
+
+        Map<Integer, Map<String, String>> errors = result.getErrors().stream()
+                .collect(Collectors.toMap(BulkRowErrorDTO::getRow, BulkRowErrorDTO::getErrors));
+        for (int row = 0; row < batch.size(); row++) {
+            UserWrite write = batch.get(row);
+            Map<String, String> rowErrors = errors.get(row);
+            if (rowErrors == null) {
+                status(write, UserWriteStatusDTO.Status.WRITTEN, null);
+            } else {
+                status(write, UserWriteStatusDTO.Status.FAILED, rowErrors.toString());
+            }
+            journal.complete(write.trackingId());
+        }
+    }
+
+    private UserWriteStatusDTO status(UserWrite write, UserWriteStatusDTO.Status state, String message) {
+
+        UserWriteStatusDTO status = UserWriteStatusDTO.builder()
+                .trackingId(write.trackingId())
+                .status(state)
+                .message(message)
+                .build();
+        statuses.put(write.trackingId(), status);
+
+        return status;
+    }
+}
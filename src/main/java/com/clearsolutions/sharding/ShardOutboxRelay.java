@@ -0,0 +1,78 @@
+package com.clearsolutions.sharding;
+
+import com.clearsolutions.purge.JobLease;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Moves the changes in the shard outboxes into the main {@code user_change} log, so the cache invalidation,
+ * the search index and readers of the change feed see sharded writes like any other. Each batch is published
+ * as {@link com.clearsolutions.events.UserChangedEvent}s in one transaction on the main database and only
+ * removed from its shard after that commits: a crash in between relays it again, which the consumers of the
+ * log tolerate since every change carries the user's full state. A user lives on one shard, so its changes
+ * keep their order. Only the instance holding the {@link JobLease} relays.
+ */
+@Slf4j
+public class ShardOutboxRelay {
+
+    static final String JOB = "shard-outbox-relay";
+
+    private final ShardedUserRepository repository;
+    private final int shards;
+    private final JobLease jobLease;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transaction;
+    private final Duration interval;
+    private final int batchSize;
+
+    public ShardOutboxRelay(ShardedUserRepository repository, int shards, JobLease jobLease,
+                            ApplicationEventPublisher eventPublisher, PlatformTransactionManager transactionManager,
+                            Duration interval, int batchSize) {
+        this.repository = repository;
+        this.shards = shards;
+        this.jobLease = jobLease;
+        this.eventPublisher = eventPublisher;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.interval = interval;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Returns the number of relayed changes.
+     */
+    @Scheduled(fixedDelayString = "${user.sharding.relay-interval}")
+    public long relay() {
+
+        // held across two intervals, so the holder renews it before anyone else may take over
+        if (!jobLease.tryAcquire(JOB, interval.multipliedBy(2))) {
+            return 0;
+        }
+
+        long relayed = 0;
+        for (int shard = 0; shard < shards; shard++) {
+            List<ShardedUserRepository.Change> changes;
+            do {
+                changes = repository.findChanges(shard, batchSize);
+                if (changes.isEmpty()) {
+                    break;
+                }
+                List<ShardedUserRepository.Change> batch = changes;
+                transaction.executeWithoutResult(status -> batch.forEach(change -> eventPublisher.publishEvent(change.event())));
+                repository.deleteChanges(shard, changes.get(changes.size() - 1).id());
+                relayed += changes.size();
+            } while (changes.size() == batchSize);
+        }
+
+        if (relayed > 0) {
+            log.debug("Relayed {} user changes from the shards", relayed);
+        }
+
+        return relayed;
+    }
+}
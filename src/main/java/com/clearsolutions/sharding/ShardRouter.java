@@ -0,0 +1,63 @@
+package com.clearsolutions.sharding;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * Maps a user id to the shard holding it. Ids are hashed first, so the shard does not depend on how
+ * ids are handed out, and consecutive ids from one lease still land on every shard evenly.
+ */
+public class ShardRouter implements Closeable {
+
+    private final List<DataSource> shards;
+
+    public ShardRouter(List<DataSource> shards) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is needed!");
+        }
+        this.shards = List.copyOf(shards);
+    }
+
+    public int shardOf(int userId) {
+
+        // murmur3 finalizer, every input bit affects the low bits the modulo keeps
+        int hash = userId;
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+
+        return Math.floorMod(hash, shards.size());
+    }
+
+    public DataSource dataSourceOf(int userId) {
+
+        return shards.get(shardOf(userId));
+    }
+
+    public List<DataSource> shards() {
+
+        return shards;
+    }
+
+    /**
+     * Closes the shards that are pools.
+     */
+    @Override
+    public void close() {
+
+        for (DataSource shard : shards) {
+            if (shard instanceof Closeable pool) {
+                try {
+                    pool.close();
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+        }
+    }
+}
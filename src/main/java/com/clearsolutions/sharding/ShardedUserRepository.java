@@ -0,0 +1,384 @@
+package com.clearsolutions.sharding;
+
+import com.clearsolutions.dto.UserDTO;
+import com.clearsolutions.events.UserChangedEvent;
+import com.clearsolutions.exception.DuplicateEmailException;
+import com.clearsolutions.mapper.UserMapper;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+
+/**
+ * user_table spread over several databases by {@link ShardRouter}. Lookups and writes by id reach only the shard
+ * holding the user; the other queries run on every shard in parallel and their sorted results are merged
+ * while they are read, so neither side ever holds a full result.
+ * <p>
+ * A write is one transaction on the user's shard, which also stores the change in that shard's
+ * {@code user_change} outbox; {@link ShardOutboxRelay} moves it into the main change log. Emails are unique
+ * across shards through the {@code user_email} directory on the first shard: a user reserves its email there
+ * before its row is written, and a reservation whose user no longer holds the email on its shard is taken over
+ * once it is older than the reservation timeout.
+ */
+public class ShardedUserRepository {
+
+    private static final String COLUMNS = "id, email, first_name, last_name, birth_date, address, phone_number, " +
+            "version, updated_at";
+    private static final String SELECT = "select " + COLUMNS + " from user_table where deleted_at is null";
+    private static final String INSERT = "insert into user_table (" + COLUMNS + ") values (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String UPDATE = "update user_table set email = ?, first_name = ?, last_name = ?, " +
+            "birth_date = ?, address = ?, phone_number = ?, version = version + 1, updated_at = ? " +
+            "where id = ? and version = ? and deleted_at is null";
+    private static final String SOFT_DELETE = "update user_table set deleted_at = ?, updated_at = ?, " +
+            "version = version + 1 where id = ? and deleted_at is null";
+    private static final String INSERT_CHANGE = "insert into user_change (user_id, type, payload, created_at) " +
+            "values (?, ?, ?, ?)";
+    // same columns, constraints and indexes as the schema UserEntity generates, plus the shard's outbox
+    private static final List<String> SCHEMA = List.of(
+            "create table if not exists user_table (id integer not null primary key, email varchar(255) not null, " +
+                    "first_name varchar(255) not null, last_name varchar(255) not null, birth_date timestamp(6) not null, " +
+                    "address varchar(255), phone_number varchar(255), version bigint not null, updated_at timestamp(6), " +
+                    "deleted_at timestamp(6), constraint uk_user_email unique (email))",
+            "create index if not exists idx_user_birth_date_id on user_table (birth_date, id)",
+            "create index if not exists idx_user_deleted_at on user_table (deleted_at)",
+            "create table if not exists user_change (id bigint generated by default as identity primary key, " +
+                    "user_id integer not null, type varchar(16) not null, payload varchar(4096), " +
+                    "created_at timestamp(6) not null)");
+    private static final String EMAIL_DIRECTORY = "create table if not exists user_email (" +
+            "email varchar(255) not null primary key, user_id integer not null, reserved_at timestamp(6) not null)";
+
+    private static final RowMapper<UserDTO> USER = (rs, rowNum) -> UserDTO.builder()
+            .id(rs.getInt("id"))
+            .email(rs.getString("email"))
+            .firstName(rs.getString("first_name"))
+            .lastName(rs.getString("last_name"))
+            .birthDate(rs.getObject("birth_date", LocalDateTime.class))
+            .address(rs.getString("address"))
+            .phoneNumber(rs.getString("phone_number"))
+            .version(rs.getLong("version"))
+            .updatedAt(rs.getObject("updated_at", LocalDateTime.class))
+            .build();
+
+    private final ShardRouter router;
+    private final UserIdAllocator idAllocator;
+    private final ObjectMapper objectMapper;
+    private final Duration reservationTimeout;
+    private final Executor executor;
+    private final Map<DataSource, JdbcTemplate> jdbcTemplates = new HashMap<>();
+    private final Map<DataSource, TransactionTemplate> transactions = new HashMap<>();
+    private final JdbcTemplate directory;
+
+    /**
+     * @param reservationTimeout age after which an email reservation without a matching user row counts as
+     *                           abandoned; must be longer than any single write takes
+     */
+    public ShardedUserRepository(ShardRouter router, UserIdAllocator idAllocator, ObjectMapper objectMapper,
+                                 Duration reservationTimeout, Executor executor) {
+        this.router = router;
+        this.idAllocator = idAllocator;
+        this.objectMapper = objectMapper;
+        this.reservationTimeout = reservationTimeout;
+        this.executor = executor;
+        for (DataSource shard : router.shards()) {
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(shard);
+            jdbcTemplate.setFetchSize(500);
+            jdbcTemplates.put(shard, jdbcTemplate);
+            transactions.put(shard, new TransactionTemplate(new DataSourceTransactionManager(shard)));
+        }
+        directory = jdbcTemplates.get(router.shards().get(0));
+    }
+
+    /**
+     * Creates the tables on every shard and the email directory on the first one, unless they exist.
+     */
+    public void createSchema() {
+
+        jdbcTemplates.values().forEach(jdbcTemplate -> SCHEMA.forEach(jdbcTemplate::execute));
+        directory.execute(EMAIL_DIRECTORY);
+    }
+
+    public Optional<UserDTO> findById(int userId) {
+
+        return shardOf(userId).query(SELECT + " and id = ?", USER, userId).stream().findFirst();
+    }
+
+    /**
+     * Inserts the user under a new id when it has none, otherwise updates it if its version still matches.
+     * The given user is updated with the stored id, normalized email, version and update time, and returned.
+     *
+     * @throws DuplicateEmailException           when another user, on any shard, has the email
+     * @throws OptimisticLockingFailureException when the user was changed or deleted since its version was read
+     */
+    public UserDTO save(UserDTO user) {
+
+        user.setEmail(UserMapper.normalizeEmail(user.getEmail()));
+
+        return user.getId() == 0 ? insert(user) : update(user);
+    }
+
+    private UserDTO insert(UserDTO user) {
+
+        int userId = idAllocator.nextId();
+        reserveEmail(user.getEmail(), userId);
+        try {
+            transactionOf(userId).executeWithoutResult(status -> {
+                LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+                shardOf(userId).update(INSERT, userId, user.getEmail(), user.getFirstName(), user.getLastName(),
+                        user.getBirthDate(), user.getAddress(), user.getPhoneNumber(), 0L, now);
+                user.setId(userId);
+                user.setVersion(0);
+                user.setUpdatedAt(now);
+                recordChange(userId, UserChangedEvent.Type.CREATED, user);
+            });
+        } catch (RuntimeException ex) {
+            user.setId(0);
+            releaseEmail(user.getEmail(), userId);
+            throw ex;
+        }
+
+        return user;
+    }
+
+    private UserDTO update(UserDTO user) {
+
+        int userId = user.getId();
+        // the row keeps this email for as long as it keeps the version the update checks
+        String oldEmail = shardOf(userId).query("select email from user_table where id = ? and version = ? " +
+                "and deleted_at is null", (rs, rowNum) -> rs.getString("email"), userId, user.getVersion())
+                .stream().findFirst()
+                .orElseThrow(() -> concurrentlyChanged(userId));
+        boolean emailChanged = !oldEmail.equals(user.getEmail());
+        if (emailChanged) {
+            reserveEmail(user.getEmail(), userId);
+        }
+
+        try {
+            transactionOf(userId).executeWithoutResult(status -> {
+                LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+                int updated = shardOf(userId).update(UPDATE, user.getEmail(), user.getFirstName(), user.getLastName(),
+                        user.getBirthDate(), user.getAddress(), user.getPhoneNumber(), now, userId, user.getVersion());
+                if (updated == 0) {
+                    throw concurrentlyChanged(userId);
+                }
+                user.setVersion(user.getVersion() + 1);
+                user.setUpdatedAt(now);
+                recordChange(userId, UserChangedEvent.Type.UPDATED, user);
+            });
+        } catch (RuntimeException ex) {
+            if (emailChanged) {
+                releaseEmail(user.getEmail(), userId);
+            }
+            throw ex;
+        }
+        if (emailChanged) {
+            // left behind if this fails, the next user of the email takes the reservation over
+            releaseEmail(oldEmail, userId);
+        }
+
+        return user;
+    }
+
+    /**
+     * Marks the user deleted; returns false when there is no such user or it is already deleted.
+     * Like on the single database its email stays taken until the row is purged, which a new user of
+     * the email does.
+     */
+    public boolean deleteById(int userId) {
+
+        return Boolean.TRUE.equals(transactionOf(userId).execute(status -> {
+            LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+            if (shardOf(userId).update(SOFT_DELETE, now, now, userId) == 0) {
+                return false;
+            }
+            recordChange(userId, UserChangedEvent.Type.DELETED, null);
+
+            return true;
+        }));
+    }
+
+    /**
+     * Up to {@code limit} changes from the outbox of the shard with the given index, oldest first.
+     */
+    public List<Change> findChanges(int shard, int limit) {
+
+        return jdbcTemplates.get(router.shards().get(shard)).query(
+                "select id, user_id, type, payload from user_change order by id limit ?",
+                (rs, rowNum) -> new Change(rs.getLong("id"), new UserChangedEvent(rs.getInt("user_id"),
+                        UserChangedEvent.Type.valueOf(rs.getString("type")), fromJson(rs.getString("payload")))),
+                limit);
+    }
+
+    /**
+     * Removes the changes up to and including {@code lastId} from the outbox of the shard with the given index.
+     */
+    public int deleteChanges(int shard, long lastId) {
+
+        return jdbcTemplates.get(router.shards().get(shard)).update("delete from user_change where id <= ?", lastId);
+    }
+
+    /**
+     * Reserves the email for the user in the directory. A reservation held by another user is taken over when
+     * that user's row no longer has the email, right away if the row is soft-deleted, which also purges it,
+     * or once the reservation is older than the timeout if there is no row, since that user's write may not
+     * have committed yet.
+     */
+    private void reserveEmail(String email, int userId) {
+
+        while (true) {
+            LocalDateTime now = LocalDateTime.now();
+            try {
+                directory.update("insert into user_email (email, user_id, reserved_at) values (?, ?, ?)", email, userId, now);
+                return;
+            } catch (DuplicateKeyException ex) {
+                // taken, see by whom below
+            }
+
+            List<Reservation> reservations = directory.query("select user_id, reserved_at from user_email where email = ?",
+                    (rs, rowNum) -> new Reservation(rs.getInt("user_id"), rs.getObject("reserved_at", LocalDateTime.class)), email);
+            if (reservations.isEmpty()) {
+                // released in between
+                continue;
+            }
+            Reservation holder = reservations.get(0);
+            if (holder.userId() == userId) {
+                // left behind by an earlier attempt of this user, renewed so that nobody takes it over mid-write
+                if (directory.update("update user_email set reserved_at = ? where email = ? and user_id = ?", now, email, userId) == 1) {
+                    return;
+                }
+                continue;
+            }
+
+            List<Boolean> deleted = shardOf(holder.userId()).query("select deleted_at is not null as deleted from user_table " +
+                    "where id = ? and email = ?", (rs, rowNum) -> rs.getBoolean("deleted"), holder.userId(), email);
+            if (!deleted.isEmpty() && !deleted.get(0)) {
+                throw new DuplicateEmailException("User with email = " + email + " already exists!");
+            }
+            if (!deleted.isEmpty()) {
+                shardOf(holder.userId()).update("delete from user_table where id = ? and email = ? and deleted_at is not null",
+                        holder.userId(), email);
+            } else if (holder.reservedAt().isAfter(now.minus(reservationTimeout))) {
+                throw new DuplicateEmailException("User with email = " + email + " already exists!");
+            }
+            // whoever takes it first wins, the others see the new holder
+            directory.update("update user_email set user_id = ?, reserved_at = ? where email = ? and user_id = ?",
+                    userId, now, email, holder.userId());
+        }
+    }
+
+    private void releaseEmail(String email, int userId) {
+
+        directory.update("delete from user_email where email = ? and user_id = ?", email, userId);
+    }
+
+    // runs in the shard transaction of the user change
+    private void recordChange(int userId, UserChangedEvent.Type type, UserDTO user) {
+
+        shardOf(userId).update(INSERT_CHANGE, userId, type.name(), user == null ? null : toJson(user), LocalDateTime.now());
+    }
+
+    private String toJson(UserDTO user) {
+
+        try {
+            return objectMapper.writeValueAsString(user);
+        } catch (JsonProcessingException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private UserDTO fromJson(String payload) {
+
+        try {
+            return payload == null ? null : objectMapper.readValue(payload, UserDTO.class);
+        } catch (JsonProcessingException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private static OptimisticLockingFailureException concurrentlyChanged(int userId) {
+
+        return new OptimisticLockingFailureException("User with id = " + userId + " was changed or deleted concurrently!");
+    }
+
+    /**
+     * Every live user in id order. The stream holds a connection per shard until it is closed.
+     */
+    public Stream<UserDTO> findAll() {
+
+        return scatter(SELECT + " order by id", Comparator.comparingInt(UserDTO::getId));
+    }
+
+    /**
+     * Users born between the dates, both inclusive, in birth date then id order. The stream holds a connection
+     * per shard until it is closed.
+     */
+    public Stream<UserDTO> findByBirthDateBetween(LocalDateTime fromDate, LocalDateTime toDate) {
+
+        return scatter(SELECT + " and birth_date between ? and ? order by birth_date, id",
+                Comparator.comparing(UserDTO::getBirthDate).thenComparingInt(UserDTO::getId), fromDate, toDate);
+    }
+
+    // the query must sort the way order does
+    private Stream<UserDTO> scatter(String sql, Comparator<UserDTO> order, Object... args) {
+
+        List<CompletableFuture<Stream<UserDTO>>> queries = router.shards().stream()
+                .map(shard -> CompletableFuture.supplyAsync(() -> jdbcTemplates.get(shard).queryForStream(sql, USER, args), executor))
+                .toList();
+
+        List<Stream<UserDTO>> sorted = new ArrayList<>(queries.size());
+        try {
+            for (CompletableFuture<Stream<UserDTO>> query : queries) {
+                sorted.add(query.join());
+            }
+        } catch (CompletionException ex) {
+            // also closes the results of queries still running
+            queries.forEach(query -> query.thenAccept(Stream::close));
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw ex;
+        }
+
+        return SortedMerge.merge(sorted, order);
+    }
+
+    private JdbcTemplate shardOf(int userId) {
+
+        return jdbcTemplates.get(router.dataSourceOf(userId));
+    }
+
+    private TransactionTemplate transactionOf(int userId) {
+
+        return transactions.get(router.dataSourceOf(userId));
+    }
+
+    /**
+     * A change waiting in a shard's outbox.
+     *
+     * @param id position in that outbox
+     */
+    public record Change(long id, UserChangedEvent event) {
+    }
+
+    private record Reservation(int userId, LocalDateTime reservedAt) {
+    }
+}
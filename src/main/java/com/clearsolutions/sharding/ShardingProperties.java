@@ -0,0 +1,24 @@
+package com.clearsolutions.sharding;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Databases user_table is spread over.
+ *
+ * @param enabled     whether the shards are set up at all
+ * @param urls        JDBC URL of every shard, the first one also hands out the ids; never reordered or resized
+ *                    once it holds users, since a user's shard follows from the number of shards
+ * @param idBlockSize ids leased from the first shard at a time, must not change once its sequence exists
+ * @param emailReservationTimeout age after which an email reservation of a user that never wrote its row
+ *                    may be taken over, see {@link ShardedUserRepository}
+ * @param relayInterval how often the shard outboxes are moved into the main change log
+ * @param relayBatchSize changes moved per transaction
+ */
+@ConfigurationProperties("user.sharding")
+public record ShardingProperties(boolean enabled, List<String> urls, String username, String password,
+                                 int idBlockSize, Duration emailReservationTimeout, Duration relayInterval,
+                                 int relayBatchSize) {
+}
@@ -0,0 +1,87 @@
+package com.clearsolutions.sharding;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * K-way merge of streams that are each sorted already: holds one element per stream, so it never buffers
+ * more than that however long the streams are.
+ */
+final class SortedMerge {
+
+    private SortedMerge() {
+    }
+
+    /**
+     * Closing the merged stream closes all of the given ones.
+     */
+    static <T> Stream<T> merge(List<Stream<T>> sorted, Comparator<? super T> order) {
+
+        Iterator<T> merged = new Iterator<>() {
+
+            private PriorityQueue<Head<T>> heads;
+
+            @Override
+            public boolean hasNext() {
+
+                if (heads == null) {
+                    heads = new PriorityQueue<>(Math.max(1, sorted.size()), (a, b) -> order.compare(a.value, b.value));
+                    sorted.forEach(stream -> advance(stream.iterator()));
+                }
+
+                return !heads.isEmpty();
+            }
+
+            @Override
+            public T next() {
+
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Head<T> head = heads.poll();
+                advance(head.rest);
+
+                return head.value;
+            }
+
+            private void advance(Iterator<T> rest) {
+
+                if (rest.hasNext()) {
+                    heads.add(new Head<>(rest.next(), rest));
+                }
+            }
+        };
+
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(merged, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> closeAll(sorted));
+    }
+
+    private static void closeAll(List<? extends Stream<?>> streams) {
+
+        RuntimeException failure = null;
+        for (Stream<?> stream : streams) {
+            try {
+                stream.close();
+            } catch (RuntimeException ex) {
+                if (failure == null) {
+                    failure = ex;
+                } else {
+                    failure.addSuppressed(ex);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private record Head<T>(T value, Iterator<T> rest) {
+    }
+}
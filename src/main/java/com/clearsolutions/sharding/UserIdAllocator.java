@@ -0,0 +1,44 @@
+package com.clearsolutions.sharding;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+
+/**
+ * Hands out user ids unique across all shards and all application instances. Each instance leases a block
+ * of ids from one sequence and assigns them from memory, so an insert only reaches the sequence once
+ * per block; ids then grow per instance, not globally.
+ */
+public class UserIdAllocator {
+
+    static final String SEQUENCE = "user_id_block_seq";
+
+    private final JdbcTemplate sequenceShard;
+    private final int blockSize;
+    // the lease is [next, limit)
+    private int next;
+    private int limit;
+
+    public UserIdAllocator(DataSource sequenceShard, int blockSize) {
+        this.sequenceShard = new JdbcTemplate(sequenceShard);
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Creates the sequence unless it exists, every value it returns starts a block.
+     */
+    public void createSequence() {
+
+        sequenceShard.execute("create sequence if not exists " + SEQUENCE + " start with 1 increment by " + blockSize);
+    }
+
+    public synchronized int nextId() {
+
+        if (next == limit) {
+            next = sequenceShard.queryForObject("select next value for " + SEQUENCE, Integer.class);
+            limit = next + blockSize;
+        }
+
+        return next++;
+    }
+}
@@ -0,0 +1,72 @@
+package com.clearsolutions.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Encodes keyset positions into opaque, URL-safe cursors so clients never depend on their internal layout.
+ */
+public final class CursorCodec {
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private CursorCodec() {
+    }
+
+    public static String encodeId(int id) {
+
+        return encode(Integer.toString(id));
+    }
+
+    public static int decodeId(String cursor) {
+
+        try {
+            return Integer.parseInt(decode(cursor));
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid cursor!");
+        }
+    }
+
+    public static String encodeBirthDateAndId(LocalDateTime birthDate, int id) {
+
+        return encode(birthDate + "|" + id);
+    }
+
+    public static BirthDateCursor decodeBirthDateAndId(String cursor) {
+
+        String value = decode(cursor);
+        int separator = value.indexOf('|');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Invalid cursor!");
+        }
+
+        try {
+            return new BirthDateCursor(
+                    LocalDateTime.parse(value.substring(0, separator)),
+                    Integer.parseInt(value.substring(separator + 1))
+            );
+        } catch (DateTimeParseException | NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid cursor!");
+        }
+    }
+
+    private static String encode(String value) {
+
+        return ENCODER.encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decode(String cursor) {
+
+        try {
+            return new String(DECODER.decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Invalid cursor!");
+        }
+    }
+
+    public record BirthDateCursor(LocalDateTime birthDate, int id) {
+    }
+}
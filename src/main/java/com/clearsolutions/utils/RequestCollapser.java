@@ -0,0 +1,109 @@
+package com.clearsolutions.utils;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * DataLoader-style batching of single-key loads: keys requested within the window opened by the first of them
+ * are loaded together by one call of the batch loader, which returns the values it found by key.
+ * The caller that opened the window waits it out and runs the batch, the others wait for its result;
+ * a batch that fills up runs right away on the thread that filled it.
+ */
+public class RequestCollapser<K, V> {
+
+    private final Function<Set<K>, Map<K, V>> batchLoader;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    // guarded by this
+    private Batch<K, V> open;
+
+    public RequestCollapser(Function<Set<K>, Map<K, V>> batchLoader, Duration window, int maxBatchSize) {
+        this.batchLoader = batchLoader;
+        this.windowNanos = window.toNanos();
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Returns the value the batch loader found for the key, or null.
+     */
+    public V load(K key) {
+
+        Batch<K, V> batch;
+        CompletableFuture<V> result;
+        boolean opened;
+        boolean full;
+        synchronized (this) {
+            opened = open == null;
+            if (opened) {
+                open = new Batch<>();
+            }
+            batch = open;
+            result = batch.results.computeIfAbsent(key, k -> new CompletableFuture<>());
+            full = batch.results.size() >= maxBatchSize;
+            if (full) {
+                open = null;
+            }
+        }
+
+        if (opened && !full) {
+            // a batch filled up in the meantime ends the wait early
+            batch.ran.completeOnTimeout(null, windowNanos, TimeUnit.NANOSECONDS).join();
+            synchronized (this) {
+                if (open == batch) {
+                    open = null;
+                }
+            }
+        }
+        if (opened || full) {
+            batch.run(batchLoader);
+        }
+
+        try {
+            return result.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw ex;
+        }
+    }
+
+    private static final class Batch<K, V> {
+
+        // no more keys are added once the batch is closed, which happens before it runs
+        private final Map<K, CompletableFuture<V>> results = new LinkedHashMap<>();
+        private final AtomicBoolean started = new AtomicBoolean();
+        private final CompletableFuture<Void> ran = new CompletableFuture<>();
+
+        // a batch both filled up and waited out by its opener runs once
+        void run(Function<Set<K>, Map<K, V>> batchLoader) {
+
+            if (!started.compareAndSet(false, true)) {
+                return;
+            }
+            boolean completed = false;
+            try {
+                Map<K, V> values = batchLoader.apply(results.keySet());
+                results.forEach((key, result) -> result.complete(values.get(key)));
+                completed = true;
+            } catch (RuntimeException ex) {
+                results.values().forEach(result -> result.completeExceptionally(ex));
+                completed = true;
+            } finally {
+                if (!completed) {
+                    // an Error goes up the running thread, the other callers must not keep waiting for it
+                    IllegalStateException aborted = new IllegalStateException("Batch load aborted!");
+                    results.values().forEach(result -> result.completeExceptionally(aborted));
+                }
+                ran.complete(null);
+            }
+        }
+    }
+}
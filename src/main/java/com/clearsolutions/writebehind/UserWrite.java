@@ -0,0 +1,9 @@
+package com.clearsolutions.writebehind;
+
+import com.clearsolutions.dto.UserDTO;
+
+/**
+ * A user accepted for creation but not yet saved.
+ */
+public record UserWrite(String trackingId, UserDTO user) {
+}
@@ -0,0 +1,253 @@
+package com.clearsolutions.writebehind;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Append-only file of accepted user writes, one JSON line each; a line without a user marks its write as done.
+ * An accepted write is forced to disk before it is acknowledged, done markers are not, so after a crash a write
+ * may be replayed once more and is then rejected by the unique email index. Appends are group committed:
+ * callers queue their lines and wait, a single writer thread writes whatever has queued up and covers
+ * the whole batch with one {@code force}. The file is truncated whenever no write is pending,
+ * so it only ever holds the current backlog.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class UserWriteJournal implements AutoCloseable {
+
+    private final Path path;
+    private final ObjectMapper objectMapper;
+    // guards the channel, the queue and the pending count; not a monitor, so waiting virtual threads are not pinned
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition queued = lock.newCondition();
+    private final Deque<Append> queue = new ArrayDeque<>();
+    private final Thread writer = new Thread(this::write, "user-write-journal");
+    private FileChannel channel;
+    // appended, queued included, and not yet completed
+    private int pending;
+    private boolean closed;
+
+    public UserWriteJournal(@Value("${user.write-behind.journal}") Path path, ObjectMapper objectMapper) {
+        this.path = path;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Opens the journal for appending and returns the writes a previous run accepted but never finished,
+     * in the order they were accepted.
+     */
+    public List<UserWrite> open() throws IOException {
+
+        Map<String, UserWrite> unfinished = new LinkedHashMap<>();
+        if (Files.exists(path)) {
+            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    UserWrite write;
+                    try {
+                        write = objectMapper.readValue(line, UserWrite.class);
+                    } catch (JsonProcessingException ex) {
+                        // only the last line can be torn, by a crash in the middle of an append
+                        break;
+                    }
+                    if (write.user() == null) {
+                        unfinished.remove(write.trackingId());
+                    } else {
+                        unfinished.put(write.trackingId(), write);
+                    }
+                }
+            }
+        } else if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+
+        // rewrite the backlog alone, so done writes and a torn tail are dropped for good
+        Path compacted = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (UserWrite write : unfinished.values()) {
+                writeLine(out, line(write));
+            }
+            out.force(false);
+        }
+        Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        lock.lock();
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            pending = unfinished.size();
+        } finally {
+            lock.unlock();
+        }
+        writer.setDaemon(true);
+        writer.start();
+
+        return new ArrayList<>(unfinished.values());
+    }
+
+    /**
+     * Returns once the write is on disk, together with every other write queued while the previous batch was forced.
+     */
+    public void append(UserWrite write) {
+
+        Append append;
+        try {
+            append = new Append(line(write), new CompletableFuture<>());
+        } catch (JsonProcessingException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Journal is closed!");
+            }
+            queue.add(append);
+            pending++;
+            queued.signal();
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            append.forced().join();
+        } catch (CompletionException ex) {
+            throw ex.getCause() instanceof IOException io ? new UncheckedIOException(io) : ex;
+        }
+    }
+
+    public void complete(String trackingId) {
+
+        lock.lock();
+        try {
+            if (--pending == 0) {
+                channel.truncate(0);
+            } else {
+                writeLine(channel, line(new UserWrite(trackingId, null)));
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops taking appends and returns once the writer has forced what was already queued.
+     */
+    @Override
+    public void close() throws IOException {
+
+        lock.lock();
+        try {
+            closed = true;
+            queued.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private void write() {
+
+        List<Append> batch = new ArrayList<>();
+        while (true) {
+            lock.lock();
+            try {
+                while (queue.isEmpty() && !closed) {
+                    queued.awaitUninterruptibly();
+                }
+                if (queue.isEmpty()) {
+                    return;
+                }
+                batch.addAll(queue);
+                queue.clear();
+                for (Append append : batch) {
+                    writeLine(channel, append.line());
+                }
+            } catch (IOException ex) {
+                fail(batch, ex);
+                continue;
+            } finally {
+                lock.unlock();
+            }
+
+            // outside the lock, so the next batch queues up and completions go on while the disk syncs
+            try {
+                channel.force(false);
+            } catch (IOException ex) {
+                lock.lock();
+                try {
+                    fail(batch, ex);
+                } finally {
+                    lock.unlock();
+                }
+                continue;
+            }
+            batch.forEach(append -> append.forced().complete(null));
+            batch.clear();
+        }
+    }
+
+    // a failed append is never acknowledged, so it is no longer pending; a line that did reach the file is replayed
+    private void fail(List<Append> batch, IOException ex) {
+
+        pending -= batch.size();
+        batch.forEach(append -> append.forced().completeExceptionally(ex));
+        batch.clear();
+    }
+
+    private byte[] line(UserWrite write) throws JsonProcessingException {
+
+        byte[] json = objectMapper.writeValueAsBytes(write);
+        byte[] line = Arrays.copyOf(json, json.length + 1);
+        line[json.length] = '\n';
+
+        return line;
+    }
+
+    private static void writeLine(FileChannel out, byte[] line) throws IOException {
+
+        ByteBuffer buffer = ByteBuffer.wrap(line);
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    private record Append(byte[] line, CompletableFuture<Void> forced) {
+    }
+}
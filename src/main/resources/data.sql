@@ -0,0 +1,18 @@
+-- runs on every start after Hibernate has updated the schema, so every statement must be repeatable
+
+-- counter behind the user_change offsets, see UserChangeServiceImpl
+insert into user_change_offset (id, last_offset)
+select 1, 0 where not exists (select 1 from user_change_offset where id = 1);
+
+-- one row per scheduled job that must run on a single instance at a time, see JobLease
+create table if not exists job_lease (
+    name varchar(64) primary key,
+    locked_until timestamp not null,
+    locked_by varchar(64)
+);
+insert into job_lease (name, locked_until)
+select 'deleted-user-purge', timestamp '1970-01-01 00:00:00' where not exists (select 1 from job_lease where name = 'deleted-user-purge');
+insert into job_lease (name, locked_until)
+select 'user-change-purge', timestamp '1970-01-01 00:00:00' where not exists (select 1 from job_lease where name = 'user-change-purge');
+insert into job_lease (name, locked_until)
+select 'shard-outbox-relay', timestamp '1970-01-01 00:00:00' where not exists (select 1 from job_lease where name = 'shard-outbox-relay');
@@ -1,13 +1,83 @@
 package com.clearsolutions;
 
+import com.clearsolutions.dto.UserChangeDTO;
+import com.clearsolutions.dto.UserChangesDTO;
+import com.clearsolutions.dto.UserDTO;
+import com.clearsolutions.events.UserChangedEvent;
+import com.clearsolutions.exception.DuplicateEmailException;
+import com.clearsolutions.exception.UserNotFoundException;
+import com.clearsolutions.services.UserChangeService;
+import com.clearsolutions.services.UserService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
 
 @SpringBootTest
 class ClearSolutionsApplicationTests {
 
+	@TempDir
+	static Path journals;
+
+	@DynamicPropertySource
+	static void journal(DynamicPropertyRegistry registry) {
+		registry.add("user.write-behind.journal", () -> journals.resolve("user-write-behind.journal").toString());
+	}
+
+	@Autowired
+	private UserService userService;
+
+	@Autowired
+	private UserChangeService userChangeService;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
 	@Test
 	void contextLoads() {
 	}
 
+	@Test
+	void serviceCallsAreTimed() {
+
+		Assertions.assertThatThrownBy(() -> userService.getUserById(Integer.MAX_VALUE))
+				.isInstanceOf(UserNotFoundException.class);
+
+		Assertions.assertThat(meterRegistry.get("user.service")
+						.tag("method", "getUserById")
+						.tag("exception", "UserNotFoundException")
+						.timer().count())
+				.isEqualTo(1);
+	}
+
+	@Test
+	void changesAreRecordedOnlyWhenTheirTransactionCommits() {
+
+		long since = userChangeService.getChanges(0, 1000).getLastOffset();
+		UserDTO user = UserDTO.builder()
+				.email("changes@mail.com")
+				.firstName("Test")
+				.lastName("Test")
+				.birthDate(LocalDateTime.of(2000, 1, 1, 0, 0))
+				.build();
+
+		UserDTO created = userService.createUser(user);
+		Assertions.assertThatThrownBy(() -> userService.createUser(user)).isInstanceOf(DuplicateEmailException.class);
+		userService.deleteUserById(created.getId());
+
+		UserChangesDTO changes = userChangeService.getChanges(since, 1000);
+		Assertions.assertThat(changes.getItems())
+				.extracting(UserChangeDTO::getType)
+				.containsExactly(UserChangedEvent.Type.CREATED, UserChangedEvent.Type.DELETED);
+		Assertions.assertThat(changes.getItems().get(0).getUser()).contains("\"email\":\"changes@mail.com\"");
+		Assertions.assertThat(changes.getLastOffset()).isEqualTo(since + 2);
+	}
+
 }
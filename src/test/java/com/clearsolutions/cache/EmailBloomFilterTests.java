@@ -0,0 +1,37 @@
+package com.clearsolutions.cache;
+
+import com.clearsolutions.dto.BloomFilterStatsDTO;
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EmailBloomFilterTests {
+
+    @Test
+    public void EmailBloomFilter_MightContain_HasNoFalseNegatives() {
+
+        EmailBloomFilter emailFilter = new EmailBloomFilter(10_000, 0.01);
+        IntStream.range(0, 10_000).forEach(i -> emailFilter.put("user" + i + "@mail.com"));
+
+        assertThat(IntStream.range(0, 10_000).allMatch(i -> emailFilter.mightContain("USER" + i + "@mail.com"))).isTrue();
+    }
+
+    @Test
+    public void EmailBloomFilter_MightContain_StaysNearConfiguredFalsePositiveRate() {
+
+        EmailBloomFilter emailFilter = new EmailBloomFilter(10_000, 0.01);
+        IntStream.range(0, 10_000).forEach(i -> emailFilter.put("user" + i + "@mail.com"));
+
+        long falsePositives = IntStream.range(0, 100_000)
+                .filter(i -> emailFilter.mightContain("other" + i + "@mail.com"))
+                .count();
+        BloomFilterStatsDTO stats = emailFilter.getStats();
+
+        assertThat(falsePositives).isLessThan(2_000);
+        assertThat(stats.getExpectedFalsePositiveRate()).isBetween(0.005, 0.02);
+        assertThat(stats.getApproximateElementCount()).isBetween(9_500L, 10_500L);
+        assertThat(stats.getMemoryBytes()).isEqualTo(stats.getBitSize() / 8);
+    }
+}
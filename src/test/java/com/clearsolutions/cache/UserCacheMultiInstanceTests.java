@@ -0,0 +1,107 @@
+package com.clearsolutions.cache;
+
+import com.clearsolutions.ClearSolutionsApplication;
+import com.clearsolutions.dto.UserDTO;
+import com.clearsolutions.services.UserService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Two application instances in one JVM: one database, one shared store in a common parent context,
+ * a near cache each.
+ */
+public class UserCacheMultiInstanceTests {
+
+    private static final Duration MAX_STALENESS = Duration.ofSeconds(2);
+
+    private static ConfigurableApplicationContext shared;
+    private static ConfigurableApplicationContext first;
+    private static ConfigurableApplicationContext second;
+
+    // not a @Configuration, so the instances' component scan does not declare a store of their own
+    static class SharedStoreConfig {
+
+        @Bean
+        public SharedUserStore sharedUserStore() {
+            return new InMemorySharedUserStore(1000, Duration.ofMinutes(1), new ObjectMapper().findAndRegisterModules());
+        }
+    }
+
+    @BeforeAll
+    public static void start(@TempDir Path journals) {
+
+        shared = new SpringApplicationBuilder(SharedStoreConfig.class)
+                .run("--spring.main.web-application-type=none");
+        first = instance(journals.resolve("first.journal"));
+        second = instance(journals.resolve("second.journal"));
+    }
+
+    @AfterAll
+    public static void stop() {
+
+        second.close();
+        first.close();
+        shared.close();
+    }
+
+    @Test
+    public void UserCache_ChangeOnOneInstance_ReachesTheOtherWithinMaxStaleness() throws InterruptedException {
+
+        UserService firstService = first.getBean(UserService.class);
+        UserService secondService = second.getBean(UserService.class);
+        UserDTO created = firstService.createUser(UserDTO.builder()
+                .email("multi@mail.com")
+                .firstName("Before")
+                .lastName("Test")
+                .birthDate(LocalDateTime.of(2000, 1, 1, 0, 0))
+                .build());
+        assertThat(secondService.findUserById(created.getId())).get()
+                .extracting(UserDTO::getFirstName).isEqualTo("Before");
+
+        created.setFirstName("After");
+        firstService.updateUserById(created.getId(), created);
+
+        assertWithinMaxStaleness(() -> secondService.findUserById(created.getId())
+                .map(UserDTO::getFirstName).orElse(null), "After");
+
+        firstService.deleteUserById(created.getId());
+
+        assertWithinMaxStaleness(() -> secondService.findUserById(created.getId()).isPresent(), false);
+        assertThat(first.getBean(SharedUserStore.class)).isSameAs(second.getBean(SharedUserStore.class));
+    }
+
+    private static ConfigurableApplicationContext instance(Path journal) {
+
+        return new SpringApplicationBuilder(ClearSolutionsApplication.class)
+                .parent(shared)
+                .run("--server.port=0",
+                        "--spring.datasource.url=jdbc:h2:mem:multi-instance;DB_CLOSE_DELAY=-1",
+                        "--spring.jpa.show-sql=false",
+                        "--user.write-behind.journal=" + journal,
+                        "--user.cache.max-staleness=" + MAX_STALENESS,
+                        "--user.cache.invalidation.poll-interval=PT0.1S");
+    }
+
+    private static <T> void assertWithinMaxStaleness(Supplier<T> actual, T expected) throws InterruptedException {
+
+        long deadline = System.nanoTime() + MAX_STALENESS.toNanos();
+        while (!expected.equals(actual.get()) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertThat(actual.get()).isEqualTo(expected);
+    }
+}
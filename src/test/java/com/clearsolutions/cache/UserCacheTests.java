@@ -0,0 +1,141 @@
+package com.clearsolutions.cache;
+
+import com.clearsolutions.dto.UserDTO;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class UserCacheTests {
+
+    private final SharedUserStore sharedStore =
+            new InMemorySharedUserStore(100, Duration.ofMinutes(1), new ObjectMapper().findAndRegisterModules());
+
+    @Test
+    public void UserCache_Get_ReadsSharedStoreBeforeLoader() {
+
+        UserCache first = cache(Duration.ofSeconds(5));
+        UserCache second = cache(Duration.ofSeconds(5));
+        first.get(1, id -> user(id, 0, "first"));
+
+        UserDTO user = second.get(1, id -> {
+            throw new AssertionError("loaded although shared");
+        });
+
+        assertThat(user.getFirstName()).isEqualTo("first");
+        assertThat(user.getBirthDate()).isEqualTo(LocalDateTime.of(2000, 1, 1, 0, 0));
+    }
+
+    @Test
+    public void SharedUserStore_Put_KeepsNewerVersion() {
+
+        sharedStore.put(user(1, 2, "newer"));
+        sharedStore.put(user(1, 1, "older"));
+
+        assertThat(sharedStore.get(1).getFirstName()).isEqualTo("newer");
+    }
+
+    @Test
+    public void SharedUserStore_EvictWithVersion_KeepsThatVersionAndTombstonesOlderOnes() {
+
+        sharedStore.put(user(1, 2, "current"));
+        sharedStore.evict(1, 2);
+        assertThat(sharedStore.get(1).getFirstName()).isEqualTo("current");
+
+        sharedStore.evict(1, 3);
+        sharedStore.put(user(1, 2, "raced"));
+        assertThat(sharedStore.get(1)).isNull();
+
+        sharedStore.put(user(1, 3, "new"));
+        assertThat(sharedStore.get(1).getFirstName()).isEqualTo("new");
+    }
+
+    @Test
+    public void UserCache_Remove_KeepsLoadThatRacedWithDeleteOutOfBothTiers() {
+
+        UserCache cache = cache(Duration.ofSeconds(5));
+
+        // the row is read, then the delete commits before the load completes
+        cache.get(1, id -> {
+            UserDTO user = user(id, 0, "old");
+            cache.remove(id);
+            return user;
+        });
+
+        assertThat(sharedStore.get(1)).isNull();
+        assertThat(cache.get(1, id -> null)).isNull();
+    }
+
+    @Test
+    public void UserCache_Evict_RemovesFromBothTiers() {
+
+        UserCache cache = cache(Duration.ofSeconds(5));
+        cache.get(1, id -> user(id, 0, "old"));
+
+        cache.evict(1);
+
+        assertThat(sharedStore.get(1)).isNull();
+        assertThat(cache.get(1, id -> user(id, 1, "new")).getFirstName()).isEqualTo("new");
+    }
+
+    @Test
+    public void UserCache_Get_DropsNearCacheOnceSyncIsOlderThanMaxStaleness() {
+
+        UserCache cache = cache(Duration.ofSeconds(5));
+        cache.synced(System.nanoTime());
+        cache.get(1, id -> user(id, 0, "old"));
+        // changed by another instance whose eviction has not reached this one
+        sharedStore.put(user(1, 1, "new"));
+
+        assertThat(cache.get(1, id -> null).getFirstName()).isEqualTo("old");
+
+        cache.synced(System.nanoTime() - Duration.ofSeconds(10).toNanos());
+
+        assertThat(cache.get(1, id -> null).getFirstName()).isEqualTo("new");
+    }
+
+    @Test
+    public void UserCache_GetAll_LoadsOnlyIdsCachedNowhereAndSkipsMissingOnes() {
+
+        UserCache cache = cache(Duration.ofSeconds(5));
+        cache.get(1, id -> user(id, 0, "near"));
+        sharedStore.put(user(2, 0, "shared"));
+        List<Set<Integer>> loads = new ArrayList<>();
+
+        Map<Integer, UserDTO> users = cache.getAll(List.of(1, 2, 3, 4), ids -> {
+            loads.add(Set.copyOf(ids));
+            return Map.of(3, user(3, 0, "loaded"));
+        });
+
+        assertThat(loads).containsExactly(Set.of(3, 4));
+        assertThat(users).containsOnlyKeys(1, 2, 3);
+        assertThat(users.get(2).getFirstName()).isEqualTo("shared");
+        assertThat(sharedStore.get(3).getFirstName()).isEqualTo("loaded");
+        // a missing id is not cached as missing
+        assertThat(cache.get(4, id -> user(id, 0, "created")).getFirstName()).isEqualTo("created");
+    }
+
+    private UserCache cache(Duration maxStaleness) {
+
+        return new UserCache(100, Duration.ofMinutes(1), maxStaleness, sharedStore);
+    }
+
+    private static UserDTO user(int id, long version, String firstName) {
+
+        return UserDTO.builder()
+                .id(id)
+                .version(version)
+                .email("user" + id + "@mail.com")
+                .firstName(firstName)
+                .lastName("Test")
+                .birthDate(LocalDateTime.of(2000, 1, 1, 0, 0))
+                .build();
+    }
+}
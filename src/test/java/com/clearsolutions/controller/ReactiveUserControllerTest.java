@@ -0,0 +1,236 @@
+package com.clearsolutions.controller;
+
+import com.clearsolutions.dto.UserDTO;
+import com.clearsolutions.dto.UserPatchDTO;
+import com.clearsolutions.models.UserEntity;
+import org.hamcrest.CoreMatchers;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.test.StepVerifier;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "spring.main.web-application-type=reactive",
+        "spring.datasource.url=jdbc:h2:mem:reactive;DB_CLOSE_DELAY=-1",
+        "spring.r2dbc.url=r2dbc:h2:mem:///reactive?options=DB_CLOSE_DELAY=-1"
+})
+@AutoConfigureWebTestClient
+public class ReactiveUserControllerTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    private UserDTO userDTO;
+
+    @BeforeEach
+    public void init() {
+        databaseClient.sql("DELETE FROM user_table").then().block();
+        userDTO = UserDTO.builder().email("test@mail.com")
+                .firstName("Test")
+                .lastName("Test")
+                .birthDate(LocalDateTime.of(2000, 1, 1, 0, 0, 0))
+                .address("Test st")
+                .phoneNumber("380999999999")
+                .build();
+    }
+
+    @Test
+    public void ReactiveUserController_CreateAndGet_ReturnsUserDTO() {
+
+        webTestClient.post().uri("/api/users").bodyValue(userDTO)
+                .exchange()
+                .expectStatus().isCreated();
+
+        int id = firstUserId();
+
+        webTestClient.get().uri("/api/users/{id}", id)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.data.email").isEqualTo(userDTO.getEmail())
+                .jsonPath("$.data.version").isEqualTo(0);
+
+        webTestClient.get().uri("/api/users/{id}", id + 1000)
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    public void ReactiveUserController_GetAllAndStream_ReturnsUsers() {
+
+        webTestClient.post().uri("/api/users").bodyValue(userDTO).exchange().expectStatus().isCreated();
+        userDTO.setEmail("test2@mail.com");
+        webTestClient.post().uri("/api/users").bodyValue(userDTO).exchange().expectStatus().isCreated();
+
+        webTestClient.get().uri("/api/users?limit=1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.data.items.length()").isEqualTo(1)
+                .jsonPath("$.data.nextCursor").value(CoreMatchers.notNullValue());
+
+        StepVerifier.create(webTestClient.get().uri("/api/users")
+                        .accept(MediaType.APPLICATION_NDJSON)
+                        .exchange()
+                        .expectStatus().isOk()
+                        .returnResult(UserDTO.class)
+                        .getResponseBody())
+                .expectNextMatches(user -> user.getEmail().equals("test@mail.com"))
+                .expectNextMatches(user -> user.getEmail().equals("test2@mail.com"))
+                .verifyComplete();
+
+        webTestClient.get().uri("/api/usersByBirthDateRange/count?fromDate=1999-01-01T00:00:00&toDate=2001-01-01T00:00:00&groupBy=year")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.data.total").isEqualTo(2)
+                .jsonPath("$.data.buckets[0].year").isEqualTo(2000);
+    }
+
+    @Test
+    public void ReactiveUserController_PatchAndDelete_UseVersion() {
+
+        webTestClient.post().uri("/api/users").bodyValue(userDTO).exchange().expectStatus().isCreated();
+        int id = firstUserId();
+        UserPatchDTO patch = UserPatchDTO.builder().firstName("Patched").build();
+
+        webTestClient.patch().uri("/api/users/{id}", id).header("If-Match", "\"0\"").bodyValue(patch)
+                .exchange()
+                .expectStatus().isNoContent();
+        webTestClient.patch().uri("/api/users/{id}", id).header("If-Match", "\"0\"").bodyValue(patch)
+                .exchange()
+                .expectStatus().isEqualTo(409);
+
+        webTestClient.delete().uri("/api/users/{id}", id)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo("Deleted user with id = " + id);
+        webTestClient.delete().uri("/api/users/{id}", id)
+                .exchange()
+                .expectStatus().isNotFound();
+        webTestClient.get().uri("/api/users/{id}", id)
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    public void ReactiveUserController_Update_ValidatesBodyAndRejectsTakenEmail() {
+
+        webTestClient.post().uri("/api/users").bodyValue(userDTO).exchange().expectStatus().isCreated();
+        int id = firstUserId();
+        userDTO.setEmail("taken@mail.com");
+        webTestClient.post().uri("/api/users").bodyValue(userDTO).exchange().expectStatus().isCreated();
+
+        userDTO.setEmail(null);
+        webTestClient.put().uri("/api/users/{id}", id).bodyValue(userDTO)
+                .exchange()
+                .expectStatus().isBadRequest();
+
+        userDTO.setEmail("TAKEN@mail.com");
+        webTestClient.put().uri("/api/users/{id}", id).bodyValue(userDTO)
+                .exchange()
+                .expectStatus().isEqualTo(409)
+                .expectBody()
+                .jsonPath("$.detail").isEqualTo("User with email = taken@mail.com already exists!");
+
+        userDTO.setEmail("updated@mail.com");
+        userDTO.setFirstName("Updated");
+        webTestClient.put().uri("/api/users/{id}", id).bodyValue(userDTO)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.data.email").isEqualTo("updated@mail.com")
+                .jsonPath("$.data.firstName").isEqualTo("Updated")
+                .jsonPath("$.data.version").isEqualTo(1);
+    }
+
+    @Test
+    public void ReactiveUserController_Writes_RecordChangesInOffsetOrder() {
+
+        webTestClient.post().uri("/api/users").bodyValue(userDTO).exchange().expectStatus().isCreated();
+        int id = firstUserId();
+        userDTO.setLastName("Updated");
+        webTestClient.put().uri("/api/users/{id}", id).bodyValue(userDTO).exchange().expectStatus().isOk();
+        webTestClient.patch().uri("/api/users/{id}", id).bodyValue(UserPatchDTO.builder().firstName("Patched").build())
+                .exchange()
+                .expectStatus().isNoContent();
+        webTestClient.delete().uri("/api/users/{id}", id).exchange().expectStatus().isOk();
+
+        List<Map<String, Object>> changes = databaseClient.sql("SELECT id, type, payload FROM user_change " +
+                        "WHERE user_id = :userId ORDER BY id")
+                .bind("userId", id)
+                .fetch().all()
+                .collectList()
+                .block();
+
+        assertThat(changes).extracting(change -> change.get("TYPE"))
+                .containsExactly("CREATED", "UPDATED", "UPDATED", "DELETED");
+        assertThat((String) changes.get(1).get("PAYLOAD")).contains("\"lastName\":\"Updated\"");
+        assertThat((String) changes.get(2).get("PAYLOAD")).contains("\"firstName\":\"Patched\"", "\"version\":2");
+        assertThat(changes.get(3).get("PAYLOAD")).isNull();
+        assertThat(databaseClient.sql("SELECT last_offset FROM user_change_offset")
+                .map(row -> row.get(0, Long.class))
+                .one()
+                .block())
+                .isEqualTo(changes.get(3).get("ID"));
+    }
+
+    @Test
+    public void ReactiveUserController_Create_TakesIdsFromSequenceBlocks() {
+
+        long sequence = currentSequenceValue();
+        for (int i = 0; i < 3; i++) {
+            userDTO.setEmail("test" + i + "@mail.com");
+            webTestClient.post().uri("/api/users").bodyValue(userDTO).exchange().expectStatus().isCreated();
+        }
+
+        List<Integer> ids = databaseClient.sql("SELECT id FROM user_table ORDER BY id")
+                .map(row -> row.get(0, Integer.class))
+                .all()
+                .collectList()
+                .block();
+
+        assertThat(ids).hasSize(3).doesNotHaveDuplicates();
+        // at most one new block, not one per insert
+        assertThat(currentSequenceValue() - sequence).isLessThanOrEqualTo(UserEntity.ID_ALLOCATION_SIZE);
+    }
+
+    @Test
+    public void ReactiveUserController_Create_ValidatesBody() {
+
+        userDTO.setEmail("not-an-email");
+
+        webTestClient.post().uri("/api/users").bodyValue(userDTO)
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    private long currentSequenceValue() {
+
+        return databaseClient.sql("SELECT BASE_VALUE FROM INFORMATION_SCHEMA.SEQUENCES WHERE SEQUENCE_NAME = 'USER_SEQ'")
+                .map(row -> row.get(0, Long.class))
+                .one()
+                .block();
+    }
+
+    private int firstUserId() {
+
+        return databaseClient.sql("SELECT MIN(id) FROM user_table")
+                .map(row -> row.get(0, Integer.class))
+                .one()
+                .block();
+    }
+}
@@ -0,0 +1,62 @@
+package com.clearsolutions.controller;
+
+import com.clearsolutions.services.UserExportService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs on a real server, MockMvc never times out async requests.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "spring.mvc.async.request-timeout=500ms")
+public class UserControllerStreamingTests {
+
+    @TempDir
+    static Path journals;
+
+    @DynamicPropertySource
+    static void journal(DynamicPropertyRegistry registry) {
+        registry.add("user.write-behind.journal", () -> journals.resolve("user-write-behind.journal").toString());
+    }
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @MockBean
+    private UserExportService userExportService;
+
+    @Test
+    public void UserController_SlowExport_OutlastsTheAsyncRequestTimeout() {
+
+        when(userExportService.prepareExport(UserExportService.Format.CSV, null, null))
+                .thenReturn(outputStream -> {
+                    outputStream.write("id,email\n".getBytes(StandardCharsets.UTF_8));
+                    outputStream.flush();
+                    try {
+                        Thread.sleep(3000);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                    outputStream.write("1,user@mail.com\n".getBytes(StandardCharsets.UTF_8));
+                });
+
+        ResponseEntity<String> response = restTemplate.getForEntity("/api/users/export", String.class);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody()).isEqualTo("id,email\n1,user@mail.com\n");
+    }
+}
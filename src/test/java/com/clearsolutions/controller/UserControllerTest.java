@@ -1,10 +1,36 @@
 package com.clearsolutions.controller;
 
+import com.clearsolutions.cache.UserJsonCache;
+import com.clearsolutions.config.BinaryFormatConfig;
 import com.clearsolutions.controllers.UserController;
+import com.clearsolutions.dto.BirthDateBucketDTO;
+import com.clearsolutions.dto.BirthDateCountDTO;
+import com.clearsolutions.dto.BulkImportResultDTO;
+import com.clearsolutions.dto.PageDTO;
+import com.clearsolutions.dto.SearchResultDTO;
+import com.clearsolutions.dto.UserBatchDTO;
+import com.clearsolutions.dto.UserChangeDTO;
+import com.clearsolutions.dto.UserChangesDTO;
+import com.clearsolutions.dto.UserPatchDTO;
 import com.clearsolutions.dto.UserDTO;
+import com.clearsolutions.dto.UserWriteStatusDTO;
+import com.clearsolutions.events.UserChangedEvent;
+import com.clearsolutions.exception.DuplicateEmailException;
+import com.clearsolutions.exception.WriteQueueFullException;
+import com.clearsolutions.ratelimit.ClientRateLimiter;
+import com.clearsolutions.ratelimit.LoadShedder;
+import com.clearsolutions.ratelimit.RateLimitInterceptor;
+import com.clearsolutions.services.UserChangeService;
+import com.clearsolutions.services.UserExportService;
+import com.clearsolutions.services.UserImportService;
 import com.clearsolutions.services.UserService;
+import com.clearsolutions.services.UserWriteBehindService;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import org.hamcrest.CoreMatchers;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -14,19 +40,39 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 
-@WebMvcTest(controllers = UserController.class)
+// every test shares one client bucket, the budget test drains its own one
+@WebMvcTest(controllers = UserController.class, properties = {"user.rate-limit.capacity=100000",
+        "user.rate-limit.api-keys=greedy,other,greedy-stream,overloaded"})
+@Import({UserJsonCache.class, BinaryFormatConfig.class, ClientRateLimiter.class, LoadShedder.class})
 @AutoConfigureMockMvc(addFilters = false)
 @ExtendWith(MockitoExtension.class)
 public class UserControllerTest {
@@ -37,6 +83,18 @@ public class UserControllerTest {
     private ObjectMapper objectMapper;
     @MockBean
     private UserService userService;
+    @MockBean
+    private UserImportService userImportService;
+    @MockBean
+    private UserWriteBehindService userWriteBehindService;
+    @MockBean
+    private UserChangeService userChangeService;
+    @MockBean
+    private UserExportService userExportService;
+    @Autowired
+    private ClientRateLimiter rateLimiter;
+    @Autowired
+    private LoadShedder loadShedder;
 
     private UserDTO userDTO;
 
@@ -63,10 +121,51 @@ public class UserControllerTest {
         response.andExpect(MockMvcResultMatchers.status().isCreated());
     }
 
+    @Test
+    public void UserController_ImportUsers_ReadsNdjsonRows() throws Exception {
+
+        when(userImportService.importUsers(any())).thenAnswer(invocation -> {
+            Iterator<UserDTO> users = invocation.getArgument(0);
+            int received = 0;
+            while (users.hasNext()) {
+                users.next();
+                received++;
+            }
+            return new BulkImportResultDTO(received, received, 0, List.of());
+        });
+        String body = objectMapper.writeValueAsString(userDTO) + "\n" + objectMapper.writeValueAsString(userDTO) + "\n";
+
+        ResultActions response = mockMvc.perform(post("/api/users/bulk")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .content(body));
+
+        response.andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.data.received", CoreMatchers.is(2)))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.data.imported", CoreMatchers.is(2)));
+    }
+
+    @Test
+    public void UserController_ImportUsers_ReadsJsonArray() throws Exception {
+
+        when(userImportService.importUsers(any())).thenAnswer(invocation -> {
+            Iterator<UserDTO> users = invocation.getArgument(0);
+            List<UserDTO> received = new ArrayList<>();
+            users.forEachRemaining(received::add);
+            return new BulkImportResultDTO(received.size(), received.size(), 0, List.of());
+        });
+
+        ResultActions response = mockMvc.perform(post("/api/users/bulk")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(List.of(userDTO, userDTO, userDTO))));
+
+        response.andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.data.received", CoreMatchers.is(3)));
+    }
+
     @Test
     public void UserController_GetById_ReturnsUserDTO() throws Exception {
 
-        when(userService.getUserById(1)).thenReturn(userDTO);
+        when(userService.findUserById(1)).thenReturn(Optional.of(userDTO));
 
         ResultActions response = mockMvc.perform(get("/api/users/1")
                 .contentType(MediaType.APPLICATION_JSON)
@@ -79,24 +178,406 @@ public class UserControllerTest {
                 .andExpect(MockMvcResultMatchers.jsonPath("$.timestamp", CoreMatchers.anything()));
     }
 
+    @Test
+    public void UserController_GetUnknownId_ReturnsProblemDetail() throws Exception {
+
+        when(userService.findUserById(2)).thenReturn(Optional.empty());
+
+        mockMvc.perform(get("/api/users/2"))
+                .andExpect(MockMvcResultMatchers.status().isNotFound())
+                .andExpect(MockMvcResultMatchers.content().contentType(MediaType.APPLICATION_PROBLEM_JSON))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.status", CoreMatchers.is(404)))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.detail", CoreMatchers.is("User with id = 2 - not found!")))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.timestamp", CoreMatchers.notNullValue()));
+    }
+
+    @Test
+    public void UserController_BatchGet_ReturnsItemsInRequestOrder() throws Exception {
+
+        userDTO.setId(1);
+        when(userService.getUsersByIds(List.of(2, 1))).thenReturn(new UserBatchDTO(
+                List.of(new UserBatchDTO.Item(2, false, null), new UserBatchDTO.Item(1, true, userDTO)), 1, 1));
+
+        mockMvc.perform(post("/api/users/batch-get")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"ids\":[2,1]}"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.data.items[0].id", CoreMatchers.is(2)))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.data.items[0].found", CoreMatchers.is(false)))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.data.items[0].user", CoreMatchers.nullValue()))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.data.items[1].user.email", CoreMatchers.is(userDTO.getEmail())))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.data.notFound", CoreMatchers.is(1)));
+    }
+
+    @Test
+    public void UserController_BatchGetWithoutIds_ReturnsFieldErrors() throws Exception {
+
+        mockMvc.perform(post("/api/users/batch-get")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"ids\":[]}"))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.errors.ids", CoreMatchers.is("ids must not be empty!")));
+    }
+
+    @Test
+    public void UserController_CreateInvalidUser_ReturnsFieldErrors() throws Exception {
+
+        userDTO.setFirstName("A");
+        userDTO.setEmail("not an email");
+
+        mockMvc.perform(post("/api/users")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(userDTO)))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest())
+                .andExpect(MockMvcResultMatchers.content().contentType(MediaType.APPLICATION_PROBLEM_JSON))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.errors.firstName", CoreMatchers.is("user first name should have at least 2 characters!")))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.errors.email", CoreMatchers.is("email format is not correct!")));
+    }
+
+    @Test
+    public void UserController_GetById_ReturnsNotModifiedForMatchingETag() throws Exception {
+
+        userDTO.setId(1);
+        userDTO.setVersion(3);
+        userDTO.setUpdatedAt(LocalDateTime.of(2024, 1, 1, 12, 0));
+        when(userService.findUserById(1)).thenReturn(Optional.of(userDTO));
+
+        mockMvc.perform(get("/api/users/1"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"3\""))
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT))
+                .andExpect(MockMvcResultMatchers.header().exists(HttpHeaders.LAST_MODIFIED));
+
+        mockMvc.perform(get("/api/users/1").header(HttpHeaders.IF_NONE_MATCH, "\"3\""))
+                .andExpect(MockMvcResultMatchers.status().isNotModified())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT))
+                .andExpect(MockMvcResultMatchers.content().string(""));
+        // the JSON validator does not match the Smile or CBOR representation
+        mockMvc.perform(get("/api/users/1").accept(BinaryFormatConfig.APPLICATION_SMILE_VALUE)
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"3\""))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"3-smile\""));
+        mockMvc.perform(get("/api/users/1").accept(MediaType.APPLICATION_CBOR)
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"3-smile\""))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"3-cbor\""));
+        mockMvc.perform(get("/api/users/1").accept(MediaType.APPLICATION_CBOR)
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"3-cbor\""))
+                .andExpect(MockMvcResultMatchers.status().isNotModified());
+    }
+
+    @Test
+    public void UserController_GetAll_ReturnsNotModifiedForMatchingETag() throws Exception {
+
+        when(userService.getAllUsers(null, 100)).thenReturn(new PageDTO<>(List.of(userDTO), "next"));
+
+        String eTag = mockMvc.perform(get("/api/users"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get("/api/users").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(MockMvcResultMatchers.status().isNotModified());
+
+        userDTO.setVersion(userDTO.getVersion() + 1);
+
+        mockMvc.perform(get("/api/users").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+    }
+
     @Test
     public void UserController_GetAll_ReturnsListOfUserDTOs() throws Exception {
 
-        when(userService.getAllUsers()).thenReturn(List.of(userDTO));
+        when(userService.getAllUsers(null, 100)).thenReturn(new PageDTO<>(List.of(userDTO), "next"));
 
         ResultActions response = mockMvc.perform(get("/api/users"));
 
-        response.andExpect(MockMvcResultMatchers.status().isOk());
+        response.andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.data.items[0].email", CoreMatchers.is(userDTO.getEmail())))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.data.nextCursor", CoreMatchers.is("next")));
+    }
+
+    @Test
+    public void UserController_GetByIdAsSmile_ReturnsBinaryResponseWithETag() throws Exception {
+
+        userDTO.setId(1);
+        userDTO.setVersion(3);
+        when(userService.findUserById(1)).thenReturn(Optional.of(userDTO));
+
+        byte[] body = mockMvc.perform(get("/api/users/1").accept(BinaryFormatConfig.APPLICATION_SMILE_VALUE))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentType(BinaryFormatConfig.APPLICATION_SMILE_VALUE))
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, "\"3-smile\""))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        JsonNode response = new ObjectMapper(new SmileFactory()).readTree(body);
+        Assertions.assertEquals(userDTO.getEmail(), response.at("/data/email").asText());
+    }
+
+    @Test
+    public void UserController_GetAllAsCbor_ReturnsBinaryResponse() throws Exception {
+
+        when(userService.getAllUsers(null, 100)).thenReturn(new PageDTO<>(List.of(userDTO), "next"));
+
+        byte[] body = mockMvc.perform(get("/api/users").accept(MediaType.APPLICATION_CBOR))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentType(MediaType.APPLICATION_CBOR))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        JsonNode response = new ObjectMapper(new CBORFactory()).readTree(body);
+        Assertions.assertEquals(userDTO.getEmail(), response.at("/data/items/0/email").asText());
+        Assertions.assertEquals("next", response.at("/data/nextCursor").asText());
+    }
+
+    @Test
+    public void UserController_GetAllBeyondClientBudget_ReturnsTooManyRequestsWithRetryAfter() throws Exception {
+
+        when(userService.getAllUsers(null, 100)).thenReturn(new PageDTO<>(List.of(userDTO), null));
+        rateLimiter.tryAcquire("key:greedy", 100000);
+
+        mockMvc.perform(get("/api/users").header(RateLimitInterceptor.API_KEY_HEADER, "greedy"))
+                .andExpect(MockMvcResultMatchers.status().isTooManyRequests())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.RETRY_AFTER, "1"));
+        mockMvc.perform(get("/api/users").header(RateLimitInterceptor.API_KEY_HEADER, "other"))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+    }
+
+    @Test
+    public void UserController_GetAllWithUnknownKeys_ChargesTheRemoteAddress() throws Exception {
+
+        when(userService.getAllUsers(null, 100)).thenReturn(new PageDTO<>(List.of(userDTO), null));
+        rateLimiter.tryAcquire("ip:10.0.0.9", 100000);
+
+        mockMvc.perform(get("/api/users").header(RateLimitInterceptor.API_KEY_HEADER, "random-1")
+                        .with(request -> {
+                            request.setRemoteAddr("10.0.0.9");
+                            return request;
+                        }))
+                .andExpect(MockMvcResultMatchers.status().isTooManyRequests());
+        mockMvc.perform(get("/api/users").header(RateLimitInterceptor.API_KEY_HEADER, "other")
+                        .with(request -> {
+                            request.setRemoteAddr("10.0.0.9");
+                            return request;
+                        }))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+    }
+
+    @Test
+    public void UserController_StreamAllBeyondClientBudget_ReturnsJsonError() throws Exception {
+
+        rateLimiter.tryAcquire("key:greedy-stream", 100000);
+
+        mockMvc.perform(get("/api/users").accept(MediaType.APPLICATION_NDJSON)
+                        .header(RateLimitInterceptor.API_KEY_HEADER, "greedy-stream"))
+                .andExpect(MockMvcResultMatchers.status().isTooManyRequests())
+                .andExpect(MockMvcResultMatchers.content().contentType(MediaType.APPLICATION_PROBLEM_JSON))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.status", CoreMatchers.is(429)));
+    }
+
+    @Test
+    public void UserController_GetByIdWhenOverloaded_ReturnsServiceUnavailable() throws Exception {
+
+        int maxInFlight = loadShedder.maxInFlight;
+        loadShedder.maxInFlight = 0;
+        try {
+            mockMvc.perform(get("/api/users/1").header(RateLimitInterceptor.API_KEY_HEADER, "overloaded"))
+                    .andExpect(MockMvcResultMatchers.status().isServiceUnavailable())
+                    .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.RETRY_AFTER, "1"));
+        } finally {
+            loadShedder.maxInFlight = maxInFlight;
+        }
+        Assertions.assertEquals(0, loadShedder.inFlight());
+    }
+
+    @Test
+    public void UserController_GetAllWithFields_ReturnsOnlyRequestedFields() throws Exception {
+
+        when(userService.getAllUsers(null, 100, Set.of("id", "email")))
+                .thenReturn(new PageDTO<>(List.of(Map.of("id", 1, "email", userDTO.getEmail())), null));
+
+        ResultActions response = mockMvc.perform(get("/api/users").param("fields", "id,email"));
+
+        response.andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.data.items[0].email", CoreMatchers.is(userDTO.getEmail())))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.data.items[0].firstName").doesNotExist());
+    }
+
+    @Test
+    public void UserController_GetAllWithFields_ReturnsNotModifiedForSameVersions() throws Exception {
+
+        Map<Integer, Long> versions = new LinkedHashMap<>(Map.of(1, 0L));
+        when(userService.getAllUsers(null, 100, Set.of("email")))
+                .thenReturn(new PageDTO<>(List.of(Map.of("email", userDTO.getEmail())), null, versions));
+
+        String eTag = mockMvc.perform(get("/api/users").param("fields", "email"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get("/api/users").param("fields", "email").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(MockMvcResultMatchers.status().isNotModified());
+
+        versions.put(1, 1L);
+
+        mockMvc.perform(get("/api/users").param("fields", "email").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+    }
+
+    @Test
+    public void UserController_GetByEmail_ReturnsUserDTO() throws Exception {
+
+        when(userService.getUserByEmail(userDTO.getEmail())).thenReturn(userDTO);
+
+        ResultActions response = mockMvc.perform(get("/api/users/by-email").param("email", userDTO.getEmail()));
+
+        response.andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.data.email", CoreMatchers.is(userDTO.getEmail())));
+    }
+
+    @Test
+    public void UserController_Create_ReturnsConflictForDuplicateEmail() throws Exception {
+
+        when(userService.createUser(any())).thenThrow(new DuplicateEmailException("User with email = test@mail.com already exists!"));
+
+        ResultActions response = mockMvc.perform(post("/api/users")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(userDTO)));
+
+        response.andExpect(MockMvcResultMatchers.status().isConflict())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.status", CoreMatchers.is(409)));
+    }
+
+    @Test
+    public void UserController_CreateAsync_ReturnsAcceptedWithTrackingId() throws Exception {
+
+        when(userWriteBehindService.submit(any())).thenReturn(UserWriteStatusDTO.builder()
+                .trackingId("42")
+                .status(UserWriteStatusDTO.Status.QUEUED)
+                .build());
+
+        ResultActions response = mockMvc.perform(post("/api/users/async")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(userDTO)));
+
+        response.andExpect(MockMvcResultMatchers.status().isAccepted())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.LOCATION, "/api/users/async/42"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.data.status", CoreMatchers.is("QUEUED")));
+    }
+
+    @Test
+    public void UserController_CreateAsync_ReturnsTooManyRequestsWhenQueueIsFull() throws Exception {
+
+        when(userWriteBehindService.submit(any())).thenThrow(new WriteQueueFullException("Write queue is full, retry later!"));
+
+        ResultActions response = mockMvc.perform(post("/api/users/async")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(userDTO)));
+
+        response.andExpect(MockMvcResultMatchers.status().isTooManyRequests())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.RETRY_AFTER, "1"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.status", CoreMatchers.is(429)));
+    }
+
+    @Test
+    public void UserController_GetChanges_ReturnsChangesAfterOffset() throws Exception {
+
+        UserChangeDTO change = new UserChangeDTO(8, 1, UserChangedEvent.Type.CREATED, "{\"id\":1}", LocalDateTime.now());
+        when(userChangeService.awaitChanges(7, 100, Duration.ofSeconds(10)))
+                .thenReturn(CompletableFuture.completedFuture(new UserChangesDTO(List.of(change), 8)));
+
+        MvcResult result = mockMvc.perform(get("/api/users/changes").param("since", "7").param("wait", "10"))
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.data.items[0].type", CoreMatchers.is("CREATED")))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.data.items[0].user.id", CoreMatchers.is(1)))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.data.lastOffset", CoreMatchers.is(8)));
+    }
+
+    @Test
+    public void UserController_Export_StreamsGzippedCsv() throws Exception {
+
+        when(userExportService.prepareExport(UserExportService.Format.CSV, null, null))
+                .thenReturn(outputStream -> outputStream.write("id\r\n1\r\n".getBytes(StandardCharsets.UTF_8)));
+
+        MvcResult result = mockMvc.perform(get("/api/users/export").header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+
+        byte[] body = mockMvc.perform(asyncDispatch(result))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentType("text/csv"))
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"users.csv\""))
+                .andReturn().getResponse().getContentAsByteArray();
+        try (GZIPInputStream csv = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            Assertions.assertEquals("id\r\n1\r\n", new String(csv.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void UserController_Export_RejectsUnknownFormat() throws Exception {
+
+        mockMvc.perform(get("/api/users/export").param("format", "parquet"))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+    }
+
+    @Test
+    public void UserController_Search_ReturnsRankedUsers() throws Exception {
+
+        when(userService.searchUsers("kova", 0, 20)).thenReturn(new SearchResultDTO<>(List.of(userDTO), 0, 20, 1));
+
+        ResultActions response = mockMvc.perform(get("/api/users/search").param("q", "kova"));
+
+        response.andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.data.items[0].email", CoreMatchers.is(userDTO.getEmail())))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.data.total", CoreMatchers.is(1)));
+    }
+
+    @Test
+    public void UserController_StreamAll_ReturnsNdjson() throws Exception {
+
+        doAnswer(invocation -> {
+            Consumer<UserDTO> consumer = invocation.getArgument(0);
+            consumer.accept(userDTO);
+            consumer.accept(userDTO);
+            return null;
+        }).when(userService).streamAllUsers(any());
+
+        MvcResult result = mockMvc.perform(get("/api/users").accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(MockMvcResultMatchers.content().string(CoreMatchers.containsString("\n{\"id\"")));
     }
 
     @Test
     public void UserController_FindByBirthDateBetween_ReturnsListOfUsersIfExist() throws Exception {
 
-        when(userService.getUsersByBirthDateRange(LocalDateTime.now(), LocalDateTime.now())).thenReturn(List.of(userDTO));
+        when(userService.getUsersByBirthDateRange(any(), any(), any(), Mockito.anyInt()))
+                .thenReturn(new PageDTO<>(List.of(userDTO), null));
 
         ResultActions response = mockMvc.perform(get("/api/usersByBirthDateRange?fromDate=2023-09-20T12:58:01&toDate=2023-09-25T12:58:01"));
 
-        response.andExpect(MockMvcResultMatchers.status().isOk());
+        response.andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.data.items[0].email", CoreMatchers.is(userDTO.getEmail())));
+    }
+
+    @Test
+    public void UserController_CountByBirthDateBetween_ReturnsCount() throws Exception {
+
+        when(userService.countUsersByBirthDateRange(any(), any(), Mockito.eq("month")))
+                .thenReturn(new BirthDateCountDTO(4, List.of(new BirthDateBucketDTO(2023, 9, 4L))));
+
+        ResultActions response = mockMvc.perform(get("/api/usersByBirthDateRange/count?fromDate=2023-09-20T12:58:01&toDate=2023-09-25T12:58:01&groupBy=month"));
+
+        response.andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.data.total", CoreMatchers.is(4)))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.data.buckets[0].month", CoreMatchers.is(9)));
     }
 
     @Test
@@ -115,6 +596,40 @@ public class UserControllerTest {
                 .andExpect(MockMvcResultMatchers.jsonPath("$.timestamp", CoreMatchers.anything()));
     }
 
+    @Test
+    public void UserController_PatchById_ReturnsNoContent() throws Exception {
+
+        UserPatchDTO patch = UserPatchDTO.builder().firstName("Patched").build();
+
+        ResultActions response = mockMvc.perform(patch("/api/users/1")
+                .header("If-Match", "\"4\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(patch)));
+
+        response.andExpect(MockMvcResultMatchers.status().isNoContent());
+        Mockito.verify(userService).patchUserById(1, 4L, patch);
+    }
+
+    @Test
+    public void UserController_PatchById_AcceptsBinaryETag() throws Exception {
+
+        UserPatchDTO patch = UserPatchDTO.builder().firstName("Patched").build();
+
+        mockMvc.perform(patch("/api/users/1")
+                        .header("If-Match", "\"4-smile\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(patch)))
+                .andExpect(MockMvcResultMatchers.status().isNoContent());
+        mockMvc.perform(patch("/api/users/1")
+                        .header("If-Match", "\"5-cbor\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(patch)))
+                .andExpect(MockMvcResultMatchers.status().isNoContent());
+
+        Mockito.verify(userService).patchUserById(1, 4L, patch);
+        Mockito.verify(userService).patchUserById(1, 5L, patch);
+    }
+
     @Test
     public void UserController_DeleteById_ReturnsString() throws Exception {
 
@@ -126,4 +641,4 @@ public class UserControllerTest {
         response.andExpect(MockMvcResultMatchers.status().isOk())
                 .andExpect(MockMvcResultMatchers.jsonPath("$", CoreMatchers.is("Deleted user with id = 1")));
     }
-}
\ No newline at end of file
+}
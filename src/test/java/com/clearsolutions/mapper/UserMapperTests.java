@@ -0,0 +1,89 @@
+package com.clearsolutions.mapper;
+
+import com.clearsolutions.dto.UserDTO;
+import com.clearsolutions.models.UserEntity;
+import com.clearsolutions.models.UserRow;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public class UserMapperTests {
+
+    private UserEntity user;
+
+    @BeforeEach
+    public void init() {
+        user = UserEntity.builder()
+                .id(1)
+                .email("test@mail.com")
+                .firstName("Test")
+                .lastName("Test")
+                .birthDate(LocalDateTime.of(2000, 1, 1, 0, 0, 0))
+                .address("Test st")
+                .phoneNumber("380999999999")
+                .version(3)
+                .build();
+    }
+
+    @Test
+    public void UserMapper_MapToEntity_NormalizesEmailAndSkipsVersion() {
+
+        UserDTO userDTO = UserMapper.mapToDto(user);
+        userDTO.setEmail(" Test@Mail.COM ");
+
+        UserEntity mapped = UserMapper.mapToEntity(userDTO);
+
+        Assertions.assertEquals("test@mail.com", mapped.getEmail());
+        Assertions.assertEquals(1, mapped.getId());
+        Assertions.assertEquals(0, mapped.getVersion());
+    }
+
+    @Test
+    public void UserMapper_UpdateEntity_KeepsRequiredFieldsAndClearsOptionalOnes() {
+
+        UserDTO userDTO = UserDTO.builder().id(7).firstName("Changed").version(9).build();
+
+        UserMapper.updateEntity(userDTO, user);
+
+        Assertions.assertEquals(1, user.getId());
+        Assertions.assertEquals(3, user.getVersion());
+        Assertions.assertEquals("Changed", user.getFirstName());
+        Assertions.assertEquals("test@mail.com", user.getEmail());
+        Assertions.assertEquals(LocalDateTime.of(2000, 1, 1, 0, 0, 0), user.getBirthDate());
+        Assertions.assertNull(user.getAddress());
+        Assertions.assertNull(user.getPhoneNumber());
+    }
+
+    @Test
+    public void UserMapper_MapRowWithoutVersion_ReturnsVersionZero() {
+
+        UserDTO mapped = UserMapper.mapToDto(UserRow.builder().id(2).email("row@mail.com").build());
+
+        Assertions.assertEquals(2, mapped.getId());
+        Assertions.assertEquals(0, mapped.getVersion());
+    }
+
+    @Test
+    public void UserMapper_MapAll_KeepsOrder() {
+
+        UserEntity user2 = UserEntity.builder().id(2).email("test2@mail.com").build();
+
+        List<UserDTO> mapped = UserMapper.mapAll(List.of(user, user2));
+
+        Assertions.assertEquals(List.of(UserMapper.mapToDto(user), UserMapper.mapToDto(user2)), mapped);
+    }
+
+    @Test
+    public void UserMapper_MapAllRows_KeepsOrder() {
+
+        UserRow row1 = UserRow.builder().id(1).email("test1@mail.com").build();
+        UserRow row2 = UserRow.builder().id(2).email("test2@mail.com").build();
+
+        List<UserDTO> mapped = UserMapper.mapAllRows(List.of(row1, row2));
+
+        Assertions.assertEquals(List.of(UserMapper.mapToDto(row1), UserMapper.mapToDto(row2)), mapped);
+    }
+}
@@ -0,0 +1,57 @@
+package com.clearsolutions.purge;
+
+import com.clearsolutions.repositories.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class DeletedUserPurgerTests {
+
+    @Mock
+    private UserRepository userRepository;
+    @Mock
+    private JobLease jobLease;
+
+    @Test
+    public void DeletedUserPurger_Purge_DeletesInBatchesUntilBacklogIsGone() {
+
+        DeletedUserPurger purger = purger();
+        when(jobLease.tryAcquire(DeletedUserPurger.JOB, Duration.ofMinutes(2))).thenReturn(true);
+        when(userRepository.purgeDeletedBefore(Mockito.any(LocalDateTime.class), Mockito.eq(2))).thenReturn(2, 2, 1);
+
+        assertThat(purger.purge()).isEqualTo(5);
+        verify(userRepository, times(3)).purgeDeletedBefore(Mockito.any(LocalDateTime.class), Mockito.eq(2));
+    }
+
+    @Test
+    public void DeletedUserPurger_Purge_SkipsRunWhileAnotherInstanceHoldsTheLease() {
+
+        DeletedUserPurger purger = purger();
+        when(jobLease.tryAcquire(DeletedUserPurger.JOB, Duration.ofMinutes(2))).thenReturn(false);
+
+        assertThat(purger.purge()).isZero();
+        verifyNoInteractions(userRepository);
+    }
+
+    private DeletedUserPurger purger() {
+
+        DeletedUserPurger purger = new DeletedUserPurger(userRepository, jobLease);
+        purger.batchSize = 2;
+        purger.retention = Duration.ofMinutes(10);
+        purger.interval = Duration.ofMinutes(1);
+
+        return purger;
+    }
+}
@@ -0,0 +1,54 @@
+package com.clearsolutions.purge;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JobLeaseTests {
+
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void init() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:job-lease;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("drop all objects");
+        // data.sql also seeds the change counter, whose table Hibernate would have created
+        jdbcTemplate.execute("create table user_change_offset (id int primary key, last_offset bigint not null)");
+        new ResourceDatabasePopulator(new ClassPathResource("data.sql")).execute(dataSource);
+    }
+
+    @Test
+    public void JobLease_TryAcquire_GrantsOneInstanceUntilItStopsRenewing() {
+
+        JobLease first = new JobLease(jdbcTemplate);
+        JobLease second = new JobLease(jdbcTemplate);
+
+        assertThat(first.tryAcquire(DeletedUserPurger.JOB, Duration.ofMinutes(2))).isTrue();
+        assertThat(second.tryAcquire(DeletedUserPurger.JOB, Duration.ofMinutes(2))).isFalse();
+        // the holder renews, other jobs are leased on their own
+        assertThat(first.tryAcquire(DeletedUserPurger.JOB, Duration.ofMinutes(2))).isTrue();
+        assertThat(second.tryAcquire(UserChangePurger.JOB, Duration.ofMinutes(2))).isTrue();
+
+        jdbcTemplate.update("update job_lease set locked_until = timestamp '2000-01-01 00:00:00' where name = ?", DeletedUserPurger.JOB);
+
+        assertThat(second.tryAcquire(DeletedUserPurger.JOB, Duration.ofMinutes(2))).isTrue();
+        assertThat(first.tryAcquire(DeletedUserPurger.JOB, Duration.ofMinutes(2))).isFalse();
+    }
+
+    @Test
+    public void DataSql_RunTwice_KeepsSeededRows() {
+
+        new ResourceDatabasePopulator(new ClassPathResource("data.sql")).execute(jdbcTemplate.getDataSource());
+
+        assertThat(jdbcTemplate.queryForObject("select count(*) from job_lease", Integer.class)).isEqualTo(3);
+        assertThat(jdbcTemplate.queryForObject("select count(*) from user_change_offset", Integer.class)).isEqualTo(1);
+    }
+}
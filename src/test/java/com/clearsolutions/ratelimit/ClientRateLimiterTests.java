@@ -0,0 +1,54 @@
+package com.clearsolutions.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ClientRateLimiterTests {
+
+    private static final RateLimitProperties PROPERTIES = new RateLimitProperties(10, 10, 1000, 1, Map.of(), Set.of());
+
+    private final AtomicLong now = new AtomicLong();
+    private final ClientRateLimiter rateLimiter = new ClientRateLimiter(PROPERTIES, now::get);
+
+    @Test
+    public void ClientRateLimiter_TryAcquire_AllowsBurstThenReportsRefillTime() {
+
+        assertThat(rateLimiter.tryAcquire("a", 4)).isZero();
+        assertThat(rateLimiter.tryAcquire("a", 6)).isZero();
+
+        assertThat(rateLimiter.tryAcquire("a", 2)).isEqualTo(Duration.ofMillis(200));
+        assertThat(rateLimiter.tryAcquire("b", 10)).isZero();
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(200));
+        assertThat(rateLimiter.tryAcquire("a", 2)).isZero();
+        assertThat(rateLimiter.tryAcquire("a", 1)).isEqualTo(Duration.ofMillis(100));
+    }
+
+    @Test
+    public void ClientRateLimiter_TryAcquire_NeverGrantsMoreThanCapacityConcurrently() throws InterruptedException {
+
+        AtomicInteger granted = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 1000; i++) {
+            executor.execute(() -> {
+                if (rateLimiter.tryAcquire("a", 1).isZero()) {
+                    granted.incrementAndGet();
+                }
+            });
+        }
+        executor.shutdown();
+
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(granted).hasValue(10);
+    }
+}
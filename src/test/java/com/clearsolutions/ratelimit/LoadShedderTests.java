@@ -0,0 +1,57 @@
+package com.clearsolutions.ratelimit;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class LoadShedderTests {
+
+    private final HikariPoolMXBean pool = mock(HikariPoolMXBean.class);
+    private LoadShedder loadShedder;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void init() {
+        HikariDataSource dataSource = mock(HikariDataSource.class);
+        when(dataSource.getHikariPoolMXBean()).thenReturn(pool);
+        HikariDataSource idleDataSource = mock(HikariDataSource.class);
+        when(idleDataSource.getHikariPoolMXBean()).thenReturn(mock(HikariPoolMXBean.class));
+        ObjectProvider<HikariDataSource> provider = mock(ObjectProvider.class);
+        when(provider.stream()).thenAnswer(invocation -> Stream.of(idleDataSource, dataSource));
+
+        loadShedder = new LoadShedder(provider);
+        loadShedder.maxInFlight = 2;
+        loadShedder.maxPendingConnections = 3;
+    }
+
+    @Test
+    public void LoadShedder_TryAdmit_ShedsBeyondInFlightLimitUntilReleased() {
+
+        assertThat(loadShedder.tryAdmit(false)).isTrue();
+        assertThat(loadShedder.tryAdmit(false)).isTrue();
+        assertThat(loadShedder.tryAdmit(false)).isFalse();
+        assertThat(loadShedder.inFlight()).isEqualTo(2);
+
+        loadShedder.release();
+
+        assertThat(loadShedder.tryAdmit(false)).isTrue();
+    }
+
+    @Test
+    public void LoadShedder_TryAdmit_ShedsOnlyExpensiveRequestsWhileAnyPoolHasWaiters() {
+
+        when(pool.getThreadsAwaitingConnection()).thenReturn(3);
+
+        assertThat(loadShedder.tryAdmit(true)).isFalse();
+        assertThat(loadShedder.tryAdmit(false)).isTrue();
+        assertThat(loadShedder.inFlight()).isEqualTo(1);
+    }
+}
@@ -1,5 +1,9 @@
 package com.clearsolutions.repository;
 
+import com.clearsolutions.dto.BirthDateBucketDTO;
+import com.clearsolutions.dto.UserDTO;
+import com.clearsolutions.dto.UserPatchDTO;
+import com.clearsolutions.mapper.UserMapper;
 import com.clearsolutions.models.UserEntity;
 import com.clearsolutions.repositories.UserRepository;
 import org.junit.jupiter.api.Assertions;
@@ -9,9 +13,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.jdbc.EmbeddedDatabaseConnection;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @DataJpaTest
@@ -20,6 +28,8 @@ public class UserRepositoryTests {
 
     @Autowired
     private UserRepository userRepository;
+    @Autowired
+    private TestEntityManager entityManager;
 
     private UserEntity user;
 
@@ -100,6 +110,42 @@ public class UserRepositoryTests {
         Assertions.assertFalse(returnedUser.isPresent());
     }
 
+    @Test
+    public void UserRepository_SoftDeleteById_HidesUserUntilPurged() {
+
+        userRepository.save(user);
+        LocalDateTime deletedAt = LocalDateTime.now().minusHours(1);
+
+        Assertions.assertEquals(1, userRepository.softDeleteById(user.getId(), deletedAt));
+        Assertions.assertEquals(0, userRepository.softDeleteById(user.getId(), deletedAt));
+        entityManager.clear();
+
+        Assertions.assertFalse(userRepository.findById(user.getId()).isPresent());
+        Assertions.assertFalse(userRepository.findDtoById(user.getId()).isPresent());
+        Assertions.assertFalse(userRepository.existsByEmail(user.getEmail()));
+        Assertions.assertEquals(List.of(user.getEmail()), userRepository.streamAllEmails().toList());
+
+        Assertions.assertEquals(0, userRepository.purgeDeletedBefore(deletedAt.minusMinutes(1), 10));
+        Assertions.assertEquals(1, userRepository.purgeDeletedBefore(LocalDateTime.now(), 10));
+        Assertions.assertEquals(0, userRepository.streamAllEmails().count());
+    }
+
+    @Test
+    public void UserRepository_PurgeDeletedByEmail_FreesEmailOfDeletedUser() {
+
+        userRepository.save(user);
+        userRepository.flush();
+        userRepository.softDeleteById(user.getId(), LocalDateTime.now());
+
+        Assertions.assertEquals(1, userRepository.purgeDeletedByEmail(user.getEmail()));
+        entityManager.clear();
+        user.setId(0);
+        user.setVersion(0);
+        userRepository.saveAndFlush(user);
+
+        Assertions.assertTrue(userRepository.existsByEmail(user.getEmail()));
+    }
+
     @Test
     public void UserRepository_FindByBirthDateBetween_ReturnsListOfUsersIfExist() {
 
@@ -122,4 +168,151 @@ public class UserRepositoryTests {
         Assertions.assertEquals(1, userList.size());
         Assertions.assertTrue(userList.contains(user));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void UserRepository_FindByIdGreaterThan_ReturnsNextPage() {
+
+        UserEntity user2 = UserEntity.builder().email("test2@mail.com")
+                .firstName("Test2")
+                .lastName("Test2")
+                .birthDate(LocalDateTime.of(2002, 2, 2, 0, 0, 0))
+                .build();
+        userRepository.save(user);
+        userRepository.save(user2);
+
+        List<UserDTO> firstPage = userRepository.findByIdGreaterThanOrderByIdAsc(0, Limit.of(1));
+        List<UserDTO> secondPage = userRepository.findByIdGreaterThanOrderByIdAsc(firstPage.get(0).getId(), Limit.of(1));
+
+        Assertions.assertEquals(List.of(UserMapper.mapToDto(user)), firstPage);
+        Assertions.assertEquals(List.of(UserMapper.mapToDto(user2)), secondPage);
+    }
+
+    @Test
+    public void UserRepository_FindByBirthDateBetweenAfter_ReturnsNextPage() {
+
+        UserEntity user2 = UserEntity.builder().email("test2@mail.com")
+                .firstName("Test2")
+                .lastName("Test2")
+                .birthDate(user.getBirthDate())
+                .build();
+        UserEntity user3 = UserEntity.builder().email("test3@mail.com")
+                .firstName("Test3")
+                .lastName("Test3")
+                .birthDate(LocalDateTime.of(2000, 6, 1, 0, 0, 0))
+                .build();
+        userRepository.save(user);
+        userRepository.save(user2);
+        userRepository.save(user3);
+        LocalDateTime fromDate = LocalDateTime.of(1999, 1, 1, 0, 0, 0);
+        LocalDateTime toDate = LocalDateTime.of(2001, 1, 1, 0, 0, 0);
+
+        List<UserDTO> firstPage = userRepository.findByBirthDateBetweenOrderByBirthDateAscIdAsc(fromDate, toDate, Limit.of(1));
+        List<UserDTO> secondPage = userRepository.findByBirthDateBetweenAfter(
+                fromDate, toDate, user.getBirthDate(), user.getId(), Limit.of(5));
+
+        Assertions.assertEquals(List.of(UserMapper.mapToDto(user)), firstPage);
+        Assertions.assertEquals(List.of(UserMapper.mapToDto(user2), UserMapper.mapToDto(user3)), secondPage);
+    }
+
+    @Test
+    public void UserRepository_FindFieldsByBirthDateBetween_SelectsOnlyRequestedFields() {
+
+        UserEntity user2 = UserEntity.builder().email("test2@mail.com")
+                .firstName("Test2")
+                .lastName("Test2")
+                .birthDate(LocalDateTime.of(2000, 6, 1, 0, 0, 0))
+                .build();
+        userRepository.save(user);
+        userRepository.save(user2);
+        LocalDateTime fromDate = LocalDateTime.of(1999, 1, 1, 0, 0, 0);
+        LocalDateTime toDate = LocalDateTime.of(2001, 1, 1, 0, 0, 0);
+
+        List<Map<String, Object>> firstPage = userRepository.findFieldsByBirthDateBetween(
+                List.of("email", "id"), fromDate, toDate, null, 0, 1);
+        List<Map<String, Object>> secondPage = userRepository.findFieldsByBirthDateBetween(
+                List.of("email", "id"), fromDate, toDate, user.getBirthDate(), user.getId(), 5);
+
+        Assertions.assertEquals(List.of(Map.of("email", "test@mail.com", "id", user.getId())), firstPage);
+        Assertions.assertEquals(List.of(Map.of("email", "test2@mail.com", "id", user2.getId())), secondPage);
+    }
+
+    @Test
+    public void UserRepository_FindByEmail_ReturnsUserDto() {
+
+        userRepository.save(user);
+
+        Assertions.assertEquals(Optional.of(UserMapper.mapToDto(user)), userRepository.findByEmail("test@mail.com"));
+        Assertions.assertTrue(userRepository.existsByEmail("test@mail.com"));
+        Assertions.assertFalse(userRepository.existsByEmail("test2@mail.com"));
+    }
+
+    @Test
+    public void UserRepository_Save_RejectsDuplicateEmail() {
+
+        userRepository.saveAndFlush(user);
+        UserEntity duplicate = UserEntity.builder().email(user.getEmail())
+                .firstName("Test2")
+                .lastName("Test2")
+                .birthDate(user.getBirthDate())
+                .build();
+
+        Assertions.assertThrows(DataIntegrityViolationException.class, () -> userRepository.saveAndFlush(duplicate));
+    }
+
+    @Test
+    public void UserRepository_FindDtoById_ReturnsUserDto() {
+
+        userRepository.save(user);
+
+        Assertions.assertEquals(Optional.of(UserMapper.mapToDto(user)), userRepository.findDtoById(user.getId()));
+        Assertions.assertEquals(Optional.empty(), userRepository.findDtoById(user.getId() + 1));
+    }
+
+    @Test
+    public void UserRepository_CountByBirthDateBetweenGroupByMonth_ReturnsBuckets() {
+
+        UserEntity user2 = UserEntity.builder().email("test2@mail.com")
+                .firstName("Test2")
+                .lastName("Test2")
+                .birthDate(LocalDateTime.of(2000, 1, 15, 0, 0, 0))
+                .build();
+        UserEntity user3 = UserEntity.builder().email("test3@mail.com")
+                .firstName("Test3")
+                .lastName("Test3")
+                .birthDate(LocalDateTime.of(2000, 3, 1, 0, 0, 0))
+                .build();
+        userRepository.save(user);
+        userRepository.save(user2);
+        userRepository.save(user3);
+        LocalDateTime fromDate = LocalDateTime.of(1999, 1, 1, 0, 0, 0);
+        LocalDateTime toDate = LocalDateTime.of(2001, 1, 1, 0, 0, 0);
+
+        List<BirthDateBucketDTO> buckets = userRepository.countByBirthDateBetweenGroupByMonth(fromDate, toDate);
+
+        Assertions.assertEquals(3, userRepository.countByBirthDateBetween(fromDate, toDate));
+        Assertions.assertEquals(2, buckets.size());
+        Assertions.assertEquals(new BirthDateBucketDTO(2000, 1, 2L), buckets.get(0));
+        Assertions.assertEquals(new BirthDateBucketDTO(2000, 3, 1L), buckets.get(1));
+        Assertions.assertEquals(List.of(new BirthDateBucketDTO(2000, 3L)),
+                userRepository.countByBirthDateBetweenGroupByYear(fromDate, toDate));
+    }
+
+    @Test
+    public void UserRepository_PatchById_UpdatesOnlyGivenColumnsAndBumpsVersion() {
+
+        userRepository.saveAndFlush(user);
+        entityManager.clear();
+
+        int updated = userRepository.patchById(user.getId(), 0L, UserPatchDTO.builder().firstName("Patched").build());
+        int conflicting = userRepository.patchById(user.getId(), 0L, UserPatchDTO.builder().lastName("Lost").build());
+        entityManager.clear();
+        UserEntity patchedUser = userRepository.findById(user.getId()).orElseThrow();
+
+        Assertions.assertEquals(1, updated);
+        Assertions.assertEquals(0, conflicting);
+        Assertions.assertEquals("Patched", patchedUser.getFirstName());
+        Assertions.assertEquals(user.getLastName(), patchedUser.getLastName());
+        Assertions.assertEquals(user.getEmail(), patchedUser.getEmail());
+        Assertions.assertEquals(1, patchedUser.getVersion());
+    }
+}
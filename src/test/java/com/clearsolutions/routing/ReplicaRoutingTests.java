@@ -0,0 +1,145 @@
+package com.clearsolutions.routing;
+
+import com.clearsolutions.cache.InMemorySharedUserStore;
+import com.clearsolutions.cache.UserCache;
+import com.clearsolutions.dto.UserDTO;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Two H2 databases standing in for primary and replica, each naming itself in a {@code node} table.
+ */
+public class ReplicaRoutingTests {
+
+    private JdbcTemplate primary;
+    private JdbcTemplate replica;
+    private ReadYourWrites readYourWrites;
+    private ReplicaLagMonitor lagMonitor;
+    private JdbcTemplate routed;
+    private TransactionTemplate readOnly;
+    private TransactionTemplate readWrite;
+
+    @BeforeEach
+    public void init() {
+
+        String id = UUID.randomUUID().toString();
+        DriverManagerDataSource primaryDataSource = database("primary-" + id);
+        DriverManagerDataSource replicaDataSource = database("replica-" + id);
+        primary = new JdbcTemplate(primaryDataSource);
+        replica = new JdbcTemplate(replicaDataSource);
+        prepare(primary, "primary");
+        prepare(replica, "replica");
+
+        readYourWrites = new ReadYourWrites(new ReplicaProperties(true, null, null, null,
+                Duration.ofSeconds(2), Duration.ofSeconds(1), Duration.ofMinutes(1), 100));
+        lagMonitor = new ReplicaLagMonitor(primaryDataSource, replicaDataSource, Duration.ofSeconds(2));
+        lagMonitor.check();
+
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(primaryDataSource);
+        dataSource.setReadOnlyDataSource(
+                new ReplicaRoutingDataSource(primaryDataSource, replicaDataSource, readYourWrites, lagMonitor));
+        routed = new JdbcTemplate(dataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        readWrite = new TransactionTemplate(transactionManager);
+    }
+
+    @Test
+    public void ReplicaRouting_ReadOnlyTransactions_GoToReplicaAndOthersToPrimary() {
+
+        assertThat(read(readOnly)).isEqualTo("replica");
+        assertThat(read(readWrite)).isEqualTo("primary");
+        assertThat(ReplicaRoutingDataSource.readFromPrimary(() -> read(readOnly)))
+                .isEqualTo("primary");
+    }
+
+    @Test
+    public void UserCache_Loads_ReadFromPrimary() {
+
+        UserCache userCache = new UserCache(100, Duration.ofMinutes(1), Duration.ofSeconds(5),
+                new InMemorySharedUserStore(100, Duration.ofMinutes(1), new ObjectMapper().findAndRegisterModules()));
+
+        assertThat(userCache.get(1, id -> user(id, read(readOnly))).getFirstName()).isEqualTo("primary");
+        assertThat(userCache.getAll(List.of(2), ids -> Map.of(2, user(2, read(readOnly)))).get(2).getFirstName())
+                .isEqualTo("primary");
+        assertThat(read(readOnly)).isEqualTo("replica");
+    }
+
+    @Test
+    public void ReplicaRouting_AfterClientWrite_ReadsOfThatClientOnlyStayOnPrimary() {
+
+        readYourWrites.bind("key:writer");
+        readYourWrites.wrote();
+        assertThat(read(readOnly)).isEqualTo("primary");
+
+        readYourWrites.bind("key:reader");
+        assertThat(read(readOnly)).isEqualTo("replica");
+        readYourWrites.unbind();
+    }
+
+    @Test
+    public void ReplicaLagMonitor_ReplicaBehindMoreThanMaxLag_FallsBackToPrimaryUntilCaughtUp() {
+
+        LocalDateTime missedAt = LocalDateTime.now().minusSeconds(10);
+        primary.update("insert into user_change values (1, ?)", missedAt);
+        primary.update("update user_change_offset set last_offset = 1");
+
+        assertThat(lagMonitor.check()).isGreaterThanOrEqualTo(Duration.ofSeconds(10));
+        assertThat(read(readOnly)).isEqualTo("primary");
+
+        replica.update("insert into user_change values (1, ?)", missedAt);
+        replica.update("update user_change_offset set last_offset = 1");
+
+        assertThat(lagMonitor.check()).isZero();
+        assertThat(read(readOnly)).isEqualTo("replica");
+    }
+
+    @Test
+    public void ReplicaLagMonitor_ReplicaUnreachable_FallsBackToPrimary() {
+
+        replica.execute("drop table user_change_offset");
+
+        assertThat(lagMonitor.check()).isNull();
+        assertThat(read(readOnly)).isEqualTo("primary");
+    }
+
+    // name of the database the transaction got its connection from
+    private String read(TransactionTemplate transaction) {
+
+        return transaction.execute(status -> routed.queryForObject("select name from node", String.class));
+    }
+
+    private static UserDTO user(int id, String firstName) {
+
+        return UserDTO.builder().id(id).version(0).firstName(firstName).build();
+    }
+
+    private static DriverManagerDataSource database(String name) {
+
+        return new DriverManagerDataSource("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+    }
+
+    private static void prepare(JdbcTemplate database, String name) {
+
+        database.execute("create table node (name varchar(16))");
+        database.update("insert into node values (?)", name);
+        database.execute("create table user_change (id bigint primary key, created_at timestamp)");
+        database.execute("create table user_change_offset (id int primary key, last_offset bigint)");
+        database.update("insert into user_change_offset values (1, 0)");
+    }
+}
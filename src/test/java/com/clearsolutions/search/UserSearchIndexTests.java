@@ -0,0 +1,78 @@
+package com.clearsolutions.search;
+
+import com.clearsolutions.dto.UserDTO;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class UserSearchIndexTests {
+
+    private UserSearchIndex searchIndex;
+
+    @BeforeEach
+    public void init() {
+        searchIndex = new UserSearchIndex();
+        searchIndex.index(user(1, "anna.kovalenko@mail.com", "Anna", "Kovalenko", "+380 99 111 2233"));
+        searchIndex.index(user(2, "kovalenko@mail.com", "Ivan", "Kovalenko", "380501234567"));
+        searchIndex.index(user(3, "petro@mail.com", "Petro", "Koval", null));
+    }
+
+    @Test
+    public void UserSearchIndex_Search_RanksExactThenPrefixThenSubstring() {
+
+        UserSearchIndex.Hits hits = searchIndex.search("Koval", 0, 10);
+
+        assertThat(hits.ids()).containsExactly(3, 1, 2);
+        assertThat(hits.total()).isEqualTo(3);
+    }
+
+    @Test
+    public void UserSearchIndex_Search_MatchesSubstringsAndPhoneDigits() {
+
+        assertThat(searchIndex.search("enko@mail", 0, 10).ids()).containsExactly(1, 2);
+        assertThat(searchIndex.search("99 111", 0, 10).ids()).containsExactly(1);
+        assertThat(searchIndex.search("nothing", 0, 10).ids()).isEmpty();
+    }
+
+    @Test
+    public void UserSearchIndex_Search_Paginates() {
+
+        UserSearchIndex.Hits secondPage = searchIndex.search("koval", 1, 1);
+
+        assertThat(secondPage.ids()).containsExactly(1);
+        assertThat(secondPage.total()).isEqualTo(3);
+    }
+
+    @Test
+    public void UserSearchIndex_IndexAndRemove_ReplaceIndexedValues() {
+
+        searchIndex.index(user(3, "petro@mail.com", "Petro", "Shevchenko", null));
+        searchIndex.remove(1);
+
+        assertThat(searchIndex.search("koval", 0, 10).ids()).containsExactly(2);
+        assertThat(searchIndex.search("shevch", 0, 10).ids()).containsExactly(3);
+        assertThat(searchIndex.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void UserSearchIndex_Search_ThrowsIllegalArgumentExceptionForShortQuery() {
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> searchIndex.search("ko", 0, 10));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> searchIndex.search("+3 8", 0, 10));
+    }
+
+    private static UserDTO user(int id, String email, String firstName, String lastName, String phoneNumber) {
+
+        return UserDTO.builder()
+                .id(id)
+                .email(email)
+                .firstName(firstName)
+                .lastName(lastName)
+                .phoneNumber(phoneNumber)
+                .build();
+    }
+}
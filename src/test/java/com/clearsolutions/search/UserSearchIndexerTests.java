@@ -0,0 +1,98 @@
+package com.clearsolutions.search;
+
+import com.clearsolutions.dto.UserChangeDTO;
+import com.clearsolutions.dto.UserChangesDTO;
+import com.clearsolutions.dto.UserDTO;
+import com.clearsolutions.events.UserChangedEvent;
+import com.clearsolutions.repositories.UserRepository;
+import com.clearsolutions.services.UserChangeService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class UserSearchIndexerTests {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final UserSearchIndex searchIndex = new UserSearchIndex();
+
+    @Mock
+    private UserRepository userRepository;
+    @Mock
+    private UserChangeService userChangeService;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private UserSearchIndexer indexer;
+
+    @BeforeEach
+    public void init() {
+        indexer = new UserSearchIndexer(searchIndex, userRepository, userChangeService, objectMapper, transactionManager);
+    }
+
+    @Test
+    public void UserSearchIndexer_Rebuild_ReplaysChangesThatRacedWithTheScan() throws Exception {
+
+        when(userChangeService.lastOffset()).thenReturn(7L);
+        // the scan read the row before it was renamed and deleted by changes 8 and 9
+        when(userRepository.streamAll()).thenReturn(Stream.of(user(1, "Anna"), user(2, "Ivan")));
+        when(userChangeService.getChanges(eq(7L), anyInt())).thenReturn(new UserChangesDTO(List.of(
+                change(8, UserChangedEvent.Type.UPDATED, user(1, "Olena")),
+                change(9, UserChangedEvent.Type.DELETED, null)), 9));
+
+        indexer.rebuild();
+
+        assertThat(searchIndex.search("olena", 0, 10).ids()).containsExactly(1);
+        assertThat(searchIndex.search("anna", 0, 10).ids()).isEmpty();
+        assertThat(searchIndex.search("ivan", 0, 10).ids()).isEmpty();
+    }
+
+    @Test
+    public void UserSearchIndexer_Poll_IndexesChangesOfOtherInstances() throws Exception {
+
+        when(userChangeService.lastOffset()).thenReturn(0L);
+        when(userRepository.streamAll()).thenReturn(Stream.empty());
+        when(userChangeService.getChanges(eq(0L), anyInt())).thenReturn(new UserChangesDTO(List.of(), 0));
+        indexer.rebuild();
+        when(userChangeService.getChanges(eq(0L), anyInt())).thenReturn(new UserChangesDTO(List.of(
+                change(1, UserChangedEvent.Type.CREATED, user(3, "Petro"))), 1));
+
+        assertThat(indexer.poll()).isEqualTo(1);
+        assertThat(searchIndex.search("petro", 0, 10).ids()).containsExactly(3);
+    }
+
+    @Test
+    public void UserSearchIndexer_Poll_WaitsForTheRebuild() {
+
+        assertThat(indexer.poll()).isZero();
+    }
+
+    private UserChangeDTO change(long offset, UserChangedEvent.Type type, UserDTO user) throws Exception {
+
+        int userId = user == null ? 2 : user.getId();
+
+        return new UserChangeDTO(offset, userId, type, user == null ? null : objectMapper.writeValueAsString(user), null);
+    }
+
+    private static UserDTO user(int id, String firstName) {
+
+        return UserDTO.builder()
+                .id(id)
+                .email("user" + id + "@mail.com")
+                .firstName(firstName)
+                .lastName("Test")
+                .build();
+    }
+}
@@ -0,0 +1,137 @@
+package com.clearsolutions.service;
+
+import com.clearsolutions.dto.UserChangeDTO;
+import com.clearsolutions.dto.UserChangesDTO;
+import com.clearsolutions.dto.UserDTO;
+import com.clearsolutions.events.UserChangedEvent;
+import com.clearsolutions.models.UserChangeEntity;
+import com.clearsolutions.repositories.UserChangeOffsetRepository;
+import com.clearsolutions.repositories.UserChangeRepository;
+import com.clearsolutions.repositories.UserRepository;
+import com.clearsolutions.services.impl.UserChangeServiceImpl;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class UserChangeServiceTests {
+
+    @Mock
+    private UserChangeRepository userChangeRepository;
+    @Mock
+    private UserChangeOffsetRepository userChangeOffsetRepository;
+    @Mock
+    private UserRepository userRepository;
+
+    private UserChangeServiceImpl userChangeService;
+
+    @BeforeEach
+    public void init() {
+        userChangeService = new UserChangeServiceImpl(userChangeRepository, userChangeOffsetRepository, userRepository,
+                new ObjectMapper().findAndRegisterModules(), Runnable::run);
+    }
+
+    @Test
+    public void UserChangeService_Record_StoresCurrentStateOfPartialUpdate() {
+
+        when(userChangeOffsetRepository.increment(1)).thenReturn(1);
+        when(userChangeOffsetRepository.lastOffset()).thenReturn(42L);
+        when(userRepository.findDtoById(1)).thenReturn(Optional.of(UserDTO.builder().id(1).email("test@mail.com").build()));
+
+        inTransaction(() -> userChangeService.record(new UserChangedEvent(1, UserChangedEvent.Type.UPDATED, null)));
+
+        ArgumentCaptor<List<UserChangeEntity>> changes = ArgumentCaptor.forClass(List.class);
+        verify(userChangeRepository).saveAll(changes.capture());
+        assertThat(changes.getValue()).singleElement().satisfies(change -> {
+            assertThat(change.getId()).isEqualTo(42);
+            assertThat(change.getPayload()).contains("\"email\":\"test@mail.com\"");
+        });
+    }
+
+    @Test
+    public void UserChangeService_Record_ReservesTheOffsetsOfATransactionAtOnce() {
+
+        when(userChangeOffsetRepository.increment(3)).thenReturn(1);
+        when(userChangeOffsetRepository.lastOffset()).thenReturn(10L);
+
+        inTransaction(() -> {
+            for (int userId = 1; userId <= 3; userId++) {
+                userChangeService.record(new UserChangedEvent(userId, UserChangedEvent.Type.DELETED, null));
+            }
+            // nothing is written, and no offset locked, before the commit
+            verifyNoInteractions(userChangeOffsetRepository);
+        });
+
+        ArgumentCaptor<List<UserChangeEntity>> changes = ArgumentCaptor.forClass(List.class);
+        verify(userChangeRepository).saveAll(changes.capture());
+        assertThat(changes.getValue()).extracting(UserChangeEntity::getId).containsExactly(8L, 9L, 10L);
+        verify(userChangeOffsetRepository, times(1)).increment(anyLong());
+    }
+
+    @Test
+    public void UserChangeService_AwaitChanges_CompletesOnceAChangeCommits() throws Exception {
+
+        UserChangeDTO change = new UserChangeDTO(6, 1, UserChangedEvent.Type.DELETED, null, LocalDateTime.now());
+        when(userChangeRepository.findByIdGreaterThan(5, Limit.of(100))).thenReturn(List.of());
+        when(userChangeOffsetRepository.increment(2)).thenReturn(1);
+        when(userChangeOffsetRepository.lastOffset()).thenReturn(7L);
+
+        CompletableFuture<UserChangesDTO> changes = userChangeService.awaitChanges(5, 100, Duration.ofSeconds(30));
+        assertThat(changes).isNotDone();
+
+        when(userChangeRepository.findByIdGreaterThan(5, Limit.of(100))).thenReturn(List.of(change));
+        inTransaction(() -> {
+            userChangeService.record(new UserChangedEvent(1, UserChangedEvent.Type.DELETED, null));
+            userChangeService.record(new UserChangedEvent(2, UserChangedEvent.Type.DELETED, null));
+        });
+
+        assertThat(changes.get(1, TimeUnit.SECONDS).getItems()).containsExactly(change);
+        assertThat(changes.get().getLastOffset()).isEqualTo(6);
+        // the initial read and one wake for the whole commit
+        verify(userChangeRepository, times(2)).findByIdGreaterThan(5, Limit.of(100));
+    }
+
+    @Test
+    public void UserChangeService_AwaitChanges_RejectsTooLongWait() {
+
+        assertThatThrownBy(() -> userChangeService.awaitChanges(0, 100, Duration.ofMinutes(5)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    // runs the callback the way a committing transaction would drive the registered synchronizations
+    private static void inTransaction(Runnable body) {
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            body.run();
+            List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+            synchronizations.forEach(synchronization -> synchronization.beforeCommit(false));
+            synchronizations.forEach(TransactionSynchronization::afterCommit);
+            synchronizations.forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.clearsolutions.service;
+
+import com.clearsolutions.models.UserEntity;
+import com.clearsolutions.repositories.UserExportRepository;
+import com.clearsolutions.repositories.UserRepository;
+import com.clearsolutions.services.UserExportService;
+import com.clearsolutions.services.impl.UserExportServiceImpl;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.jdbc.EmbeddedDatabaseConnection;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(connection = EmbeddedDatabaseConnection.H2)
+@Import({UserExportRepository.class, UserExportServiceImpl.class, ObjectMapper.class})
+public class UserExportServiceTests {
+
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private UserExportService userExportService;
+
+    private UserEntity first;
+    private UserEntity second;
+
+    @BeforeEach
+    public void init() {
+        first = userRepository.saveAndFlush(UserEntity.builder().email("first@mail.com")
+                .firstName("First")
+                .lastName("User")
+                .birthDate(LocalDateTime.of(1990, 1, 1, 0, 0, 0))
+                .address("Main st, 1 \"A\"")
+                .build());
+        second = userRepository.saveAndFlush(UserEntity.builder().email("second@mail.com")
+                .firstName("Second")
+                .lastName("User")
+                .birthDate(LocalDateTime.of(2000, 1, 1, 0, 0, 0))
+                .build());
+    }
+
+    @Test
+    public void UserExportService_Csv_WritesHeaderAndEscapedRows() throws IOException {
+
+        String[] lines = export(UserExportService.Format.CSV, null, null).split("\r\n");
+
+        Assertions.assertEquals(3, lines.length);
+        Assertions.assertEquals(String.join(",", UserExportRepository.COLUMNS), lines[0]);
+        Assertions.assertTrue(lines[1].startsWith(first.getId() + ",first@mail.com,First,User,1990-01-01T00:00:00,\"Main st, 1 \"\"A\"\"\",,0,"));
+        Assertions.assertTrue(lines[2].startsWith(second.getId() + ",second@mail.com,Second,User,2000-01-01T00:00:00,,,0,"));
+    }
+
+    @Test
+    public void UserExportService_Ndjson_WritesOneObjectPerLine() throws IOException {
+
+        String[] lines = export(UserExportService.Format.NDJSON, null, null).split("\n");
+
+        Assertions.assertEquals(2, lines.length);
+        Assertions.assertTrue(lines[0].startsWith("{\"id\":" + first.getId() + ",\"email\":\"first@mail.com\",\"firstName\":\"First\""));
+        Assertions.assertTrue(lines[1].contains("\"birthDate\":\"2000-01-01T00:00:00\",\"address\":null"));
+    }
+
+    @Test
+    public void UserExportService_Range_SkipsUsersOutsideItAndDeletedOnes() throws IOException {
+
+        userRepository.softDeleteById(second.getId(), LocalDateTime.now());
+
+        String inRange = export(UserExportService.Format.NDJSON,
+                LocalDateTime.of(1995, 1, 1, 0, 0, 0), LocalDateTime.of(2005, 1, 1, 0, 0, 0));
+
+        Assertions.assertEquals("", inRange);
+    }
+
+    @Test
+    public void UserExportService_FromDateAfterToDate_ThrowsIllegalArgumentException() {
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> userExportService.prepareExport(
+                UserExportService.Format.CSV, LocalDateTime.of(2005, 1, 1, 0, 0, 0), LocalDateTime.of(1995, 1, 1, 0, 0, 0)));
+    }
+
+    private String export(UserExportService.Format format, LocalDateTime fromDate, LocalDateTime toDate) throws IOException {
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        userExportService.prepareExport(format, fromDate, toDate).writeTo(outputStream);
+
+        return outputStream.toString(StandardCharsets.UTF_8);
+    }
+}
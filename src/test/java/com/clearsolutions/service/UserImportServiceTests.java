@@ -0,0 +1,179 @@
+package com.clearsolutions.service;
+
+import com.clearsolutions.cache.EmailBloomFilter;
+import com.clearsolutions.dto.BulkImportResultDTO;
+import com.clearsolutions.dto.UserDTO;
+import com.clearsolutions.events.UserChangedEvent;
+import com.clearsolutions.models.UserEntity;
+import com.clearsolutions.repositories.UserRepository;
+import com.clearsolutions.services.impl.UserImportServiceImpl;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceException;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class UserImportServiceTests {
+
+    @Mock
+    private UserRepository userRepository;
+    @Mock
+    private EntityManager entityManager;
+    @Mock
+    private TransactionTemplate transactionTemplate;
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    private UserImportServiceImpl userImportService;
+
+    @BeforeEach
+    public void init() {
+        userImportService = new UserImportServiceImpl(userRepository, entityManager, transactionTemplate,
+                Validation.buildDefaultValidatorFactory().getValidator(), eventPublisher, new EmailBloomFilter(1000, 0.01));
+        userImportService.requiredAge = 18;
+        userImportService.batchSize = 2;
+
+        doAnswer(invocation -> {
+            Consumer<TransactionStatus> action = invocation.getArgument(0);
+            action.accept(Mockito.mock(TransactionStatus.class));
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+    }
+
+    @Test
+    public void UserImportService_ImportUsers_InsertsValidRowsInBatches() {
+
+        BulkImportResultDTO result = userImportService.importUsers(List.of(
+                user("first@mail.com"), user("second@mail.com"), user("third@mail.com")).iterator());
+
+        assertThat(result.getReceived()).isEqualTo(3);
+        assertThat(result.getImported()).isEqualTo(3);
+        assertThat(result.getErrors()).isEmpty();
+        verify(entityManager, times(3)).persist(any(UserEntity.class));
+        verify(entityManager, times(2)).flush();
+        verify(eventPublisher, times(3)).publishEvent(any(UserChangedEvent.class));
+    }
+
+    @Test
+    public void UserImportService_ImportUsers_ReportsInvalidRows() {
+
+        UserDTO underage = user("young@mail.com");
+        underage.setBirthDate(LocalDateTime.now().minusYears(10));
+        UserDTO badEmail = user("not-an-email");
+
+        BulkImportResultDTO result = userImportService.importUsers(List.of(
+                underage, user("valid@mail.com"), badEmail).iterator());
+
+        assertThat(result.getImported()).isEqualTo(1);
+        assertThat(result.getRejected()).isEqualTo(2);
+        assertThat(result.getErrors().get(0).getRow()).isEqualTo(0);
+        assertThat(result.getErrors().get(0).getErrors()).containsKey("birthDate");
+        assertThat(result.getErrors().get(1).getRow()).isEqualTo(2);
+        assertThat(result.getErrors().get(1).getErrors()).containsKey("email");
+    }
+
+    @Test
+    public void UserImportService_ImportUsers_FallsBackToSingleRowsWhenBatchFails() {
+
+        doThrow(new PersistenceException("constraint")).when(entityManager).flush();
+        when(userRepository.save(any(UserEntity.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0))
+                .thenThrow(new DataIntegrityViolationException("duplicate"));
+
+        BulkImportResultDTO result = userImportService.importUsers(List.of(
+                user("first@mail.com"), user("second@mail.com")).iterator());
+
+        assertThat(result.getImported()).isEqualTo(1);
+        assertThat(result.getRejected()).isEqualTo(1);
+        assertThat(result.getErrors().get(0).getRow()).isEqualTo(1);
+    }
+
+    @Test
+    public void UserImportService_ImportUsers_ReusesEmailOfDeletedUser() {
+
+        doThrow(new PersistenceException("constraint")).when(entityManager).flush();
+        when(userRepository.save(any(UserEntity.class)))
+                .thenThrow(new DataIntegrityViolationException("duplicate"))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+        when(userRepository.purgeDeletedByEmail("deleted@mail.com")).thenReturn(1);
+
+        BulkImportResultDTO result = userImportService.importUsers(List.of(user("deleted@mail.com")).iterator());
+
+        assertThat(result.getImported()).isEqualTo(1);
+        assertThat(result.getRejected()).isEqualTo(0);
+    }
+
+    @Test
+    public void UserImportService_ImportUsers_RejectsNullRowsAndKeepsImporting() {
+
+        BulkImportResultDTO result = userImportService.importUsers(Arrays.asList(
+                user("first@mail.com"), null, user("third@mail.com")).iterator());
+
+        assertThat(result.getReceived()).isEqualTo(3);
+        assertThat(result.getImported()).isEqualTo(2);
+        assertThat(result.getRejected()).isEqualTo(1);
+        assertThat(result.getErrors().get(0).getRow()).isEqualTo(1);
+    }
+
+    @Test
+    public void UserImportService_ImportUsers_MalformedDocumentIsNoReceivedRow() {
+
+        Iterator<UserDTO> users = new Iterator<>() {
+            private boolean read;
+
+            @Override
+            public boolean hasNext() {
+                if (read) {
+                    throw new IllegalStateException("unexpected end of input");
+                }
+                return true;
+            }
+
+            @Override
+            public UserDTO next() {
+                read = true;
+                return user("first@mail.com");
+            }
+        };
+
+        BulkImportResultDTO result = userImportService.importUsers(users);
+
+        assertThat(result.getReceived()).isEqualTo(1);
+        assertThat(result.getImported()).isEqualTo(1);
+        assertThat(result.getRejected()).isEqualTo(0);
+        assertThat(result.getErrors()).singleElement()
+                .satisfies(error -> assertThat(error.getErrors()).containsKey("body"));
+    }
+
+    private static UserDTO user(String email) {
+
+        return UserDTO.builder().email(email)
+                .firstName("Test")
+                .lastName("Test")
+                .birthDate(LocalDateTime.of(2000, 1, 1, 0, 0, 0))
+                .build();
+    }
+}
@@ -1,11 +1,26 @@
 package com.clearsolutions.service;
 
+import com.clearsolutions.cache.EmailBloomFilter;
+import com.clearsolutions.cache.InMemorySharedUserStore;
+import com.clearsolutions.cache.UserCache;
+import com.clearsolutions.dto.BirthDateBucketDTO;
+import com.clearsolutions.dto.BirthDateCountDTO;
+import com.clearsolutions.dto.PageDTO;
+import com.clearsolutions.dto.SearchResultDTO;
+import com.clearsolutions.dto.UserBatchDTO;
 import com.clearsolutions.dto.UserDTO;
+import com.clearsolutions.dto.UserPatchDTO;
+import com.clearsolutions.events.UserChangedEvent;
+import com.clearsolutions.exception.DuplicateEmailException;
 import com.clearsolutions.exception.UserNotFoundException;
+import com.clearsolutions.exception.UserVersionConflictException;
 import com.clearsolutions.mapper.UserMapper;
 import com.clearsolutions.models.UserEntity;
 import com.clearsolutions.repositories.UserRepository;
+import com.clearsolutions.search.UserSearchIndex;
 import com.clearsolutions.services.impl.UserServiceImpl;
+import com.clearsolutions.utils.CursorCodec;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -13,14 +28,26 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.IntStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -28,6 +55,17 @@ public class UserServiceTests {
 
     @Mock
     private UserRepository userRepository;
+    @Spy
+    private UserCache userCache = new UserCache(100, Duration.ofMinutes(1), Duration.ofSeconds(5),
+            new InMemorySharedUserStore(100, Duration.ofMinutes(1), new ObjectMapper().findAndRegisterModules()));
+    @Spy
+    private UserSearchIndex userSearchIndex = new UserSearchIndex();
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+    @Spy
+    private EmailBloomFilter emailFilter = new EmailBloomFilter(1000, 0.01);
+    @Mock
+    private PlatformTransactionManager transactionManager;
     @InjectMocks
     private UserServiceImpl userService;
 
@@ -58,10 +96,65 @@ public class UserServiceTests {
         assertThat(savedUserDto).isEqualTo(userDTO);
     }
 
+    @Test
+    public void UserService_Create_ThrowsDuplicateEmailException() {
+
+        emailFilter.put("TEST@mail.com");
+        when(userRepository.existsByEmail("test@mail.com")).thenReturn(true);
+
+        Assertions.assertThrows(DuplicateEmailException.class, () -> userService.createUser(userDTO));
+        verify(userRepository, times(0)).save(Mockito.any(UserEntity.class));
+    }
+
+    @Test
+    public void UserService_Create_SkipsDuplicateLookupForUnknownEmail() {
+
+        when(userRepository.save(Mockito.any(UserEntity.class))).thenReturn(user);
+
+        userService.createUser(userDTO);
+
+        verify(userRepository, times(0)).existsByEmail(Mockito.any());
+        verify(userRepository, times(0)).purgeDeletedByEmail(Mockito.any());
+        assertThat(emailFilter.mightContain(user.getEmail())).isTrue();
+    }
+
+    @Test
+    public void UserService_Create_MapsUniqueIndexViolationToDuplicateEmailException() {
+
+        when(userRepository.save(Mockito.any(UserEntity.class))).thenThrow(new DataIntegrityViolationException("uk_user_email"));
+
+        Assertions.assertThrows(DuplicateEmailException.class, () -> userService.createUser(userDTO));
+    }
+
+    @Test
+    public void UserService_Create_PurgesDeletedHolderOfEmailOnlyAfterConflict() {
+
+        user.setId(1);
+        when(userRepository.save(Mockito.any(UserEntity.class)))
+                .thenThrow(new DataIntegrityViolationException("uk_user_email"))
+                .thenReturn(user);
+        when(userRepository.purgeDeletedByEmail("test@mail.com")).thenReturn(1);
+
+        assertThat(userService.createUser(userDTO).getId()).isEqualTo(1);
+        verify(userRepository, times(2)).save(Mockito.any(UserEntity.class));
+        verify(userRepository, times(1)).purgeDeletedByEmail("test@mail.com");
+    }
+
+    @Test
+    public void UserService_FindByEmail_ReturnsUserDto() {
+
+        // the filter has not seen the email, e.g. it was created by another instance
+        when(userRepository.findByEmail("test@mail.com")).thenReturn(Optional.of(userDTO));
+        when(userRepository.findByEmail("unknown@mail.com")).thenReturn(Optional.empty());
+
+        assertThat(userService.getUserByEmail(" Test@Mail.com")).isEqualTo(userDTO);
+        Assertions.assertThrows(UserNotFoundException.class, () -> userService.getUserByEmail("unknown@mail.com"));
+    }
+
     @Test
     public void UserService_FindById_ReturnsUserDto() {
 
-        when(userRepository.findById(1)).thenReturn(Optional.ofNullable(user));
+        when(userRepository.findDtoById(1)).thenReturn(Optional.of(userDTO));
 
         UserDTO returnedUserDto = userService.getUserById(1);
 
@@ -70,27 +163,201 @@ public class UserServiceTests {
     }
 
     @Test
-    public void UserService_FindAll_ReturnsListOfUserDto() {
+    public void UserService_FindById_ReadsThroughCache() {
+
+        when(userRepository.findDtoById(1)).thenReturn(Optional.of(userDTO));
+
+        userService.getUserById(1);
+        UserDTO returnedUserDto = userService.getUserById(1);
+
+        assertThat(returnedUserDto).isEqualTo(userDTO);
+        verify(userRepository, times(1)).findDtoById(1);
+        assertThat(userCache.getStats().getHitCount()).isEqualTo(1);
+        assertThat(userCache.getStats().getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void UserService_UpdateAndDelete_RefreshCache() {
+
+        user.setId(1);
+        when(userRepository.findDtoById(1)).thenReturn(Optional.of(UserMapper.mapToDto(user)));
+        when(userRepository.findById(1)).thenReturn(Optional.ofNullable(user));
+        when(userRepository.save(Mockito.any(UserEntity.class))).thenReturn(user);
+        when(userRepository.softDeleteById(Mockito.eq(1), Mockito.any(LocalDateTime.class))).thenReturn(1);
+        userService.getUserById(1);
+
+        UserDTO changedUserDto = UserMapper.mapToDto(user);
+        changedUserDto.setFirstName("Changed");
+        userService.updateUserById(1, changedUserDto);
+
+        assertThat(userService.getUserById(1).getFirstName()).isEqualTo("Changed");
+
+        userService.deleteUserById(1);
+        when(userRepository.findDtoById(1)).thenReturn(Optional.empty());
+
+        Assertions.assertThrows(UserNotFoundException.class, () -> userService.getUserById(1));
+    }
+
+    @Test
+    public void UserService_FindAll_ReturnsPageOfUserDto() {
+
+        when(userRepository.findByIdGreaterThanOrderByIdAsc(0, Limit.of(10))).thenReturn(List.of(userDTO));
+
+        PageDTO<UserDTO> returnedPage = userService.getAllUsers(null, 10);
+
+        assertThat(returnedPage).isNotNull();
+        assertThat(returnedPage.getItems().size()).isEqualTo(1);
+        assertThat(returnedPage.getItems().contains(userDTO)).isTrue();
+        assertThat(returnedPage.getNextCursor()).isNull();
+    }
+
+    @Test
+    public void UserService_FindAll_ReturnsCursorWhenPageIsFull() {
+
+        userDTO.setId(5);
+        when(userRepository.findByIdGreaterThanOrderByIdAsc(3, Limit.of(1))).thenReturn(List.of(userDTO));
 
-        when(userRepository.findAll()).thenReturn(List.of(user));
+        PageDTO<UserDTO> returnedPage = userService.getAllUsers(CursorCodec.encodeId(3), 1);
 
-        List<UserDTO> returnedUserDTOs = userService.getAllUsers();
+        assertThat(returnedPage.getNextCursor()).isEqualTo(CursorCodec.encodeId(5));
+    }
+
+    @Test
+    public void UserService_FindAll_ThrowsIllegalArgumentException() {
 
-        assertThat(returnedUserDTOs).isNotNull();
-        assertThat(returnedUserDTOs.size()).isEqualTo(1);
-        assertThat(returnedUserDTOs.contains(userDTO)).isTrue();
+        Assertions.assertThrows(IllegalArgumentException.class, () -> userService.getAllUsers(null, 0));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> userService.getAllUsers("%%%", 10));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> userService.getAllUsers(null, 10, Set.of("password")));
+    }
+
+    @Test
+    public void UserService_FindAllFields_ReturnsOnlyRequestedFields() {
+
+        Set<String> fields = Set.of("email");
+        Map<String, Object> row = new LinkedHashMap<>(Map.of("email", "test@mail.com", "id", 5, "version", 2L));
+        when(userRepository.findFieldsByIdGreaterThan(Set.of("email", "id", "version"), 0, 1)).thenReturn(List.of(row));
+
+        PageDTO<Map<String, Object>> returnedPage = userService.getAllUsers(null, 1, fields);
+
+        assertThat(returnedPage.getItems()).containsExactly(Map.of("email", "test@mail.com"));
+        assertThat(returnedPage.getNextCursor()).isEqualTo(CursorCodec.encodeId(5));
+        assertThat(returnedPage.getVersions()).containsExactly(Map.entry(5, 2L));
     }
 
     @Test
     public void UserService_FindByBirthDateBetween_ReturnsListOfUsersIfExist() {
 
-        when(userRepository.findByBirthDateBetween(Mockito.any(), Mockito.any())).thenReturn(List.of(user));
+        when(userRepository.findByBirthDateBetweenOrderByBirthDateAscIdAsc(Mockito.any(), Mockito.any(), Mockito.any()))
+                .thenReturn(List.of(userDTO));
+
+        PageDTO<UserDTO> returnedPage = userService.getUsersByBirthDateRange(LocalDateTime.now(), LocalDateTime.now(), null, 1);
+
+        assertThat(returnedPage).isNotNull();
+        assertThat(returnedPage.getItems().size()).isEqualTo(1);
+        assertThat(returnedPage.getItems().contains(userDTO)).isTrue();
+        assertThat(returnedPage.getNextCursor()).isEqualTo(CursorCodec.encodeBirthDateAndId(user.getBirthDate(), user.getId()));
+    }
+
+    @Test
+    public void UserService_FindByBirthDateBetween_UsesCursor() {
+
+        LocalDateTime fromDate = LocalDateTime.of(1990, 1, 1, 0, 0, 0);
+        LocalDateTime toDate = LocalDateTime.of(2010, 1, 1, 0, 0, 0);
+        String cursor = CursorCodec.encodeBirthDateAndId(user.getBirthDate(), 7);
+        when(userRepository.findByBirthDateBetweenAfter(fromDate, toDate, user.getBirthDate(), 7, Limit.of(10)))
+                .thenReturn(List.of(userDTO));
+
+        PageDTO<UserDTO> returnedPage = userService.getUsersByBirthDateRange(fromDate, toDate, cursor, 10);
+
+        assertThat(returnedPage.getItems()).containsExactly(userDTO);
+        assertThat(returnedPage.getNextCursor()).isNull();
+    }
+
+    @Test
+    public void UserService_Search_ReturnsRankedPage() {
+
+        UserDTO prefixMatch = UserDTO.builder().id(1).email("smithson@mail.com").firstName("Ann").lastName("Smithson").build();
+        UserDTO exactMatch = UserDTO.builder().id(2).email("john@mail.com").firstName("John").lastName("Smith").build();
+        userSearchIndex.index(prefixMatch);
+        userSearchIndex.index(exactMatch);
+        when(userRepository.findDtosByIdIn(List.of(2, 1))).thenReturn(List.of(prefixMatch, exactMatch));
+
+        SearchResultDTO<UserDTO> result = userService.searchUsers("Smith", 0, 10);
+
+        assertThat(result.getItems()).containsExactly(exactMatch, prefixMatch);
+        assertThat(result.getTotal()).isEqualTo(2);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> userService.searchUsers("sm", 0, 10));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> userService.searchUsers("smith", -1, 10));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> userService.searchUsers("smith", Integer.MAX_VALUE / 10, 10));
+    }
+
+    @Test
+    public void UserService_GetUsersByIds_ReturnsItemsInRequestOrderWithNotFoundMarkers() {
+
+        UserDTO cached = UserDTO.builder().id(1).email("cached@mail.com").build();
+        UserDTO stored = UserDTO.builder().id(2).email("stored@mail.com").build();
+        when(userRepository.findDtoById(1)).thenReturn(Optional.of(cached));
+        userService.getUserById(1);
+        when(userRepository.findDtosByIdIn(Mockito.anyCollection())).thenReturn(List.of(stored));
+
+        UserBatchDTO batch = userService.getUsersByIds(List.of(3, 1, 2, 1));
+
+        assertThat(batch.getItems()).extracting(UserBatchDTO.Item::getId).containsExactly(3, 1, 2, 1);
+        assertThat(batch.getItems()).extracting(UserBatchDTO.Item::isFound).containsExactly(false, true, true, true);
+        assertThat(batch.getItems()).extracting(UserBatchDTO.Item::getUser).containsExactly(null, cached, stored, cached);
+        assertThat(batch.getFound()).isEqualTo(3);
+        assertThat(batch.getNotFound()).isEqualTo(1);
+        verify(userRepository, times(1)).findDtosByIdIn(Mockito.anyCollection());
+    }
+
+    @Test
+    public void UserService_GetUsersByIds_ChunksInQueries() {
+
+        List<Integer> ids = IntStream.rangeClosed(1, 1200).boxed().toList();
+        when(userRepository.findDtosByIdIn(Mockito.anyCollection())).thenReturn(List.of());
+
+        UserBatchDTO batch = userService.getUsersByIds(ids);
+
+        assertThat(batch.getNotFound()).isEqualTo(1200);
+        verify(userRepository, times(3)).findDtosByIdIn(Mockito.anyCollection());
+    }
+
+    @Test
+    public void UserService_GetUsersByIds_TooFewOrTooManyIds_ThrowsIllegalArgumentException() {
 
-        List<UserDTO> returnedUserDTOs = userService.getUsersByBirthDateRange(LocalDateTime.now(), LocalDateTime.now());
+        List<Integer> tooMany = IntStream.rangeClosed(1, UserServiceImpl.MAX_BATCH_GET_IDS + 1).boxed().toList();
 
-        assertThat(returnedUserDTOs).isNotNull();
-        assertThat(returnedUserDTOs.size()).isEqualTo(1);
-        assertThat(returnedUserDTOs.contains(userDTO)).isTrue();
+        Assertions.assertThrows(IllegalArgumentException.class, () -> userService.getUsersByIds(List.of()));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> userService.getUsersByIds(tooMany));
+    }
+
+    @Test
+    public void UserService_UpdateAndDelete_PublishUserChangedEvents() {
+
+        user.setId(1);
+        when(userRepository.findById(1)).thenReturn(Optional.ofNullable(user));
+        when(userRepository.save(Mockito.any(UserEntity.class))).thenReturn(user);
+        when(userRepository.softDeleteById(Mockito.eq(1), Mockito.any(LocalDateTime.class))).thenReturn(1);
+
+        userService.updateUserById(1, userDTO);
+        userService.deleteUserById(1);
+
+        verify(eventPublisher).publishEvent(new UserChangedEvent(1, UserChangedEvent.Type.UPDATED, UserMapper.mapToDto(user)));
+        verify(eventPublisher).publishEvent(new UserChangedEvent(1, UserChangedEvent.Type.DELETED, null));
+    }
+
+    @Test
+    public void UserService_CountByBirthDateBetween_ReturnsBuckets() {
+
+        when(userRepository.countByBirthDateBetweenGroupByYear(Mockito.any(), Mockito.any()))
+                .thenReturn(List.of(new BirthDateBucketDTO(2000, 3L), new BirthDateBucketDTO(2001, 2L)));
+
+        BirthDateCountDTO count = userService.countUsersByBirthDateRange(LocalDateTime.now(), LocalDateTime.now(), "year");
+
+        assertThat(count.getTotal()).isEqualTo(5);
+        assertThat(count.getBuckets().size()).isEqualTo(2);
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> userService.countUsersByBirthDateRange(LocalDateTime.now(), LocalDateTime.now(), "week"));
     }
 
     @Test
@@ -105,12 +372,54 @@ public class UserServiceTests {
         assertThat(updatedUserDto).isEqualTo(userDTO);
     }
 
+    @Test
+    public void UserService_PatchById_CachesPatchedVersion() {
+
+        user.setId(1);
+        UserPatchDTO patch = UserPatchDTO.builder().firstName("Patched").build();
+        UserDTO patchedUser = UserMapper.mapToDto(user);
+        patchedUser.setFirstName("Patched");
+        patchedUser.setVersion(1);
+        when(userRepository.findDtoById(1)).thenReturn(Optional.of(UserMapper.mapToDto(user)), Optional.of(patchedUser));
+        when(userRepository.patchById(1, 0L, patch)).thenReturn(1);
+        userService.getUserById(1);
+
+        userService.patchUserById(1, 0L, patch);
+
+        assertThat(userService.getUserById(1).getFirstName()).isEqualTo("Patched");
+        verify(userRepository, times(2)).findDtoById(1);
+    }
+
+    @Test
+    public void UserService_PatchById_ThrowsOnConflictOrMissingUser() {
+
+        UserPatchDTO patch = UserPatchDTO.builder().firstName("Patched").build();
+        when(userRepository.patchById(Mockito.anyInt(), Mockito.any(), Mockito.eq(patch))).thenReturn(0);
+        when(userRepository.existsById(1)).thenReturn(true);
+
+        Assertions.assertThrows(UserVersionConflictException.class, () -> userService.patchUserById(1, 3L, patch));
+        Assertions.assertThrows(UserNotFoundException.class, () -> userService.patchUserById(2, 3L, patch));
+        Assertions.assertThrows(UserNotFoundException.class, () -> userService.patchUserById(1, null, patch));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> userService.patchUserById(1, null, new UserPatchDTO()));
+    }
+
     @Test
     public void UserService_DeleteById() {
 
+        when(userRepository.softDeleteById(Mockito.eq(1), Mockito.any(LocalDateTime.class))).thenReturn(1);
+
         assertAll(() -> userService.deleteUserById(1));
     }
 
+    @Test
+    public void UserService_DeleteById_ThrowsUserNotFoundExceptionForMissingOrDeletedUser() {
+
+        when(userRepository.softDeleteById(Mockito.eq(2), Mockito.any(LocalDateTime.class))).thenReturn(0);
+
+        Assertions.assertThrows(UserNotFoundException.class, () -> userService.deleteUserById(2));
+        verify(eventPublisher, times(0)).publishEvent(Mockito.any());
+    }
+
     @Test
     public void UserService_CreateUser_ThrowsIllegalArgumentException() {
 
@@ -138,12 +447,23 @@ public class UserServiceTests {
         Assertions.assertThrows(UserNotFoundException.class, () -> userService.updateUserById(1, new UserDTO()));
     }
 
+    @Test
+    public void UserService_FindUserById_ReturnsEmptyWithoutStackTraceForMissingUser() {
+
+        Assertions.assertEquals(Optional.empty(), userService.findUserById(1));
+
+        UserNotFoundException ex = Assertions.assertThrows(UserNotFoundException.class, () -> userService.getUserById(1));
+        Assertions.assertEquals(0, ex.getStackTrace().length);
+    }
+
     @Test
     public void UserService_GetUsersByBirthDateRange_ThrowsIllegalArgumentException() {
 
         Assertions.assertThrows(IllegalArgumentException.class, () -> userService.getUsersByBirthDateRange(
                 LocalDateTime.of(2002, 2, 2, 0, 0, 0),
-                LocalDateTime.of(2001, 1, 1, 0, 0, 0)
+                LocalDateTime.of(2001, 1, 1, 0, 0, 0),
+                null,
+                10
         ));
     }
 }
\ No newline at end of file
@@ -0,0 +1,147 @@
+package com.clearsolutions.service;
+
+import com.clearsolutions.dto.BulkImportResultDTO;
+import com.clearsolutions.dto.BulkRowErrorDTO;
+import com.clearsolutions.dto.UserDTO;
+import com.clearsolutions.dto.UserWriteStatusDTO;
+import com.clearsolutions.exception.WriteQueueFullException;
+import com.clearsolutions.services.UserImportService;
+import com.clearsolutions.services.UserService;
+import com.clearsolutions.services.impl.UserWriteBehindServiceImpl;
+import com.clearsolutions.writebehind.UserWriteJournal;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class UserWriteBehindServiceTests {
+
+    @Mock
+    private UserService userService;
+    @Mock
+    private UserImportService userImportService;
+
+    @TempDir
+    private Path directory;
+
+    private UserWriteBehindServiceImpl userWriteBehindService;
+
+    @AfterEach
+    public void stop() throws Exception {
+        userWriteBehindService.stop();
+    }
+
+    @Test
+    public void UserWriteBehindService_Submit_ReportsTheOutcomeOfEachWrite() throws Exception {
+
+        when(userImportService.importUsers(any())).thenAnswer(invocation -> {
+            Iterator<UserDTO> users = invocation.getArgument(0);
+            List<BulkRowErrorDTO> errors = new ArrayList<>();
+            for (int row = 0; users.hasNext(); row++) {
+                if (users.next().getEmail().startsWith("taken")) {
+                    errors.add(new BulkRowErrorDTO(row, Map.of("row", "duplicate email")));
+                }
+            }
+            return BulkImportResultDTO.builder().errors(errors).build();
+        });
+        start(10);
+
+        UserWriteStatusDTO first = userWriteBehindService.submit(user("first@mail.com"));
+        UserWriteStatusDTO second = userWriteBehindService.submit(user("taken@mail.com"));
+
+        assertThat(first.getStatus()).isEqualTo(UserWriteStatusDTO.Status.QUEUED);
+        awaitDone(first.getTrackingId());
+        awaitDone(second.getTrackingId());
+        assertThat(userWriteBehindService.getStatus(first.getTrackingId()).getStatus()).isEqualTo(UserWriteStatusDTO.Status.WRITTEN);
+        assertThat(userWriteBehindService.getStatus(second.getTrackingId()).getStatus()).isEqualTo(UserWriteStatusDTO.Status.FAILED);
+    }
+
+    @Test
+    public void UserWriteBehindService_Submit_RejectsWritesBeyondQueueCapacity() throws Exception {
+
+        CountDownLatch saving = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(userImportService.importUsers(any())).thenAnswer(invocation -> {
+            saving.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return BulkImportResultDTO.builder().errors(List.of()).build();
+        });
+        start(1);
+
+        userWriteBehindService.submit(user("first@mail.com"));
+        assertThat(saving.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // the write being saved still holds its slot
+        assertThatThrownBy(() -> userWriteBehindService.submit(user("second@mail.com")))
+                .isInstanceOf(WriteQueueFullException.class);
+        release.countDown();
+    }
+
+    @Test
+    public void UserWriteBehindService_FailedBatch_IsReportedAndNotReplayedOnRestart() throws Exception {
+
+        when(userImportService.importUsers(any())).thenThrow(new IllegalStateException("database down"));
+        start(10);
+
+        UserWriteStatusDTO write = userWriteBehindService.submit(user("first@mail.com"));
+        awaitDone(write.getTrackingId());
+        userWriteBehindService.stop();
+
+        assertThat(userWriteBehindService.getStatus(write.getTrackingId()).getStatus()).isEqualTo(UserWriteStatusDTO.Status.FAILED);
+        try (UserWriteJournal journal = journal()) {
+            assertThat(journal.open()).isEmpty();
+        }
+        assertThat(directory.resolve("users.journal")).isEmptyFile();
+    }
+
+    private void start(int queueCapacity) throws Exception {
+
+        userWriteBehindService = new UserWriteBehindServiceImpl(userService, userImportService, journal(), 100, Duration.ofMinutes(1));
+        userWriteBehindService.queueCapacity = queueCapacity;
+        userWriteBehindService.batchSize = 10;
+        userWriteBehindService.start();
+    }
+
+    private UserWriteJournal journal() {
+
+        return new UserWriteJournal(directory.resolve("users.journal"), new ObjectMapper().findAndRegisterModules());
+    }
+
+    private void awaitDone(String trackingId) throws InterruptedException {
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (userWriteBehindService.getStatus(trackingId).getStatus() == UserWriteStatusDTO.Status.QUEUED
+                && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static UserDTO user(String email) {
+
+        return UserDTO.builder()
+                .email(email)
+                .firstName("Test")
+                .lastName("Test")
+                .birthDate(LocalDateTime.of(2000, 1, 1, 0, 0))
+                .build();
+    }
+}
@@ -0,0 +1,316 @@
+package com.clearsolutions.sharding;
+
+import com.clearsolutions.dto.UserDTO;
+import com.clearsolutions.events.UserChangedEvent;
+import com.clearsolutions.exception.DuplicateEmailException;
+import com.clearsolutions.purge.JobLease;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Three embedded H2 databases as shards.
+ */
+public class ShardedUserRepositoryTests {
+
+    private static final int SHARDS = 3;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private List<DataSource> shards;
+    private ShardRouter router;
+    private ShardedUserRepository repository;
+
+    @BeforeEach
+    public void init() {
+
+        String id = UUID.randomUUID().toString();
+        shards = IntStream.range(0, SHARDS)
+                .<DataSource>mapToObj(shard -> new DriverManagerDataSource(
+                        "jdbc:h2:mem:shard" + shard + "-" + id + ";DB_CLOSE_DELAY=-1", "sa", ""))
+                .toList();
+        router = new ShardRouter(shards);
+        repository = new ShardedUserRepository(router, allocator(10), new ObjectMapper().findAndRegisterModules(),
+                Duration.ofMinutes(1), executor);
+        repository.createSchema();
+    }
+
+    @AfterEach
+    public void shutdown() {
+
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void ShardedUserRepository_Save_SpreadsUsersOverShardsAndFindsThemById() {
+
+        List<UserDTO> saved = IntStream.range(0, 60).mapToObj(i -> repository.save(user(i))).toList();
+
+        assertThat(saved).extracting(UserDTO::getId).doesNotHaveDuplicates().doesNotContain(0);
+        for (int shard = 0; shard < SHARDS; shard++) {
+            assertThat(new JdbcTemplate(shards.get(shard)).queryForObject("select count(*) from user_table", Integer.class))
+                    .isBetween(10, 30);
+        }
+        for (UserDTO user : saved) {
+            assertThat(repository.findById(user.getId())).get().usingRecursiveComparison().isEqualTo(user);
+        }
+    }
+
+    @Test
+    public void ShardedUserRepository_Save_UpdatesOnlyMatchingVersion() {
+
+        UserDTO user = repository.save(user(1));
+        long readVersion = user.getVersion();
+        user.setFirstName("Changed");
+
+        repository.save(user);
+
+        assertThat(repository.findById(user.getId())).get()
+                .extracting(UserDTO::getFirstName, UserDTO::getVersion).containsExactly("Changed", readVersion + 1);
+
+        user.setVersion(readVersion);
+        assertThatThrownBy(() -> repository.save(user)).isInstanceOf(OptimisticLockingFailureException.class);
+    }
+
+    @Test
+    public void ShardedUserRepository_DeleteById_HidesUserOnce() {
+
+        UserDTO user = repository.save(user(1));
+
+        assertThat(repository.deleteById(user.getId())).isTrue();
+        assertThat(repository.deleteById(user.getId())).isFalse();
+        assertThat(repository.findById(user.getId())).isEmpty();
+    }
+
+    @Test
+    public void ShardedUserRepository_CrossShardQueries_MergeInOrder() {
+
+        List<UserDTO> saved = IntStream.range(0, 40).mapToObj(i -> repository.save(user(i))).toList();
+        repository.deleteById(saved.get(0).getId());
+        LocalDateTime fromDate = LocalDateTime.of(1990, 1, 10, 0, 0);
+        LocalDateTime toDate = LocalDateTime.of(1990, 1, 30, 0, 0);
+
+        try (Stream<UserDTO> all = repository.findAll()) {
+            assertThat(all.map(UserDTO::getId).toList())
+                    .isEqualTo(saved.stream().skip(1).map(UserDTO::getId).sorted().toList());
+        }
+        try (Stream<UserDTO> born = repository.findByBirthDateBetween(fromDate, toDate)) {
+            assertThat(born.toList())
+                    .extracting(UserDTO::getId)
+                    .isEqualTo(saved.stream()
+                            .filter(user -> !user.getBirthDate().isBefore(fromDate) && !user.getBirthDate().isAfter(toDate))
+                            .sorted(Comparator.comparing(UserDTO::getBirthDate).thenComparingInt(UserDTO::getId))
+                            .map(UserDTO::getId)
+                            .toList());
+        }
+    }
+
+    @Test
+    public void ShardedUserRepository_Save_RejectsEmailTakenOnAnyShard() {
+
+        repository.save(user(1));
+
+        // the next ids land on every shard, none of them may take the email
+        for (int i = 0; i < 10; i++) {
+            UserDTO duplicate = user(2);
+            duplicate.setEmail(" USER1@mail.com");
+            assertThatThrownBy(() -> repository.save(duplicate)).isInstanceOf(DuplicateEmailException.class);
+            assertThat(duplicate.getId()).isZero();
+        }
+        assertThat(rows("select count(*) from user_table where email = 'user1@mail.com'")).isEqualTo(1);
+    }
+
+    @Test
+    public void ShardedUserRepository_Save_MovesReservationWithChangedEmail() {
+
+        UserDTO user = repository.save(user(1));
+        UserDTO other = repository.save(user(2));
+        user.setEmail("changed@mail.com");
+
+        repository.save(user);
+
+        assertThat(repository.save(user(1)).getId()).isNotZero();
+        other.setEmail("changed@mail.com");
+        assertThatThrownBy(() -> repository.save(other)).isInstanceOf(DuplicateEmailException.class);
+        assertThat(directory().queryForObject("select user_id from user_email where email = 'changed@mail.com'", Integer.class))
+                .isEqualTo(user.getId());
+    }
+
+    @Test
+    public void ShardedUserRepository_Save_FailedUpdateKeepsEmails() {
+
+        UserDTO user = repository.save(user(1));
+        long readVersion = user.getVersion();
+        repository.save(user);
+        user.setVersion(readVersion);
+        user.setEmail("changed@mail.com");
+
+        assertThatThrownBy(() -> repository.save(user)).isInstanceOf(OptimisticLockingFailureException.class);
+
+        assertThat(directory().queryForList("select email from user_email", String.class)).containsExactly("user1@mail.com");
+    }
+
+    @Test
+    public void ShardedUserRepository_Save_PurgesDeletedHolderOfEmail() {
+
+        UserDTO deleted = repository.save(user(1));
+        repository.deleteById(deleted.getId());
+
+        UserDTO user = repository.save(user(1));
+
+        assertThat(user.getId()).isNotEqualTo(deleted.getId());
+        assertThat(rows("select count(*) from user_table where email = 'user1@mail.com'")).isEqualTo(1);
+    }
+
+    @Test
+    public void ShardedUserRepository_Save_TakesOverOnlyExpiredAbandonedReservation() {
+
+        directory().update("insert into user_email (email, user_id, reserved_at) values ('user1@mail.com', -1, ?)",
+                LocalDateTime.now());
+        assertThatThrownBy(() -> repository.save(user(1))).isInstanceOf(DuplicateEmailException.class);
+
+        directory().update("update user_email set reserved_at = ? where user_id = -1", LocalDateTime.now().minusMinutes(2));
+        UserDTO user = repository.save(user(1));
+
+        assertThat(directory().queryForObject("select user_id from user_email where email = 'user1@mail.com'", Integer.class))
+                .isEqualTo(user.getId());
+    }
+
+    @Test
+    public void ShardedUserRepository_Writes_RecordChangesInShardOutbox() {
+
+        UserDTO user = repository.save(user(1));
+        user.setFirstName("Changed");
+        repository.save(user);
+        repository.deleteById(user.getId());
+        user.setVersion(0);
+        assertThatThrownBy(() -> repository.save(user)).isInstanceOf(OptimisticLockingFailureException.class);
+
+        List<ShardedUserRepository.Change> changes = repository.findChanges(router.shardOf(user.getId()), 10);
+        assertThat(changes).extracting(change -> change.event().type()).containsExactly(
+                UserChangedEvent.Type.CREATED, UserChangedEvent.Type.UPDATED, UserChangedEvent.Type.DELETED);
+        assertThat(changes.get(1).event().user()).extracting(UserDTO::getId, UserDTO::getFirstName, UserDTO::getVersion)
+                .containsExactly(user.getId(), "Changed", 1L);
+        assertThat(changes.get(2).event().user()).isNull();
+        assertThat(rows("select count(*) from user_change")).isEqualTo(3);
+    }
+
+    @Test
+    public void ShardOutboxRelay_Relay_PublishesEveryShardInOrderAndEmptiesOutboxes() {
+
+        List<UserDTO> saved = IntStream.range(0, 20).mapToObj(i -> repository.save(user(i))).toList();
+        saved.forEach(user -> repository.deleteById(user.getId()));
+        JobLease jobLease = mock(JobLease.class);
+        when(jobLease.tryAcquire(ShardOutboxRelay.JOB, Duration.ofSeconds(2))).thenReturn(true, false);
+        List<UserChangedEvent> published = new ArrayList<>();
+        ApplicationEventPublisher eventPublisher = event -> published.add((UserChangedEvent) event);
+        ShardOutboxRelay relay = new ShardOutboxRelay(repository, SHARDS, jobLease, eventPublisher,
+                new DataSourceTransactionManager(shards.get(0)), Duration.ofSeconds(1), 3);
+
+        assertThat(relay.relay()).isEqualTo(40);
+        assertThat(relay.relay()).isZero();
+
+        assertThat(published).hasSize(40);
+        for (UserDTO user : saved) {
+            assertThat(published).filteredOn(event -> event.userId() == user.getId())
+                    .extracting(UserChangedEvent::type)
+                    .containsExactly(UserChangedEvent.Type.CREATED, UserChangedEvent.Type.DELETED);
+        }
+        assertThat(rows("select count(*) from user_change")).isZero();
+    }
+
+    @Test
+    public void ShardOutboxRelay_Relay_KeepsChangesWhenPublishingFails() {
+
+        repository.save(user(1));
+        JobLease jobLease = mock(JobLease.class);
+        when(jobLease.tryAcquire(Mockito.eq(ShardOutboxRelay.JOB), Mockito.any())).thenReturn(true);
+        ApplicationEventPublisher failing = event -> {
+            throw new IllegalStateException("main database down");
+        };
+        ShardOutboxRelay relay = new ShardOutboxRelay(repository, SHARDS, jobLease, failing,
+                new DataSourceTransactionManager(shards.get(0)), Duration.ofSeconds(1), 3);
+
+        assertThatThrownBy(relay::relay).isInstanceOf(IllegalStateException.class);
+
+        assertThat(rows("select count(*) from user_change")).isEqualTo(1);
+    }
+
+    @Test
+    public void UserIdAllocator_Instances_NeverHandOutTheSameId() {
+
+        UserIdAllocator first = allocator(10);
+        UserIdAllocator second = allocator(10);
+
+        Set<Integer> ids = IntStream.range(0, 100)
+                .flatMap(i -> IntStream.of(first.nextId(), second.nextId()))
+                .boxed()
+                .collect(Collectors.toSet());
+
+        assertThat(ids).hasSize(200);
+    }
+
+    @Test
+    public void ShardRouter_ConsecutiveIds_SpreadEvenly() {
+
+        int[] counts = new int[SHARDS];
+        IntStream.rangeClosed(1, 30_000).forEach(id -> counts[router.shardOf(id)]++);
+
+        assertThat(IntStream.of(counts).boxed().toList()).allSatisfy(count -> assertThat(count).isBetween(9_000, 11_000));
+    }
+
+    // summed over all shards
+    private int rows(String countSql) {
+
+        return shards.stream().mapToInt(shard -> new JdbcTemplate(shard).queryForObject(countSql, Integer.class)).sum();
+    }
+
+    private JdbcTemplate directory() {
+
+        return new JdbcTemplate(shards.get(0));
+    }
+
+    private UserIdAllocator allocator(int blockSize) {
+
+        UserIdAllocator allocator = new UserIdAllocator(shards.get(0), blockSize);
+        allocator.createSequence();
+
+        return allocator;
+    }
+
+    // three users per birth date, so dates tie across shards
+    private static UserDTO user(int i) {
+
+        return UserDTO.builder()
+                .email("user" + i + "@mail.com")
+                .firstName("First" + i)
+                .lastName("Last")
+                .birthDate(LocalDateTime.of(1990, 1, 1, 0, 0).plusDays(i / 3))
+                .build();
+    }
+}
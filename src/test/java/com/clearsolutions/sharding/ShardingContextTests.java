@@ -0,0 +1,73 @@
+package com.clearsolutions.sharding;
+
+import com.clearsolutions.dto.UserChangeDTO;
+import com.clearsolutions.dto.UserChangesDTO;
+import com.clearsolutions.dto.UserDTO;
+import com.clearsolutions.events.UserChangedEvent;
+import com.clearsolutions.services.UserChangeService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+/**
+ * The application with sharding turned on, its scheduled relay only runs once at startup.
+ */
+@SpringBootTest(properties = {"user.sharding.enabled=true", "user.sharding.relay-interval=PT1H"})
+public class ShardingContextTests {
+
+    @TempDir
+    static Path journals;
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        registry.add("user.write-behind.journal", () -> journals.resolve("user-write-behind.journal").toString());
+        String id = UUID.randomUUID().toString();
+        registry.add("user.sharding.urls", () -> IntStream.range(0, 2)
+                .mapToObj(shard -> "jdbc:h2:mem:shard" + shard + "-" + id + ";DB_CLOSE_DELAY=-1")
+                .collect(Collectors.joining(",")));
+    }
+
+    @Autowired
+    private ShardedUserRepository repository;
+
+    @Autowired
+    private ShardOutboxRelay relay;
+
+    @Autowired
+    private UserChangeService userChangeService;
+
+    @Test
+    public void ShardOutboxRelay_Relay_FeedsShardedWritesIntoTheChangeLog() {
+
+        long since = userChangeService.lastOffset();
+        UserDTO user = repository.save(UserDTO.builder()
+                .email("sharded@mail.com")
+                .firstName("Test")
+                .lastName("Test")
+                .birthDate(LocalDateTime.of(2000, 1, 1, 0, 0))
+                .build());
+        repository.deleteById(user.getId());
+
+        assertThat(relay.relay()).isEqualTo(2);
+
+        UserChangesDTO changes = userChangeService.getChanges(since, 1000);
+        assertThat(changes.getItems())
+                .extracting(UserChangeDTO::getUserId, UserChangeDTO::getType)
+                .containsExactly(
+                        tuple(user.getId(), UserChangedEvent.Type.CREATED),
+                        tuple(user.getId(), UserChangedEvent.Type.DELETED));
+        assertThat(changes.getItems().get(0).getUser()).contains("\"email\":\"sharded@mail.com\"");
+    }
+}
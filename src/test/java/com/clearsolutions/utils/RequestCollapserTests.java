@@ -0,0 +1,120 @@
+package com.clearsolutions.utils;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RequestCollapserTests {
+
+    private final List<Set<Integer>> batches = new CopyOnWriteArrayList<>();
+
+    @Test
+    public void RequestCollapser_ConcurrentLoadsWithinWindow_ShareOneBatch() throws Exception {
+
+        RequestCollapser<Integer, String> collapser = new RequestCollapser<>(this::load, Duration.ofMillis(500), 100);
+
+        List<String> values = loadConcurrently(collapser, List.of(1, 2, 3, 2));
+
+        assertThat(values).containsExactly("user1", "user2", null, "user2");
+        assertThat(batches).containsExactly(Set.of(1, 2, 3));
+    }
+
+    @Test
+    public void RequestCollapser_FullBatch_RunsWithoutWaitingOutTheWindow() throws Exception {
+
+        RequestCollapser<Integer, String> collapser = new RequestCollapser<>(this::load, Duration.ofMinutes(1), 2);
+        long start = System.nanoTime();
+
+        List<String> values = loadConcurrently(collapser, List.of(1, 2));
+
+        assertThat(values).containsExactly("user1", "user2");
+        assertThat(batches).containsExactly(Set.of(1, 2));
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(10));
+    }
+
+    @Test
+    public void RequestCollapser_FailedBatch_ThrowsToEveryCaller() {
+
+        RequestCollapser<Integer, String> collapser = new RequestCollapser<>(ids -> {
+            throw new IllegalStateException("database down");
+        }, Duration.ofMillis(1), 100);
+
+        IllegalStateException ex = Assertions.assertThrows(IllegalStateException.class, () -> collapser.load(1));
+
+        assertThat(ex.getMessage()).isEqualTo("database down");
+        // the failed batch is not reused
+        Assertions.assertThrows(IllegalStateException.class, () -> collapser.load(1));
+    }
+
+    @Test
+    public void RequestCollapser_BatchFailingWithError_ReleasesTheOtherCallers() throws Exception {
+
+        CountDownLatch joined = new CountDownLatch(1);
+        RequestCollapser<Integer, String> collapser = new RequestCollapser<>(ids -> {
+            awaitQuietly(joined);
+            throw new StackOverflowError();
+        }, Duration.ofMinutes(1), 2);
+        CompletableFuture<String> opener = CompletableFuture.supplyAsync(() -> collapser.load(1));
+        CompletableFuture<String> follower = CompletableFuture.supplyAsync(() -> {
+            joined.countDown();
+            return collapser.load(2);
+        });
+
+        assertThat(follower).failsWithin(Duration.ofSeconds(10));
+        assertThat(opener).failsWithin(Duration.ofSeconds(10));
+    }
+
+    private Map<Integer, String> load(Set<Integer> ids) {
+
+        batches.add(Set.copyOf(ids));
+        Map<Integer, String> values = new HashMap<>();
+        ids.stream().filter(id -> id < 3).forEach(id -> values.put(id, "user" + id));
+
+        return values;
+    }
+
+    private static List<String> loadConcurrently(RequestCollapser<Integer, String> collapser, List<Integer> keys) throws Exception {
+
+        ExecutorService executor = Executors.newFixedThreadPool(keys.size());
+        try {
+            CountDownLatch ready = new CountDownLatch(keys.size());
+            List<CompletableFuture<String>> results = keys.stream()
+                    .map(key -> CompletableFuture.supplyAsync(() -> {
+                        ready.countDown();
+                        awaitQuietly(ready);
+                        return collapser.load(key);
+                    }, executor))
+                    .toList();
+
+            return IntStream.range(0, keys.size())
+                    .mapToObj(i -> results.get(i).join())
+                    .toList();
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
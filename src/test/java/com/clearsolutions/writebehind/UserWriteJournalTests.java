@@ -0,0 +1,123 @@
+package com.clearsolutions.writebehind;
+
+import com.clearsolutions.dto.UserDTO;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class UserWriteJournalTests {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    public void UserWriteJournal_Open_ReturnsUnfinishedWritesInOrder() throws Exception {
+
+        Path path = directory.resolve("users.journal");
+        try (UserWriteJournal journal = new UserWriteJournal(path, objectMapper)) {
+            assertThat(journal.open()).isEmpty();
+            journal.append(write("1"));
+            journal.append(write("2"));
+            journal.append(write("3"));
+            journal.complete("2");
+        }
+        // a crash in the middle of an append leaves a torn last line
+        Files.writeString(path, "{\"trackingId\":\"4\",\"us", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        try (UserWriteJournal journal = new UserWriteJournal(path, objectMapper)) {
+            List<UserWrite> unfinished = journal.open();
+
+            assertThat(unfinished).extracting(UserWrite::trackingId).containsExactly("1", "3");
+            assertThat(unfinished.get(0).user().getEmail()).isEqualTo("user1@mail.com");
+            assertThat(Files.readAllLines(path)).hasSize(2);
+        }
+    }
+
+    @Test
+    public void UserWriteJournal_Complete_TruncatesWhenNothingIsPending() throws Exception {
+
+        Path path = directory.resolve("nested").resolve("users.journal");
+        try (UserWriteJournal journal = new UserWriteJournal(path, objectMapper)) {
+            journal.open();
+            journal.append(write("1"));
+            journal.append(write("2"));
+            journal.complete("1");
+            journal.complete("2");
+
+            assertThat(Files.size(path)).isZero();
+        }
+    }
+
+    @Test
+    public void UserWriteJournal_ConcurrentAppends_AreAllOnDiskWhenAcknowledged() throws Exception {
+
+        Path path = directory.resolve("users.journal");
+        int writers = 32;
+        try (UserWriteJournal journal = new UserWriteJournal(path, objectMapper)) {
+            journal.open();
+            ExecutorService executor = Executors.newFixedThreadPool(writers);
+            try {
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<?>> appends = new ArrayList<>();
+                for (int i = 0; i < writers; i++) {
+                    String trackingId = String.valueOf(i);
+                    appends.add(executor.submit(() -> {
+                        start.await();
+                        journal.append(write(trackingId));
+                        return null;
+                    }));
+                }
+                start.countDown();
+                for (Future<?> append : appends) {
+                    append.get(10, TimeUnit.SECONDS);
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+
+            assertThat(Files.readAllLines(path)).hasSize(writers);
+        }
+
+        try (UserWriteJournal journal = new UserWriteJournal(path, objectMapper)) {
+            assertThat(journal.open()).hasSize(writers);
+        }
+    }
+
+    @Test
+    public void UserWriteJournal_AppendAfterClose_IsRejected() throws Exception {
+
+        UserWriteJournal journal = new UserWriteJournal(directory.resolve("users.journal"), objectMapper);
+        journal.open();
+        journal.close();
+
+        assertThatThrownBy(() -> journal.append(write("1"))).isInstanceOf(IllegalStateException.class);
+    }
+
+    private static UserWrite write(String trackingId) {
+
+        return new UserWrite(trackingId, UserDTO.builder()
+                .email("user" + trackingId + "@mail.com")
+                .firstName("Test")
+                .lastName("Test")
+                .birthDate(LocalDateTime.of(2000, 1, 1, 0, 0))
+                .build());
+    }
+}